@@ -0,0 +1,112 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation.benchmarks;
+
+import it.edu.liceococito.cocitoWeatherStation.ArchiveQuery;
+import it.edu.liceococito.cocitoWeatherStation.DataType;
+import it.edu.liceococito.cocitoWeatherStation.Station;
+import it.edu.liceococito.cocitoWeatherStation.TimePeriod;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * Shared helpers to open the synthetic station and build queries on it
+ */
+final class Fixtures {
+    private static final ZoneId ZONE = ZoneId.of("Europe/Rome");
+
+    private Fixtures() {
+    }
+
+    /**
+     * Open a station on a synthetic archive, with the result cache disabled so every query does the work
+     *
+     * @param years           number of years of data
+     * @param intervalSeconds seconds between two readings
+     * @return station
+     * @throws Exception archive generation or opening failed
+     */
+    static Station station(int years, int intervalSeconds) throws Exception {
+        Station station = new Station(SyntheticArchive.get(years, intervalSeconds), false);
+        station.setQueryCacheCapacity(0);
+        return station;
+    }
+
+    /**
+     * Query of one data type over a whole number of days
+     *
+     * @param dt       data type
+     * @param first    first day
+     * @param days     number of days
+     * @param pageSize page size, {@code 0} disables pagination
+     * @return query
+     */
+    static ArchiveQuery query(DataType dt, LocalDate first, int days, int pageSize) {
+        ArchiveQuery aq = new ArchiveQuery();
+        aq.getAllowedDataTypes().add(dt);
+        aq.getTimePeriods().add(new TimePeriod(first.atStartOfDay(ZONE).toInstant(), first.plusDays(days).atStartOfDay(ZONE).toInstant()));
+        aq.setPageSize(pageSize);
+        return aq;
+    }
+
+    /**
+     * Query of one data type over the last synthetic year
+     *
+     * @param dt       data type
+     * @param pageSize page size, {@code 0} disables pagination
+     * @return query
+     */
+    static ArchiveQuery yearQuery(DataType dt, int pageSize) {
+        LocalDate first = LocalDate.of(SyntheticArchive.LAST_YEAR, 1, 1);
+        return query(dt, first, first.lengthOfYear(), pageSize);
+    }
+
+    /**
+     * Query of one data type over a single day of the last synthetic year
+     *
+     * @param dt       data type
+     * @param pageSize page size, {@code 0} disables pagination
+     * @return query
+     */
+    static ArchiveQuery dayQuery(DataType dt, int pageSize) {
+        return query(dt, LocalDate.of(SyntheticArchive.LAST_YEAR, 6, 15), 1, pageSize);
+    }
+
+    /**
+     * Query of one data type over a single hour of the last synthetic year
+     *
+     * @param dt       data type
+     * @param pageSize page size, {@code 0} disables pagination
+     * @return query
+     */
+    static ArchiveQuery hourQuery(DataType dt, int pageSize) {
+        ArchiveQuery aq = query(dt, LocalDate.of(SyntheticArchive.LAST_YEAR, 6, 15), 1, pageSize);
+        TimePeriod day = aq.getTimePeriods().get(0);
+        aq.getTimePeriods().set(0, new TimePeriod(day.getStart().plusSeconds(12 * 3600), day.getStart().plusSeconds(13 * 3600)));
+        return aq;
+    }
+}
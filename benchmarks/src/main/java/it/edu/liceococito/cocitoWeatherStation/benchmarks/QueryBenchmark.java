@@ -0,0 +1,146 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation.benchmarks;
+
+import it.edu.liceococito.cocitoWeatherStation.ArchiveQuery;
+import it.edu.liceococito.cocitoWeatherStation.ArchiveQueryResult;
+import it.edu.liceococito.cocitoWeatherStation.DataType;
+import it.edu.liceococito.cocitoWeatherStation.QueryCursor;
+import it.edu.liceococito.cocitoWeatherStation.ResampleFunction;
+import it.edu.liceococito.cocitoWeatherStation.Station;
+import it.edu.liceococito.cocitoWeatherStation.ValuePredicate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code Station.query} and {@code Station.stream} over one hour, one day and one year, paginated and not,
+ * over one year resampled to hourly means and LTTB points, over one year of three data types joined on time,
+ * over one year filtered by a value threshold, and the 50th page of one year read from a cursor
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark {
+    @Param({"1"})
+    public int years;
+    @Param({"60"})
+    public int intervalSeconds;
+    @Param({"100", "0"})
+    public int pageSize;
+
+    private Station station;
+    private ArchiveQuery hourQuery;
+    private ArchiveQuery dayQuery;
+    private ArchiveQuery yearQuery;
+    private ArchiveQuery hourlyMeanQuery;
+    private ArchiveQuery hourlyLttbQuery;
+    private ArchiveQuery joinQuery;
+    private ArchiveQuery thresholdQuery;
+    private QueryCursor page50;
+
+    @Setup
+    public void setUp() throws Exception {
+        this.station = Fixtures.station(this.years, this.intervalSeconds);
+        this.hourQuery = Fixtures.hourQuery(DataType.TEMPERATURE, this.pageSize);
+        this.dayQuery = Fixtures.dayQuery(DataType.TEMPERATURE, this.pageSize);
+        this.yearQuery = Fixtures.yearQuery(DataType.TEMPERATURE, this.pageSize);
+        this.hourlyMeanQuery = Fixtures.yearQuery(DataType.TEMPERATURE, this.pageSize);
+        this.hourlyMeanQuery.setResampling(Duration.ofHours(1), ResampleFunction.MEAN);
+        this.hourlyLttbQuery = Fixtures.yearQuery(DataType.TEMPERATURE, this.pageSize);
+        this.hourlyLttbQuery.setResampling(Duration.ofHours(1), ResampleFunction.LTTB);
+        this.joinQuery = Fixtures.yearQuery(DataType.TEMPERATURE, this.pageSize);
+        this.joinQuery.getAllowedDataTypes().add(DataType.HUMIDITY);
+        this.joinQuery.getAllowedDataTypes().add(DataType.PRESSURE);
+        this.thresholdQuery = Fixtures.yearQuery(DataType.TEMPERATURE, this.pageSize);
+        this.thresholdQuery.setValuePredicate(DataType.TEMPERATURE, ValuePredicate.greaterThan(30));
+        this.station.query(this.thresholdQuery);
+        for (int page = 1; page < 50 && this.pageSize > 0; page++) {
+            this.page50 = this.station.query(this.yearQuery, this.page50).getNextCursor();
+        }
+        this.station.query(this.joinQuery); // build the columnar copies outside the measurement
+    }
+
+    @Benchmark
+    public long singleHourStream() {
+        return this.station.stream(this.hourQuery).count();
+    }
+
+    @Benchmark
+    public ArchiveQueryResult singleDay() throws IOException {
+        return this.station.query(this.dayQuery);
+    }
+
+    @Benchmark
+    public ArchiveQueryResult fullYear() throws IOException {
+        return this.station.query(this.yearQuery);
+    }
+
+    @Benchmark
+    public long fullYearStream() {
+        return this.station.stream(this.yearQuery).count();
+    }
+
+    @Benchmark
+    public ArchiveQueryResult fullYearHourlyMean() throws IOException {
+        return this.station.query(this.hourlyMeanQuery);
+    }
+
+    @Benchmark
+    public ArchiveQueryResult fullYearHourlyLttb() throws IOException {
+        return this.station.query(this.hourlyLttbQuery);
+    }
+
+    @Benchmark
+    public long fullYearJoined() {
+        return this.station.streamJoined(this.joinQuery, Duration.ZERO).count();
+    }
+
+    @Benchmark
+    public ArchiveQueryResult fullYearThreshold() throws IOException {
+        return this.station.query(this.thresholdQuery);
+    }
+
+    @Benchmark
+    public ArchiveQueryResult cursorPage() throws IOException {
+        return this.station.query(this.yearQuery, this.page50);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation.benchmarks;
+
+import it.edu.liceococito.cocitoWeatherStation.ArchiveQuery;
+import it.edu.liceococito.cocitoWeatherStation.ArchiveQueryResult;
+import it.edu.liceococito.cocitoWeatherStation.DataType;
+import it.edu.liceococito.cocitoWeatherStation.ResampleFunction;
+import it.edu.liceococito.cocitoWeatherStation.Station;
+import it.edu.liceococito.cocitoWeatherStation.StatisticalReportDataPamphlet;
+import it.edu.liceococito.cocitoWeatherStation.StatisticalReporter;
+import it.edu.liceococito.cocitoWeatherStation.ValueRanking;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statistics over one year: from a materialized result, while scanning, and from rollups;
+ * and rankings over one year: highest values and hottest days
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatisticsBenchmark {
+    @Param({"1"})
+    public int years;
+    @Param({"60"})
+    public int intervalSeconds;
+
+    private Station station;
+    private ArchiveQuery yearQuery;
+    private ArchiveQueryResult yearResult;
+    private ArchiveQuery dailyMaxQuery;
+
+    @Setup
+    public void setUp() throws Exception {
+        this.station = Fixtures.station(this.years, this.intervalSeconds);
+        this.yearQuery = Fixtures.yearQuery(DataType.TEMPERATURE, 0);
+        this.yearResult = this.station.query(this.yearQuery);
+        this.dailyMaxQuery = Fixtures.yearQuery(DataType.TEMPERATURE, 0);
+        this.dailyMaxQuery.setResampling(Duration.ofDays(1), ResampleFunction.MAX);
+        this.station.queryRollupStatistics(this.yearQuery); // build the rollups outside the measurement
+    }
+
+    @Benchmark
+    public StatisticalReportDataPamphlet computeFromResult() {
+        return new StatisticalReporter(this.yearResult).getReportPamphletFromType(DataType.TEMPERATURE);
+    }
+
+    @Benchmark
+    public StatisticalReportDataPamphlet computeWhileScanning() throws IOException {
+        return this.station.queryStatistics(this.yearQuery).getReportPamphletFromType(DataType.TEMPERATURE);
+    }
+
+    @Benchmark
+    public StatisticalReportDataPamphlet computeFromRollups() throws IOException {
+        return this.station.queryRollupStatistics(this.yearQuery).getReportPamphletFromType(DataType.TEMPERATURE);
+    }
+
+    @Benchmark
+    public ValueRanking highestValues() throws IOException {
+        return this.station.queryRanking(this.yearQuery, 10, true);
+    }
+
+    @Benchmark
+    public ValueRanking hottestDays() throws IOException {
+        return this.station.queryRanking(this.dailyMaxQuery, 10, true);
+    }
+}
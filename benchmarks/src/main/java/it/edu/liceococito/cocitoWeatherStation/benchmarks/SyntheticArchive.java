@@ -0,0 +1,135 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation.benchmarks;
+
+import it.edu.liceococito.cocitoWeatherStation.DataType;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+/**
+ * Writes a synthetic archive: day csv files for every data type, {@code last.json} and {@code report.txt}
+ */
+public final class SyntheticArchive {
+    /**
+     * Last year written to the archive, archives end on its December 31st
+     */
+    public static final int LAST_YEAR = 2021;
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private SyntheticArchive() {
+    }
+
+    /**
+     * Get a synthetic archive in the temp directory, generating it only if it is not there yet
+     *
+     * @param years           number of years of data
+     * @param intervalSeconds seconds between two readings
+     * @return archive directory
+     * @throws IOException     Input/output error
+     * @throws GitAPIException Git error
+     */
+    public static File get(int years, int intervalSeconds) throws IOException, GitAPIException {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "jcocito-bench-" + years + "y-" + intervalSeconds + "s");
+        File marker = new File(dir, ".complete");
+        if (!marker.exists()) {
+            generate(dir, years, intervalSeconds, 42);
+            if (!marker.createNewFile()) throw new IOException("Could not create " + marker);
+        }
+        return dir;
+    }
+
+    /**
+     * Generate a synthetic archive ending on December 31st of {@code LAST_YEAR}
+     *
+     * @param dir             archive directory, created if needed
+     * @param years           number of years of data
+     * @param intervalSeconds seconds between two readings
+     * @param seed            random seed
+     * @throws IOException     Input/output error
+     * @throws GitAPIException Git error
+     */
+    public static void generate(File dir, int years, int intervalSeconds, long seed) throws IOException, GitAPIException {
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Could not create " + dir);
+        Git.init().setDirectory(dir).call().close();
+        Random random = new Random(seed);
+        LocalDate end = LocalDate.of(LAST_YEAR + 1, 1, 1);
+        for (LocalDate day = LocalDate.of(LAST_YEAR - years + 1, 1, 1); day.isBefore(end); day = day.plusDays(1)) {
+            File dayDir = new File(dir, day.toString().replace('-', File.separatorChar));
+            if (!dayDir.isDirectory() && !dayDir.mkdirs()) throw new IOException("Could not create " + dayDir);
+            for (DataType dt : DataType.values()) {
+                try (BufferedWriter w = new BufferedWriter(new FileWriter(new File(dayDir, dt.getCsvName() + ".csv")))) {
+                    for (int second = 0; second < 86400; second += intervalSeconds) {
+                        LocalDateTime t = day.atStartOfDay().plusSeconds(second);
+                        w.write(FORMATTER.format(t));
+                        w.write(',');
+                        w.write(Double.toString(Math.round(value(dt, day, second, random) * 100) / 100.0));
+                        w.write('\n');
+                    }
+                }
+            }
+        }
+        try (FileWriter w = new FileWriter(new File(dir, "last.json"))) {
+            w.write("{\"utciso\":\"" + end.atStartOfDay().minusSeconds(intervalSeconds).toInstant(ZoneOffset.UTC)
+                    + "\",\"T\":4.5,\"H\":81.2,\"P\":1017.3,\"PM10\":32.1,\"PM25\":24.8,\"S\":0.4}");
+        }
+        try (FileWriter w = new FileWriter(new File(dir, "report.txt"))) {
+            w.write("Synthetic archive, " + years + " years, one reading every " + intervalSeconds + " s\n");
+        }
+    }
+
+    /**
+     * Plausible reading of a data type: seasonal and daily cycle plus noise
+     */
+    private static double value(DataType dt, LocalDate day, int second, Random random) {
+        double season = Math.cos(2 * Math.PI * (day.getDayOfYear() - 200) / 365.0);
+        double daily = Math.sin(2 * Math.PI * (second - 28800) / 86400.0);
+        double noise = random.nextGaussian();
+        switch (dt) {
+            case TEMPERATURE:
+                return 13 + 11 * season + 5 * daily + noise;
+            case HUMIDITY:
+                return Math.max(10, Math.min(100, 65 - 10 * season - 15 * daily + 3 * noise));
+            case PRESSURE:
+                return 1013 + 8 * Math.sin(day.toEpochDay() / 4.0) + 0.5 * noise;
+            case PM10:
+                return Math.max(1, 30 - 18 * season + 4 * daily + 6 * noise);
+            case PM25:
+                return Math.max(1, 22 - 14 * season + 3 * daily + 4 * noise);
+            default:
+                return Math.max(0, 0.5 + 0.3 * noise);
+        }
+    }
+}
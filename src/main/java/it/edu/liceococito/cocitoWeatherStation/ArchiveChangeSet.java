@@ -0,0 +1,111 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What an archive update changed: the commits before and after it and the day files that differ between them
+ */
+public class ArchiveChangeSet {
+    private final boolean successful;
+    private final String previousCommit;
+    private final String commit;
+    private final List<ArchiveFileChange> changes;
+
+    /**
+     * Build change set
+     *
+     * @param successful     whether the update succeeded
+     * @param previousCommit HEAD commit id before the update, {@code null} if there was none
+     * @param commit         HEAD commit id after the update, {@code null} if there is none
+     * @param changes        changed day files
+     */
+    ArchiveChangeSet(boolean successful, String previousCommit, String commit, List<ArchiveFileChange> changes) {
+        this.successful = successful;
+        this.previousCommit = previousCommit;
+        this.commit = commit;
+        this.changes = Collections.unmodifiableList(changes);
+    }
+
+    /**
+     * Check whether the update succeeded
+     *
+     * @return boolean
+     */
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    /**
+     * Get HEAD commit id before the update
+     *
+     * @return commit id, {@code null} if there was none
+     */
+    public String getPreviousCommit() {
+        return previousCommit;
+    }
+
+    /**
+     * Get HEAD commit id after the update
+     *
+     * @return commit id, {@code null} if there is none
+     */
+    public String getCommit() {
+        return commit;
+    }
+
+    /**
+     * Check whether the update brought any new commit
+     *
+     * @return boolean
+     */
+    public boolean isHeadMoved() {
+        return commit != null && !commit.equals(previousCommit);
+    }
+
+    /**
+     * Get changed day files
+     *
+     * @return unmodifiable list of changes, in path order
+     */
+    public List<ArchiveFileChange> getChanges() {
+        return changes;
+    }
+
+    /**
+     * Get the internal descriptors of the changed files
+     *
+     * @return file descriptors
+     */
+    List<InternalFileDescriptor> getDescriptors() {
+        ArrayList<InternalFileDescriptor> fds = new ArrayList<>();
+        for (ArchiveFileChange c : changes) fds.add(c.toDescriptor());
+        return fds;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.AbstractTreeIterator;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.util.io.DisabledOutputStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Computes the day files changed between two archive commits, with the rows appended to them
+ */
+final class ArchiveDiff {
+    private ArchiveDiff() {
+    }
+
+    /**
+     * Diff two commits
+     *
+     * @param repo     the repository
+     * @param from     old commit, {@code null} to treat every file as added
+     * @param to       new commit
+     * @param workTree working tree the changed files are reported in
+     * @param sparse   files kept in a sparse working tree, {@code null} to report every file
+     * @return changed day files, in path order
+     * @throws IOException Input/output error
+     */
+    static List<ArchiveFileChange> between(Repository repo, ObjectId from, ObjectId to, File workTree, SparseCheckout sparse) throws IOException {
+        ArrayList<ArchiveFileChange> changes = new ArrayList<>();
+        try (ObjectReader reader = repo.newObjectReader();
+             RevWalk rw = new RevWalk(reader);
+             DiffFormatter df = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
+            df.setRepository(repo);
+            AbstractTreeIterator oldTree = from == null ? new EmptyTreeIterator()
+                    : new CanonicalTreeParser(null, reader, rw.parseCommit(from).getTree());
+            AbstractTreeIterator newTree = new CanonicalTreeParser(null, reader, rw.parseCommit(to).getTree());
+            for (DiffEntry e : df.scan(oldTree, newTree)) {
+                boolean deleted = e.getChangeType() == DiffEntry.ChangeType.DELETE;
+                String path = deleted ? e.getOldPath() : e.getNewPath();
+                InternalFileDescriptor fd = ArchiveIndex.describe(workTree, path);
+                if (fd == null || (sparse != null && !sparse.includes(path))) continue;
+                byte[] oldBytes = e.getChangeType() == DiffEntry.ChangeType.ADD ? null : reader.open(e.getOldId().toObjectId()).getBytes();
+                byte[] newBytes = deleted ? null : reader.open(e.getNewId().toObjectId()).getBytes();
+                Page appended = newBytes == null ? null : appendedValues(fd, oldBytes, newBytes);
+                changes.add(new ArchiveFileChange(fd.getF(), fd.getDate(), fd.getDt(), e.getChangeType(),
+                        oldBytes == null ? -1 : oldBytes.length, newBytes == null ? -1 : newBytes.length, appended));
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Decode the rows after the previous end of file, if the new content only appends complete lines to the old one.
+     * Old rows are only counted to number the appended ones, they are not decoded
+     *
+     * @param fd       changed file
+     * @param oldBytes old content, {@code null} if the file was added
+     * @param newBytes new content
+     * @return appended values, {@code null} if the file was rewritten
+     */
+    private static Page appendedValues(InternalFileDescriptor fd, byte[] oldBytes, byte[] newBytes) {
+        int offset = oldBytes == null ? 0 : oldBytes.length, line = 0;
+        if (offset > newBytes.length || (offset > 0 && oldBytes[offset - 1] != '\n')
+                || (offset > 0 && !Arrays.equals(oldBytes, 0, offset, newBytes, 0, offset))) {
+            return null;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(newBytes);
+        for (int start = 0, end; start < offset; start = end + 1) {
+            end = CsvRowDecoder.lineEnd(buf, start, offset);
+            if (CsvRowDecoder.isRow(buf, start, end)) line++;
+        }
+        Page page = new Page();
+        CsvRowDecoder decoder = new CsvRowDecoder();
+        for (int start = offset, end; start < newBytes.length; start = end + 1) {
+            end = CsvRowDecoder.lineEnd(buf, start, newBytes.length);
+            if (decoder.decode(buf, start, end)) page.append(decoder.getEpochSecond(), decoder.getValue(), fd.getF(), line++, fd.getDt());
+        }
+        return page;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import org.eclipse.jgit.diff.DiffEntry;
+
+import java.io.File;
+import java.time.LocalDate;
+
+/**
+ * A day file changed by an archive update
+ */
+public class ArchiveFileChange {
+    private final File file;
+    private final LocalDate date;
+    private final DataType dataType;
+    private final DiffEntry.ChangeType changeType;
+    private final long previousSize;
+    private final long size;
+    private final Page appendedValues;
+
+    /**
+     * Build change
+     *
+     * @param file           the day file in the working tree
+     * @param date           day the file refers to
+     * @param dataType       data type of the file
+     * @param changeType     kind of change
+     * @param previousSize   size before the update, {@code -1} if the file was added
+     * @param size           size after the update, {@code -1} if the file was deleted
+     * @param appendedValues values after the previous end of file, {@code null} if the file was not only appended to
+     */
+    ArchiveFileChange(File file, LocalDate date, DataType dataType, DiffEntry.ChangeType changeType, long previousSize, long size, Page appendedValues) {
+        this.file = file;
+        this.date = date;
+        this.dataType = dataType;
+        this.changeType = changeType;
+        this.previousSize = previousSize;
+        this.size = size;
+        this.appendedValues = appendedValues;
+    }
+
+    /**
+     * Get the day file in the working tree
+     *
+     * @return file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Get day the file refers to
+     *
+     * @return day
+     */
+    public LocalDate getDate() {
+        return date;
+    }
+
+    /**
+     * Get data type of the file
+     *
+     * @return data type
+     */
+    public DataType getDataType() {
+        return dataType;
+    }
+
+    /**
+     * Get kind of change
+     *
+     * @return change type
+     */
+    public DiffEntry.ChangeType getChangeType() {
+        return changeType;
+    }
+
+    /**
+     * Get size before the update
+     *
+     * @return size in bytes, {@code -1} if the file was added
+     */
+    public long getPreviousSize() {
+        return previousSize;
+    }
+
+    /**
+     * Get size after the update
+     *
+     * @return size in bytes, {@code -1} if the file was deleted
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Check whether the update only appended rows to the file (new files count as appended to)
+     *
+     * @return boolean
+     */
+    public boolean isAppendOnly() {
+        return appendedValues != null;
+    }
+
+    /**
+     * Get the values read from the previous end of file onwards
+     *
+     * @return appended values, {@code null} if the file was rewritten or deleted
+     */
+    public Page getAppendedValues() {
+        return appendedValues;
+    }
+
+    /**
+     * Get the internal descriptor of the changed file
+     *
+     * @return file descriptor
+     */
+    InternalFileDescriptor toDescriptor() {
+        return new InternalFileDescriptor(file, dataType, date);
+    }
+}
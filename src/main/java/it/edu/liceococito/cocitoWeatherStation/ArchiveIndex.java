@@ -0,0 +1,217 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory index of the day files ({@code yyyy/MM/dd/<csvName>.csv}) present in the archive, with their sizes
+ * and last modification times.
+ * Built with a single directory walk, it lets the query planner resolve files without touching the file system
+ */
+class ArchiveIndex {
+    private static final DataType[] TYPES = DataType.values();
+    private static final Map<String, DataType> TYPES_BY_FILE_NAME = new HashMap<>();
+
+    static {
+        for (DataType dt : TYPES) TYPES_BY_FILE_NAME.put(dt.getCsvName() + ".csv", dt);
+    }
+
+    private final File root;
+    private final ConcurrentSkipListMap<LocalDate, long[]> days;
+
+    /**
+     * Build an empty index
+     *
+     * @param root archive working tree
+     */
+    ArchiveIndex(File root) {
+        this.root = root;
+        this.days = new ConcurrentSkipListMap<>();
+    }
+
+    /**
+     * Drop the index and walk the whole archive again
+     *
+     * @throws IOException Input/output error
+     */
+    void rebuild() throws IOException {
+        ConcurrentSkipListMap<LocalDate, long[]> found = new ConcurrentSkipListMap<>();
+        this.walk(found);
+        this.days.keySet().retainAll(found.keySet());
+        this.days.putAll(found);
+    }
+
+    /**
+     * Update the index entries of changed day files from the file system
+     *
+     * @param changed changed day files
+     */
+    void apply(List<InternalFileDescriptor> changed) {
+        for (InternalFileDescriptor fd : changed) {
+            long[] sizes = this.days.get(fd.getDate());
+            sizes = sizes == null ? emptySizes() : sizes.clone();
+            boolean exists = fd.getF().isFile();
+            sizes[fd.getDt().ordinal()] = exists ? fd.getF().length() : -1;
+            sizes[TYPES.length + fd.getDt().ordinal()] = exists ? fd.getF().lastModified() : 0;
+            if (Arrays.stream(sizes, 0, TYPES.length).allMatch(size -> size < 0)) this.days.remove(fd.getDate());
+            else this.days.put(fd.getDate(), sizes);
+        }
+    }
+
+    /**
+     * Collect day files
+     *
+     * @param found destination map
+     * @throws IOException Input/output error
+     */
+    private void walk(Map<LocalDate, long[]> found) throws IOException {
+        Path base = this.root.toPath();
+        if (!Files.isDirectory(base)) return;
+        Files.walkFileTree(base, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (dir.equals(base)) return FileVisitResult.CONTINUE;
+                if (base.relativize(dir).getNameCount() > 3 || !isNumber(dir.getFileName().toString())) return FileVisitResult.SKIP_SUBTREE;
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                InternalFileDescriptor fd = describe(root, base.relativize(file).toString().replace(File.separatorChar, '/'));
+                if (fd == null) return FileVisitResult.CONTINUE;
+                long[] sizes = found.computeIfAbsent(fd.getDate(), d -> emptySizes());
+                sizes[fd.getDt().ordinal()] = attrs.size();
+                sizes[TYPES.length + fd.getDt().ordinal()] = attrs.lastModifiedTime().toMillis();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Describe a day file from its path in the archive
+     *
+     * @param root archive working tree
+     * @param path path relative to the archive root, with {@code /} separators
+     * @return file descriptor, {@code null} if the path is not a day file
+     */
+    static InternalFileDescriptor describe(File root, String path) {
+        String[] parts = path.split("/");
+        if (parts.length != 4 || !isNumber(parts[0]) || !isNumber(parts[1]) || !isNumber(parts[2])) return null;
+        DataType dt = TYPES_BY_FILE_NAME.get(parts[3]);
+        if (dt == null) return null;
+        try {
+            LocalDate date = LocalDate.of(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+            return new InternalFileDescriptor(new File(root, path.replace('/', File.separatorChar)), dt, date);
+        } catch (DateTimeException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Check whether a day file exists
+     *
+     * @param date day
+     * @param dt   data type
+     * @return boolean
+     */
+    boolean contains(LocalDate date, DataType dt) {
+        return this.getSize(date, dt) >= 0;
+    }
+
+    /**
+     * Get size of a day file as seen by the last walk
+     *
+     * @param date day
+     * @param dt   data type
+     * @return size in bytes, {@code -1} if the file does not exist
+     */
+    long getSize(LocalDate date, DataType dt) {
+        long[] sizes = this.days.get(date);
+        return sizes == null ? -1 : sizes[dt.ordinal()];
+    }
+
+    /**
+     * Get last modification time of a day file as seen by the last walk
+     *
+     * @param date day
+     * @param dt   data type
+     * @return milliseconds since the epoch, {@code 0} if the file does not exist
+     */
+    long getLastModified(LocalDate date, DataType dt) {
+        long[] sizes = this.days.get(date);
+        return sizes == null ? 0 : sizes[TYPES.length + dt.ordinal()];
+    }
+
+    /**
+     * Get the path of a day file, without checking it exists
+     *
+     * @param date day
+     * @param dt   data type
+     * @return file
+     */
+    File getFile(LocalDate date, DataType dt) {
+        return new File(this.root, date.toString().replace('-', File.separatorChar) + File.separator + dt.getCsvName() + ".csv");
+    }
+
+    /**
+     * Sizes array with every file missing: sizes by data type, followed by last modification times
+     *
+     * @return sizes
+     */
+    private static long[] emptySizes() {
+        long[] sizes = new long[TYPES.length * 2];
+        Arrays.fill(sizes, 0, TYPES.length, -1);
+        return sizes;
+    }
+
+    /**
+     * Check whether a directory name is a number
+     *
+     * @param s directory name
+     * @return boolean
+     */
+    private static boolean isNumber(String s) {
+        if (s.isEmpty()) return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isDigit(s.charAt(i))) return false;
+        }
+        return true;
+    }
+}
@@ -25,7 +25,11 @@
 
 package it.edu.liceococito.cocitoWeatherStation;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Executor;
 
 /**
  * A query to the archive
@@ -35,8 +39,14 @@ public class ArchiveQuery {
     private ArrayList<DataType> allowedDataTypes;
     private ArrayList<TimePeriod> timePeriods;
     private int pageSize;
-
-
+    private int parallelism;
+    private Executor executor;
+    private String revision;
+    private Duration resampleBucket;
+    private ResampleFunction resampleFunction;
+    private HashMap<DataType, ValuePredicate> valuePredicates;
+    private Instant deadline;
+    private QueryProgressListener progressListener;
 
     /**
      * Create the archive query
@@ -45,7 +55,8 @@ public class ArchiveQuery {
         this.allowedDataTypes = new ArrayList<>();
         this.timePeriods = new ArrayList<>();
         this.pageSize = this.defaultPageSize;
-
+        this.parallelism = 1;
+        this.valuePredicates = new HashMap<>();
     }
 
     /**
@@ -94,14 +105,222 @@ public class ArchiveQuery {
     }
 
     /**
-     * Set pagination page size
+     * Set pagination page size: every page holds exactly {@code pageSize} values, except the last one
      *
-     * @param pageSize items in a page
+     * @param pageSize items in a page, {@code 0} disables pagination
+     * @see Station#query(ArchiveQuery, QueryCursor)
      */
     public void setPageSize(int pageSize) {
         this.pageSize = pageSize;
     }
 
+    /**
+     * Get how many day files are read concurrently
+     *
+     * @return parallelism level, {@code 1} means sequential
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Set how many day files are read concurrently.
+     * Results keep the same order and pagination as a sequential query
+     *
+     * @param parallelism parallelism level, {@code 1} (default) means sequential
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be at least 1");
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Get the executor used for parallel queries
+     *
+     * @return executor, {@code null} for the common fork-join pool
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Set the executor used when parallelism is greater than {@code 1}
+     *
+     * @param executor executor, {@code null} (default) for the common fork-join pool
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Get the instant after which the query stops
+     *
+     * @return deadline, {@code null} if there is none
+     */
+    public Instant getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Stop scanning the archive if the query is still running at an instant: the deadline is checked between
+     * day files and between pages, and the query fails with an {@code InterruptedIOException}
+     *
+     * @param deadline deadline, {@code null} (default) for none
+     */
+    public void setDeadline(Instant deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Get the listener notified while the archive is scanned
+     *
+     * @return listener, {@code null} if there is none
+     */
+    public QueryProgressListener getProgressListener() {
+        return progressListener;
+    }
+
+    /**
+     * Set the listener notified after each day file the query reads
+     *
+     * @param progressListener listener, {@code null} (default) for none
+     */
+    public void setProgressListener(QueryProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Get the commit the archive is read at
+     *
+     * @return revision, {@code null} to read the working tree
+     */
+    public String getRevision() {
+        return revision;
+    }
+
+    /**
+     * Read the archive as it was at a commit, straight from the git object database, without touching the
+     * working tree. The revision is resolved once per query, so {@code "HEAD"} gives a consistent snapshot
+     * even while the archive is being updated. Precomputed aggregates only exist for the working tree, so
+     * {@code Station.queryRollupStatistics} falls back to a full scan for such queries
+     *
+     * @param revision commit id, branch, tag or expression such as {@code "HEAD~10"}; {@code null} (default)
+     *                 reads the working tree
+     */
+    public void setRevision(String revision) {
+        this.revision = revision;
+    }
+
+    /**
+     * Get the resampling bucket size
+     *
+     * @return bucket size, {@code null} if values are not resampled
+     */
+    public Duration getResampleBucket() {
+        return resampleBucket;
+    }
+
+    /**
+     * Get the resampling function
+     *
+     * @return function, {@code null} if values are not resampled
+     */
+    public ResampleFunction getResampleFunction() {
+        return resampleFunction;
+    }
+
+    /**
+     * Return one point per data type and time bucket instead of every value, computed while the archive is scanned.
+     * Buckets of whole days start at Europe/Rome midnight, shorter buckets are aligned to the epoch.
+     * Pages hold exactly {@code pageSize} points. Statistics queries ignore resampling
+     *
+     * @param bucket   bucket size, whole seconds, e.g. 5 minutes, 1 hour or 1 day
+     * @param function how each bucket is reduced to a point
+     * @throws IllegalArgumentException the bucket is not a positive number of whole seconds
+     */
+    public void setResampling(Duration bucket, ResampleFunction function) {
+        if (bucket.getSeconds() < 1 || bucket.getNano() != 0)
+            throw new IllegalArgumentException("Bucket must be a positive number of whole seconds");
+        this.resampleBucket = bucket;
+        this.resampleFunction = function;
+    }
+
+    /**
+     * Return every value (default)
+     */
+    public void disableResampling() {
+        this.resampleBucket = null;
+        this.resampleFunction = null;
+    }
+
+    /**
+     * Get the predicate values of a data type must match
+     *
+     * @param dataType data type
+     * @return predicate, {@code null} if every value is returned
+     */
+    public ValuePredicate getValuePredicate(DataType dataType) {
+        return valuePredicates.get(dataType);
+    }
+
+    /**
+     * Get the value predicates by data type
+     *
+     * @return predicates
+     */
+    public HashMap<DataType, ValuePredicate> getValuePredicates() {
+        return valuePredicates;
+    }
+
+    /**
+     * Only return the values of a data type matching a predicate, e.g. {@code ValuePredicate.atLeast(50)} for
+     * PM10 exceedances. Rows are tested while the archive is scanned, and day files whose min and max cannot
+     * match are not read at all. Statistics queries only consider matching values
+     *
+     * @param dataType  data type
+     * @param predicate predicate, {@code null} to return every value
+     */
+    public void setValuePredicate(DataType dataType, ValuePredicate predicate) {
+        if (predicate == null) {
+            this.valuePredicates.remove(dataType);
+        } else {
+            this.valuePredicates.put(dataType, predicate);
+        }
+    }
+
+    /**
+     * Set the value predicates by data type
+     *
+     * @param valuePredicates predicates
+     */
+    public void setValuePredicates(HashMap<DataType, ValuePredicate> valuePredicates) {
+        this.valuePredicates = valuePredicates;
+    }
+
+    /**
+     * Get a string identifying what the query returns: data types, time periods, page size, resampling and value predicates.
+     * Execution settings such as parallelism or the deadline are not part of it, and neither is the revision, which the
+     * station resolves to a commit id before looking up cached results
+     *
+     * @return canonical form of the query
+     */
+    String getCanonicalKey() {
+        StringBuilder sb = new StringBuilder();
+        for (DataType dt : this.allowedDataTypes) sb.append(dt.name()).append(',');
+        sb.append('|');
+        for (TimePeriod tp : this.timePeriods) sb.append(tp.getStart()).append('/').append(tp.getEnd()).append(',');
+        sb.append('|').append(this.pageSize);
+        if (this.resampleFunction != null) sb.append('|').append(this.resampleBucket.getSeconds()).append(this.resampleFunction);
+        if (!this.valuePredicates.isEmpty()) {
+            sb.append('|');
+            for (DataType dt : DataType.values()) {
+                ValuePredicate p = this.valuePredicates.get(dt);
+                if (p != null) sb.append(dt.name()).append(p).append(',');
+            }
+        }
+        return sb.toString();
+    }
+
     /**
      * Alias of {@code setPageSize(0)}
      *
@@ -34,6 +34,7 @@ import java.time.Instant;
 public class ArchiveQueryResult {
     private final PageList pageList;
     private final Instant computedInstant;
+    private QueryCursor nextCursor;
 
     /**
      * Construct the result
@@ -46,6 +47,30 @@ public class ArchiveQueryResult {
         this.computedInstant = computedInstant;
     }
 
+    /**
+     * Build a deep copy of the result, sharing nothing mutable with it
+     *
+     * @return copy
+     */
+    ArchiveQueryResult copy() {
+        PageList pages = new PageList();
+        for (Page p : this.pageList) pages.add(new Page(p));
+        ArchiveQueryResult copy = new ArchiveQueryResult(pages, this.computedInstant);
+        copy.nextCursor = this.nextCursor;
+        return copy;
+    }
+
+    /**
+     * Get number of values in the result
+     *
+     * @return value count
+     */
+    long getValueCount() {
+        long n = 0;
+        for (Page p : this.pageList) n += p.size();
+        return n;
+    }
+
     /**
      * Get a {@code PageList} of pages with results
      *
@@ -64,5 +89,23 @@ public class ArchiveQueryResult {
         return computedInstant;
     }
 
+    /**
+     * Get the cursor of the page following this one, for results of {@code Station.query(ArchiveQuery, QueryCursor)}
+     *
+     * @return cursor, {@code null} if there are no more values
+     */
+    public QueryCursor getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Set the cursor of the page following this one
+     *
+     * @param nextCursor cursor, {@code null} if there are no more values
+     */
+    void setNextCursor(QueryCursor nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
 
 }
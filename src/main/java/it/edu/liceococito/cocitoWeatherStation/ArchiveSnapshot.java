@@ -0,0 +1,108 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.HashMap;
+
+/**
+ * The day files of the archive at one commit, as blob ids in the git object database
+ */
+final class ArchiveSnapshot {
+    private static final int TYPES = DataType.values().length;
+    private final ObjectId commit;
+    private final File workTree;
+    private final HashMap<LocalDate, ObjectId[]> blobs;
+
+    /**
+     * Build the snapshot
+     *
+     * @param commit   the commit
+     * @param workTree working tree the files would be checked out in
+     * @param blobs    blob ids by day, indexed by data type ordinal
+     */
+    private ArchiveSnapshot(ObjectId commit, File workTree, HashMap<LocalDate, ObjectId[]> blobs) {
+        this.commit = commit;
+        this.workTree = workTree;
+        this.blobs = blobs;
+    }
+
+    /**
+     * List the day files of a commit by walking its tree
+     *
+     * @param repo   the repository
+     * @param commit the commit
+     * @return the snapshot
+     * @throws IOException Input/output error
+     */
+    static ArchiveSnapshot read(Repository repo, ObjectId commit) throws IOException {
+        File workTree = repo.getWorkTree();
+        HashMap<LocalDate, ObjectId[]> blobs = new HashMap<>();
+        try (ObjectReader reader = repo.newObjectReader();
+             RevWalk rw = new RevWalk(reader);
+             TreeWalk tw = new TreeWalk(reader)) {
+            tw.addTree(rw.parseCommit(commit).getTree());
+            tw.setRecursive(true);
+            while (tw.next()) {
+                InternalFileDescriptor fd = ArchiveIndex.describe(workTree, tw.getPathString());
+                if (fd == null) continue;
+                blobs.computeIfAbsent(fd.getDate(), d -> new ObjectId[TYPES])[fd.getDt().ordinal()] = tw.getObjectId(0);
+            }
+        }
+        return new ArchiveSnapshot(commit.copy(), workTree, blobs);
+    }
+
+    /**
+     * Get the commit
+     *
+     * @return commit id
+     */
+    ObjectId getCommit() {
+        return commit;
+    }
+
+    /**
+     * Get a day file
+     *
+     * @param date day
+     * @param dt   data type
+     * @return descriptor carrying the blob id, {@code null} if the file does not exist at this commit
+     */
+    InternalFileDescriptor get(LocalDate date, DataType dt) {
+        ObjectId[] day = this.blobs.get(date);
+        if (day == null || day[dt.ordinal()] == null) return null;
+        String path = date.toString().replace('-', File.separatorChar) + File.separator + dt.getCsvName() + ".csv";
+        return new InternalFileDescriptor(new File(this.workTree, path), dt, date, day[dt.ordinal()]);
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Lazily iterates the values of a query, opening one day file at a time.
+ * Only the rows of a file inside the time range of its descriptor are read, found by binary search when the file
+ * rows are in time order. Rows not matching the value predicate of their data type are skipped before any value is built
+ */
+class ArchiveValueIterator implements Iterator<Value>, AutoCloseable {
+    private final Station station;
+    private final List<InternalFileDescriptor> files;
+    private final Map<DataType, ValuePredicate> predicates;
+    private ValuePredicate predicate;
+    private final QueryControl control;
+    private long returned;
+    private int resumeFile = -1;
+    private int resumeRow;
+    private int fileIndex;
+    private int line;
+    private int limit;
+    private boolean timeFiltered;
+    private int row;
+    private ColumnarDayFile current;
+    private boolean closed;
+    private final int parallelism;
+    private final Executor executor;
+    private final ArrayDeque<CompletableFuture<ColumnarDayFile>> pending;
+    private int submitted;
+
+    /**
+     * Build the iterator, opening up to {@code parallelism} day files ahead of the one being read.
+     * Values are still returned in file order
+     *
+     * @param station     the station owning the files
+     * @param files       the files to read, in order
+     * @param predicates  value predicates by data type
+     * @param parallelism number of files opened concurrently, {@code 1} reads on the calling thread
+     * @param executor    executor for the file openings, {@code null} for the common fork-join pool
+     * @param control     deadline, cancellation and progress of the query, checked before each file
+     */
+    ArchiveValueIterator(Station station, List<InternalFileDescriptor> files, Map<DataType, ValuePredicate> predicates,
+                         int parallelism, Executor executor, QueryControl control) {
+        this.station = station;
+        this.files = files;
+        this.predicates = predicates;
+        this.control = control;
+        this.control.addFiles(files.size());
+        this.fileIndex = -1;
+        this.parallelism = parallelism;
+        this.executor = executor == null ? ForkJoinPool.commonPool() : executor;
+        this.pending = new ArrayDeque<>();
+    }
+
+    /**
+     * Check whether another value is available, opening the next day file and skipping unmatched rows if needed
+     *
+     * @return boolean
+     * @throws UncheckedIOException a day file could not be read, or the query was stopped
+     */
+    @Override
+    public boolean hasNext() {
+        while (!this.closed) {
+            if (this.current != null) {
+                while (this.line < this.limit && !this.matches(this.line)) this.line++;
+                if (this.line < this.limit) return true;
+                this.current = null;
+                this.control.fileRead(this.returned);
+                this.returned = 0;
+            }
+            if (this.fileIndex + 1 >= this.files.size()) return false;
+            try {
+                this.control.check();
+            } catch (InterruptedIOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.fileIndex++;
+            this.current = this.open();
+            InternalFileDescriptor fd = this.files.get(this.fileIndex);
+            this.predicate = this.predicates.get(fd.getDt());
+            this.line = 0;
+            this.limit = this.current.size();
+            this.timeFiltered = false;
+            if (fd.isBounded()) {
+                if (this.current.isSorted()) {
+                    this.line = this.current.lowerBound(fd.getStartSecond());
+                    this.limit = this.current.lowerBound(fd.getEndSecond());
+                } else {
+                    this.timeFiltered = true;
+                }
+            }
+            if (this.fileIndex == this.resumeFile) this.line = Math.max(this.line, this.resumeRow);
+        }
+        return false;
+    }
+
+    /**
+     * Start reading at a row of a file, skipping the files and rows before it; must be called before reading
+     *
+     * @param fileIndex index of the file in the file list
+     * @param row       row index in the file
+     */
+    void resume(int fileIndex, int row) {
+        this.fileIndex = fileIndex - 1;
+        this.submitted = fileIndex;
+        this.resumeFile = fileIndex;
+        this.resumeRow = row;
+    }
+
+    /**
+     * Get the row the next value comes from, after {@code hasNext()} returned true
+     *
+     * @return row index in the file of {@code getDescriptor()}
+     */
+    int getNextLine() {
+        return this.line;
+    }
+
+    /**
+     * Check whether a row of the current file is to be returned
+     *
+     * @param line row index
+     * @return boolean
+     */
+    private boolean matches(int line) {
+        if (this.timeFiltered) {
+            InternalFileDescriptor fd = this.files.get(this.fileIndex);
+            long t = this.current.getEpochSecond(line);
+            if (t < fd.getStartSecond() || t >= fd.getEndSecond()) return false;
+        }
+        return this.predicate == null || this.predicate.test(this.current.getValue(line));
+    }
+
+    /**
+     * Open the file at {@code fileIndex}, either directly or from the files opened ahead
+     *
+     * @return the day file
+     * @throws UncheckedIOException the day file could not be read
+     */
+    private ColumnarDayFile open() {
+        if (this.parallelism <= 1) {
+            try {
+                return this.station.open(this.files.get(this.fileIndex));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        while (this.submitted < this.files.size() && this.pending.size() < this.parallelism) {
+            InternalFileDescriptor fd = this.files.get(this.submitted++);
+            this.pending.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return this.station.open(fd);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, this.executor));
+        }
+        try {
+            return this.pending.remove().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) throw (UncheckedIOException) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Get the next value
+     *
+     * @return value
+     * @throws UncheckedIOException a day file could not be read
+     */
+    @Override
+    public Value next() {
+        if (!this.advance()) throw new NoSuchElementException();
+        InternalFileDescriptor fd = this.getDescriptor();
+        return new Value(Instant.ofEpochSecond(this.getEpochSecond()), fd.getF(), this.getLine(), this.getValue(), fd.getDt());
+    }
+
+    /**
+     * Move to the next data point without building a {@code Value}
+     *
+     * @return false if there are no more data points
+     * @throws UncheckedIOException a day file could not be read
+     */
+    boolean advance() {
+        if (!this.hasNext()) return false;
+        this.row = this.line++;
+        this.returned++;
+        return true;
+    }
+
+    /**
+     * Get creation instant of the current data point
+     *
+     * @return epoch seconds
+     */
+    long getEpochSecond() {
+        return this.current.getEpochSecond(this.row);
+    }
+
+    /**
+     * Get value of the current data point
+     *
+     * @return value
+     */
+    double getValue() {
+        return this.current.getValue(this.row);
+    }
+
+    /**
+     * Get the zero-based data row index of the current data point in its file
+     *
+     * @return row index
+     */
+    int getLine() {
+        return this.row;
+    }
+
+    /**
+     * Get descriptor of the file the current data point comes from
+     *
+     * @return file descriptor
+     */
+    InternalFileDescriptor getDescriptor() {
+        return this.files.get(this.fileIndex);
+    }
+
+    /**
+     * Get the index, in the query file list, of the file the last value came from
+     *
+     * @return file index
+     */
+    int getFileIndex() {
+        return fileIndex;
+    }
+
+    /**
+     * Release the open day file, no further values will be returned
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        this.current = null;
+        for (CompletableFuture<ColumnarDayFile> f : this.pending) f.cancel(false);
+        this.pending.clear();
+    }
+}
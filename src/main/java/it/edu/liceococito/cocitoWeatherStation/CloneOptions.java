@@ -0,0 +1,132 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import java.time.Instant;
+import java.util.ArrayList;
+
+/**
+ * How a new station archive is cloned. By default the full history is cloned and every file is checked out.
+ * A shallow clone only fetches recent history; a sparse clone only keeps the day files of some years or data types
+ * in the working tree, and later updates only write those files. Partial (blob-less) clones are not supported
+ * by the git client used
+ */
+public class CloneOptions {
+    private int depth;
+    private Instant shallowSince;
+    private ArrayList<Integer> sparseYears;
+    private ArrayList<DataType> sparseDataTypes;
+
+    /**
+     * Create options for a full clone
+     */
+    public CloneOptions() {
+        this.sparseYears = new ArrayList<>();
+        this.sparseDataTypes = new ArrayList<>();
+    }
+
+    /**
+     * Get how many commits are cloned
+     *
+     * @return depth, {@code 0} for the full history
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Set how many commits are cloned
+     *
+     * @param depth depth, {@code 0} (default) for the full history
+     */
+    public void setDepth(int depth) {
+        if (depth < 0) throw new IllegalArgumentException("Depth must not be negative");
+        this.depth = depth;
+    }
+
+    /**
+     * Get the time before which history is not cloned
+     *
+     * @return instant, {@code null} for no limit
+     */
+    public Instant getShallowSince() {
+        return shallowSince;
+    }
+
+    /**
+     * Set the time before which history is not cloned
+     *
+     * @param shallowSince instant, {@code null} (default) for no limit
+     */
+    public void setShallowSince(Instant shallowSince) {
+        this.shallowSince = shallowSince;
+    }
+
+    /**
+     * Get the years whose day files are checked out
+     *
+     * @return years, empty for all
+     */
+    public ArrayList<Integer> getSparseYears() {
+        return sparseYears;
+    }
+
+    /**
+     * Set the years whose day files are checked out
+     *
+     * @param sparseYears years, empty (default) for all
+     */
+    public void setSparseYears(ArrayList<Integer> sparseYears) {
+        this.sparseYears = sparseYears;
+    }
+
+    /**
+     * Get the data types whose day files are checked out
+     *
+     * @return data types, empty for all
+     */
+    public ArrayList<DataType> getSparseDataTypes() {
+        return sparseDataTypes;
+    }
+
+    /**
+     * Set the data types whose day files are checked out
+     *
+     * @param sparseDataTypes data types, empty (default) for all
+     */
+    public void setSparseDataTypes(ArrayList<DataType> sparseDataTypes) {
+        this.sparseDataTypes = sparseDataTypes;
+    }
+
+    /**
+     * Check whether only part of the day files is checked out
+     *
+     * @return boolean
+     */
+    public boolean isSparse() {
+        return !this.sparseYears.isEmpty() || !this.sparseDataTypes.isEmpty();
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Binary columnar copy of a day csv file: an epoch-seconds column followed by a value column.
+ * The header records whether the epoch-seconds column is sorted, which it is except around DST changes,
+ * so that rows can be looked up by time with a binary search.
+ * The csv stays the source of truth, the binary copy is rebuilt whenever the csv changes.
+ * Csv content read from the git object database is decoded to the same layout in memory
+ */
+final class ColumnarDayFile {
+    /**
+     * Extension of the binary files
+     */
+    static final String EXTENSION = ".col";
+    private static final int MAGIC = 0x4A435743; // "JCWC"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 32;
+
+    private final ByteBuffer buffer;
+    private final int rows;
+    private final boolean sorted;
+
+    /**
+     * Wrap a buffer holding a columnar day file
+     *
+     * @param buffer the buffer, positioned anywhere
+     */
+    private ColumnarDayFile(ByteBuffer buffer) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.rows = this.buffer.getInt(24);
+        this.sorted = this.buffer.getInt(28) == 1;
+    }
+
+    /**
+     * Open the binary copy of a csv file, building it first if it is missing or stale
+     *
+     * @param csv      the source csv file
+     * @param columnar the binary copy
+     * @return the mapped day file
+     * @throws IOException Input/output error
+     */
+    static ColumnarDayFile open(File csv, File columnar) throws IOException {
+        long length = csv.length();
+        long lastModified = csv.lastModified();
+        if (!isFresh(columnar, length, lastModified)) {
+            build(csv, columnar, length, lastModified);
+        }
+        try (FileChannel channel = FileChannel.open(columnar.toPath(), StandardOpenOption.READ)) {
+            return new ColumnarDayFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Check whether the binary copy matches the csv it was built from
+     *
+     * @param columnar     the binary copy
+     * @param length       csv length
+     * @param lastModified csv last modification time
+     * @return boolean
+     * @throws IOException Input/output error
+     */
+    private static boolean isFresh(File columnar, long length, long lastModified) throws IOException {
+        if (!columnar.isFile() || columnar.length() < HEADER_SIZE) return false;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(columnar.toPath(), StandardOpenOption.READ)) {
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) return false;
+            }
+        }
+        return header.getInt(0) == MAGIC
+                && header.getInt(4) == VERSION
+                && header.getLong(8) == length
+                && header.getLong(16) == lastModified;
+    }
+
+    /**
+     * Parse the csv and write its binary copy
+     *
+     * @param csv          the source csv file
+     * @param columnar     the binary copy
+     * @param length       csv length
+     * @param lastModified csv last modification time
+     * @throws IOException Input/output error
+     */
+    private static void build(File csv, File columnar, long length, long lastModified) throws IOException {
+        ByteBuffer out;
+        try (FileChannel channel = FileChannel.open(csv.toPath(), StandardOpenOption.READ)) {
+            out = encode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), length, lastModified);
+        }
+        File dir = columnar.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) throw new IOException("Could not create " + dir);
+        File tmp = File.createTempFile(columnar.getName(), ".tmp", dir);
+        try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) channel.write(out);
+        }
+        Files.move(tmp.toPath(), columnar.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Decode csv content held in memory, such as a git blob, without writing a binary copy
+     *
+     * @param csv the csv bytes
+     * @return the day file, backed by a heap buffer
+     */
+    static ColumnarDayFile decode(byte[] csv) {
+        return new ColumnarDayFile(encode(ByteBuffer.wrap(csv), csv.length, 0));
+    }
+
+    /**
+     * Parse csv content into the binary layout
+     *
+     * @param in           the csv content, from position {@code 0} to its limit
+     * @param length       csv length, stored in the header
+     * @param lastModified csv last modification time, stored in the header
+     * @return the binary content, ready to be read
+     */
+    private static ByteBuffer encode(ByteBuffer in, long length, long lastModified) {
+        long[] times = new long[1024];
+        double[] values = new double[1024];
+        int rows = 0;
+        boolean sorted = true;
+        CsvRowDecoder decoder = new CsvRowDecoder();
+        int limit = in.limit();
+        for (int from = 0, to; from < limit; from = to + 1) {
+            to = CsvRowDecoder.lineEnd(in, from, limit);
+            if (!decoder.decode(in, from, to)) continue;
+            if (rows == times.length) {
+                times = Arrays.copyOf(times, rows * 2);
+                values = Arrays.copyOf(values, rows * 2);
+            }
+            times[rows] = decoder.getEpochSecond();
+            if (rows > 0 && times[rows] < times[rows - 1]) sorted = false;
+            values[rows] = decoder.getValue();
+            rows++;
+        }
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + rows * 16).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putInt(VERSION).putLong(length).putLong(lastModified).putInt(rows).putInt(sorted ? 1 : 0);
+        for (int i = 0; i < rows; i++) out.putLong(times[i]);
+        for (int i = 0; i < rows; i++) out.putDouble(values[i]);
+        out.flip();
+        return out;
+    }
+
+    /**
+     * Get number of rows
+     *
+     * @return row count
+     */
+    int size() {
+        return rows;
+    }
+
+    /**
+     * Check whether rows are in time order
+     *
+     * @return boolean
+     */
+    boolean isSorted() {
+        return sorted;
+    }
+
+    /**
+     * Find the first row not before an instant, only meaningful if rows are sorted
+     *
+     * @param epochSecond the instant
+     * @return row index, {@code size()} if every row is before the instant
+     */
+    int lowerBound(long epochSecond) {
+        int lo = 0, hi = this.rows;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.getEpochSecond(mid) < epochSecond) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Get creation time of a row
+     *
+     * @param row row index, same as the csv data line index
+     * @return epoch seconds
+     */
+    long getEpochSecond(int row) {
+        return buffer.getLong(HEADER_SIZE + (row << 3));
+    }
+
+    /**
+     * Get value of a row
+     *
+     * @param row row index, same as the csv data line index
+     * @return value
+     */
+    double getValue(int row) {
+        return buffer.getDouble(HEADER_SIZE + ((rows + row) << 3));
+    }
+}
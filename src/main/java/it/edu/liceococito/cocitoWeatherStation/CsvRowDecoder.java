@@ -0,0 +1,278 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Locale;
+
+/**
+ * Decodes archive csv rows ({@code yyyy-MM-dd HH:mm:ss,value}) straight from bytes.
+ * The fixed-width timestamp is parsed by hand and converted with a Europe/Rome offset computed once per day;
+ * values are parsed without intermediate strings. Rows that do not fit the fast path are handed to the
+ * {@code java.time} / {@code Double} parsers, so the results and errors match the text based parser
+ */
+final class CsvRowDecoder {
+    private static final ZoneId ZONE = ZoneId.of("Europe/Rome");
+    private static final ZoneRules RULES = ZONE.getRules();
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withLocale(Locale.ITALIAN)
+            .withZone(ZoneId.systemDefault());
+    private static final int TIMESTAMP_LENGTH = 19;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private int year = -1, month, day;
+    private long dayStart;
+    private long transition;
+    private int offsetBefore, offsetAfter;
+    private long epochSecond;
+    private double value;
+
+    /**
+     * Find the end of the line starting at {@code from}
+     *
+     * @param buf   the buffer
+     * @param from  line start
+     * @param limit buffer limit
+     * @return index of the line terminator, or {@code limit}
+     */
+    static int lineEnd(ByteBuffer buf, int from, int limit) {
+        int i = from;
+        while (i < limit && buf.get(i) != '\n') i++;
+        return i;
+    }
+
+    /**
+     * Check whether a line is a row that {@code decode} accepts, without parsing it
+     *
+     * @param buf  the buffer
+     * @param from row start
+     * @param to   row end, excluding the line terminator
+     * @return false if the row has less than two fields and would be skipped
+     */
+    static boolean isRow(ByteBuffer buf, int from, int to) {
+        int comma = from;
+        while (comma < to && buf.get(comma) != ',') comma++;
+        for (int i = comma + 1; i < to; i++) {
+            byte b = buf.get(i);
+            if (b != ',' && (b != '\r' || i != to - 1)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Decode a row
+     *
+     * @param buf  the buffer
+     * @param from row start
+     * @param to   row end, excluding the line terminator
+     * @return false if the row has less than two fields and must be skipped
+     * @throws java.time.format.DateTimeParseException malformed timestamp
+     * @throws NumberFormatException                   malformed value
+     */
+    boolean decode(ByteBuffer buf, int from, int to) {
+        if (to > from && buf.get(to - 1) == '\r') to--;
+        int comma = from;
+        while (comma < to && buf.get(comma) != ',') comma++;
+        if (comma == to) return false;
+        int valueEnd = comma + 1;
+        while (valueEnd < to && buf.get(valueEnd) != ',') valueEnd++;
+        if (valueEnd == comma + 1) {
+            int j = valueEnd;
+            while (j < to && buf.get(j) == ',') j++;
+            if (j == to) return false; // only empty trailing fields
+        }
+        this.epochSecond = this.decodeTimestamp(buf, from, comma);
+        this.value = decodeDouble(buf, comma + 1, valueEnd);
+        return true;
+    }
+
+    /**
+     * Get creation instant of the last decoded row
+     *
+     * @return epoch seconds
+     */
+    long getEpochSecond() {
+        return epochSecond;
+    }
+
+    /**
+     * Get value of the last decoded row
+     *
+     * @return value
+     */
+    double getValue() {
+        return value;
+    }
+
+    /**
+     * Decode a {@code yyyy-MM-dd HH:mm:ss} Europe/Rome local timestamp
+     *
+     * @param buf  the buffer
+     * @param from field start
+     * @param to   field end
+     * @return epoch seconds
+     */
+    private long decodeTimestamp(ByteBuffer buf, int from, int to) {
+        if (to - from != TIMESTAMP_LENGTH
+                || buf.get(from + 4) != '-' || buf.get(from + 7) != '-' || buf.get(from + 10) != ' '
+                || buf.get(from + 13) != ':' || buf.get(from + 16) != ':') {
+            return slowTimestamp(buf, from, to);
+        }
+        int y = digits(buf, from, 4), mo = digits(buf, from + 5, 2), d = digits(buf, from + 8, 2);
+        int h = digits(buf, from + 11, 2), mi = digits(buf, from + 14, 2), s = digits(buf, from + 17, 2);
+        if (y < 0 || mo < 0 || d < 0 || h < 0 || h > 23 || mi < 0 || mi > 59 || s < 0 || s > 59) {
+            return slowTimestamp(buf, from, to);
+        }
+        if (y != this.year || mo != this.month || d != this.day) {
+            if (mo < 1 || mo > 12 || d < 1 || d > LocalDate.of(y, mo, 1).lengthOfMonth()) {
+                return slowTimestamp(buf, from, to);
+            }
+            this.selectDay(y, mo, d);
+        }
+        long local = this.dayStart + h * 3600L + mi * 60L + s;
+        return local - (local < this.transition ? this.offsetBefore : this.offsetAfter);
+    }
+
+    /**
+     * Compute the Europe/Rome offsets valid during a day.
+     * A day contains at most one transition; local times before the later of the two transition wall-clock times
+     * keep the earlier offset, which is what {@code LocalDateTime.atZone} does in gaps and overlaps
+     *
+     * @param y year
+     * @param m month
+     * @param d day
+     */
+    private void selectDay(int y, int m, int d) {
+        LocalDate date = LocalDate.of(y, m, d);
+        this.year = y;
+        this.month = m;
+        this.day = d;
+        this.dayStart = date.toEpochDay() * 86400L;
+        LocalDateTime midnight = date.atStartOfDay();
+        this.offsetBefore = RULES.getOffset(midnight).getTotalSeconds();
+        ZoneOffsetTransition t = RULES.nextTransition(midnight.atZone(ZONE).toInstant());
+        if (t != null && t.getDateTimeBefore().toLocalDate().equals(date)) {
+            LocalDateTime later = t.isGap() ? t.getDateTimeAfter() : t.getDateTimeBefore();
+            this.transition = this.dayStart + later.toLocalTime().toSecondOfDay();
+            this.offsetAfter = t.getOffsetAfter().getTotalSeconds();
+        } else {
+            this.transition = Long.MAX_VALUE;
+            this.offsetAfter = this.offsetBefore;
+        }
+    }
+
+    /**
+     * Parse fixed count of ascii digits
+     *
+     * @param buf   the buffer
+     * @param from  first digit
+     * @param count digit count
+     * @return the number, or -1 if a non digit is found
+     */
+    private static int digits(ByteBuffer buf, int from, int count) {
+        int n = 0;
+        for (int i = from; i < from + count; i++) {
+            int c = buf.get(i) - '0';
+            if (c < 0 || c > 9) return -1;
+            n = n * 10 + c;
+        }
+        return n;
+    }
+
+    /**
+     * Parse a decimal number ({@code [+-]digits[.digits]}) without building a string.
+     * The result is exact-rounded as long as the digits fit in 53 bits, otherwise {@code Double.parseDouble} is used
+     *
+     * @param buf  the buffer
+     * @param from field start
+     * @param to   field end
+     * @return value
+     */
+    static double decodeDouble(ByteBuffer buf, int from, int to) {
+        int start = from, end = to;
+        while (start < end && (buf.get(start) & 0xff) <= ' ') start++;
+        while (end > start && (buf.get(end - 1) & 0xff) <= ' ') end--;
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buf.get(i) == '-' || buf.get(i) == '+')) negative = buf.get(i++) == '-';
+        long mantissa = 0;
+        int scale = 0, digits = 0;
+        boolean dot = false;
+        for (; i < end; i++) {
+            byte c = buf.get(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                if (dot) scale++;
+                if (++digits > 18) break;
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                break;
+            }
+        }
+        if (i != end || digits == 0 || mantissa >= MAX_EXACT_MANTISSA || scale >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(string(buf, from, to));
+        }
+        double v = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -v : v;
+    }
+
+    /**
+     * Parse a timestamp with {@code java.time}, for rows outside the fast path
+     *
+     * @param buf  the buffer
+     * @param from field start
+     * @param to   field end
+     * @return epoch seconds
+     */
+    private static long slowTimestamp(ByteBuffer buf, int from, int to) {
+        return LocalDateTime.parse(string(buf, from, to), FORMATTER).atZone(ZONE).toEpochSecond();
+    }
+
+    /**
+     * Copy a byte range to a string
+     *
+     * @param buf  the buffer
+     * @param from range start
+     * @param to   range end
+     * @return string
+     */
+    private static String string(ByteBuffer buf, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        buf.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -29,18 +29,21 @@ package it.edu.liceococito.cocitoWeatherStation;
  * Enum of available data types
  */
 public enum DataType {
-    TEMPERATURE("Temperatura", "Temperature", "T", "°C", "temperature"),
-    HUMIDITY("Umidità", "Humidity", "H", "%", "humidity"),
-    PRESSURE("Pressione", "Pressure", "P", "hPa", "pressure"),
-    PM10("PM10", "PM10", "PM10", "µg/m³", "pm10"),
-    PM25("PM2,5", "PM2,5", "PM25", "µg/m³", "pm25"),
-    SMOKE_AND_FLAMMABLE_VAPOURS("Fumo e vapori infiammabili", "Smoke and flammable vapours", "S", "µg/m³", "smoke");
+    TEMPERATURE("Temperatura", "Temperature", "T", "°C", "temperature", -50, 60, 0.1),
+    HUMIDITY("Umidità", "Humidity", "H", "%", "humidity", 0, 100, 1),
+    PRESSURE("Pressione", "Pressure", "P", "hPa", "pressure", 850, 1100, 1),
+    PM10("PM10", "PM10", "PM10", "µg/m³", "pm10", 0, 1000, 1),
+    PM25("PM2,5", "PM2,5", "PM25", "µg/m³", "pm25", 0, 1000, 1),
+    SMOKE_AND_FLAMMABLE_VAPOURS("Fumo e vapori infiammabili", "Smoke and flammable vapours", "S", "µg/m³", "smoke", 0, 10000, 10);
 
     private final String italianName;
     private final String englishName;
     private final String symbol;
     private final String unitOfMeasurement;
     private final String csvName;
+    private final double histogramMin;
+    private final double histogramMax;
+    private final double histogramBinWidth;
 
     /**
      * Enum datatype constructor
@@ -50,13 +53,20 @@ public enum DataType {
      * @param symbol            symbol
      * @param unitOfMeasurement unit
      * @param csvName           csv file name without extension
+     * @param histogramMin      default histogram range start
+     * @param histogramMax      default histogram range end
+     * @param histogramBinWidth default histogram bin width
      */
-    DataType(String italianName, String englishName, String symbol, String unitOfMeasurement, String csvName) {
+    DataType(String italianName, String englishName, String symbol, String unitOfMeasurement, String csvName,
+             double histogramMin, double histogramMax, double histogramBinWidth) {
         this.italianName = italianName;
         this.englishName = englishName;
         this.symbol = symbol;
         this.unitOfMeasurement = unitOfMeasurement;
         this.csvName = csvName;
+        this.histogramMin = histogramMin;
+        this.histogramMax = histogramMax;
+        this.histogramBinWidth = histogramBinWidth;
     }
 
     /**
@@ -103,4 +113,31 @@ public enum DataType {
     public String getCsvName() {
         return csvName;
     }
+
+    /**
+     * Get default histogram range start
+     *
+     * @return range start, in the unit of measurement
+     */
+    public double getHistogramMin() {
+        return histogramMin;
+    }
+
+    /**
+     * Get default histogram range end
+     *
+     * @return range end, in the unit of measurement
+     */
+    public double getHistogramMax() {
+        return histogramMax;
+    }
+
+    /**
+     * Get default histogram bin width
+     *
+     * @return bin width, in the unit of measurement
+     */
+    public double getHistogramBinWidth() {
+        return histogramBinWidth;
+    }
 }
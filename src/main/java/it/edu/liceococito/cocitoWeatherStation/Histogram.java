@@ -0,0 +1,304 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-width histogram of values in {@code [min, max]}, counted in primitive bins.
+ * Values outside the range are only counted as underflow or overflow.
+ * Histograms with the same range and bin width can be merged
+ */
+public class Histogram {
+    private static final int MAGIC = 0x4A435748; // "JCWH"
+    private static final int HEADER_SIZE = 48;
+    private final double min;
+    private final double max;
+    private final double binWidth;
+    private final long[] bins;
+    private long underflow;
+    private long overflow;
+
+    /**
+     * Build an empty histogram with the default range and bin width of a data type
+     *
+     * @param dataType data type
+     */
+    public Histogram(DataType dataType) {
+        this(dataType.getHistogramMin(), dataType.getHistogramMax(), dataType.getHistogramBinWidth());
+    }
+
+    /**
+     * Build an empty histogram
+     *
+     * @param min      range start, inclusive
+     * @param max      range end, inclusive
+     * @param binWidth bin width, the last bin is narrower if it does not divide the range
+     * @throws IllegalArgumentException the range is empty or the bin width is not positive
+     */
+    public Histogram(double min, double max, double binWidth) {
+        if (!(max > min)) throw new IllegalArgumentException("Max must be greater than min");
+        if (!(binWidth > 0)) throw new IllegalArgumentException("Bin width must be positive");
+        this.min = min;
+        this.max = max;
+        this.binWidth = binWidth;
+        this.bins = new long[(int) Math.ceil((max - min) / binWidth - 1e-9)];
+    }
+
+    /**
+     * Add a value
+     *
+     * @param value the value, NaN is ignored
+     */
+    public void add(double value) {
+        if (value < this.min) {
+            this.underflow++;
+        } else if (value > this.max) {
+            this.overflow++;
+        } else if (value >= this.min) {
+            int bin = (int) ((value - this.min) / this.binWidth + 1e-9);
+            this.bins[Math.min(bin, this.bins.length - 1)]++;
+        }
+    }
+
+    /**
+     * Add the counts of another histogram
+     *
+     * @param other histogram with the same range and bin width, left unchanged
+     * @throws IllegalArgumentException the histograms have different bins
+     */
+    public void merge(Histogram other) {
+        if (other.min != this.min || other.max != this.max || other.binWidth != this.binWidth)
+            throw new IllegalArgumentException("Histograms have different bins");
+        for (int i = 0; i < this.bins.length; i++) this.bins[i] += other.bins[i];
+        this.underflow += other.underflow;
+        this.overflow += other.overflow;
+    }
+
+    /**
+     * Get how many values were added, including the ones out of range
+     *
+     * @return count
+     */
+    public long getCount() {
+        long count = this.underflow + this.overflow;
+        for (long c : this.bins) count += c;
+        return count;
+    }
+
+    /**
+     * Get the number of bins
+     *
+     * @return bins
+     */
+    public int getBinCount() {
+        return bins.length;
+    }
+
+    /**
+     * Get the count of a bin
+     *
+     * @param bin bin index
+     * @return count
+     */
+    public long getBin(int bin) {
+        return bins[bin];
+    }
+
+    /**
+     * Get a copy of the bin counts, e.g. to draw a distribution chart
+     *
+     * @return counts
+     */
+    public long[] getBins() {
+        return bins.clone();
+    }
+
+    /**
+     * Get the start of a bin
+     *
+     * @param bin bin index, {@code getBinCount()} gives the range end
+     * @return lower bound, inclusive
+     */
+    public double getBinStart(int bin) {
+        return bin >= this.bins.length ? this.max : this.min + bin * this.binWidth;
+    }
+
+    /**
+     * Get how many values were below the range
+     *
+     * @return count
+     */
+    public long getUnderflow() {
+        return underflow;
+    }
+
+    /**
+     * Get how many values were above the range
+     *
+     * @return count
+     */
+    public long getOverflow() {
+        return overflow;
+    }
+
+    /**
+     * Get range start
+     *
+     * @return min
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Get range end
+     *
+     * @return max
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Get bin width
+     *
+     * @return bin width
+     */
+    public double getBinWidth() {
+        return binWidth;
+    }
+
+    /**
+     * Get the index of the bin holding most values, the first one on ties
+     *
+     * @return bin index, {@code -1} if no value is in range
+     */
+    public int getModeBin() {
+        int mode = -1;
+        for (int i = 0; i < this.bins.length; i++) {
+            if (this.bins[i] > 0 && (mode < 0 || this.bins[i] > this.bins[mode])) mode = i;
+        }
+        return mode;
+    }
+
+    /**
+     * Get the center of the bin holding most values
+     *
+     * @return mode, NaN if no value is in range
+     */
+    public double getMode() {
+        int bin = this.getModeBin();
+        return bin < 0 ? Double.NaN : (this.getBinStart(bin) + this.getBinStart(bin + 1)) / 2;
+    }
+
+    /**
+     * Get the fraction of values not greater than a value, interpolating linearly inside its bin
+     *
+     * @param value the value
+     * @return fraction from {@code 0} to {@code 1}, NaN if the histogram is empty
+     */
+    public double getCdf(double value) {
+        long count = this.getCount();
+        if (count == 0) return Double.NaN;
+        if (value < this.min) return 0;
+        if (value >= this.max) return (double) (count - this.overflow) / count;
+        double below = this.underflow;
+        int bin = Math.min((int) ((value - this.min) / this.binWidth), this.bins.length - 1);
+        for (int i = 0; i < bin; i++) below += this.bins[i];
+        double start = this.getBinStart(bin), end = this.getBinStart(bin + 1);
+        below += this.bins[bin] * (value - start) / (end - start);
+        return below / count;
+    }
+
+    /**
+     * Get the value at a quantile, interpolating linearly inside its bin.
+     * Quantiles falling among out of range values are clamped to the range
+     *
+     * @param q quantile, from {@code 0} to {@code 1}, e.g. {@code 0.95} for the 95th percentile
+     * @return value, NaN if the histogram is empty
+     * @throws IllegalArgumentException q is outside {@code [0, 1]}
+     */
+    public double getQuantile(double q) {
+        if (!(q >= 0 && q <= 1)) throw new IllegalArgumentException("Quantile must be between 0 and 1");
+        long count = this.getCount();
+        if (count == 0) return Double.NaN;
+        double target = q * count;
+        double cumulative = this.underflow;
+        if (target <= cumulative) return this.min;
+        for (int i = 0; i < this.bins.length; i++) {
+            if (this.bins[i] > 0 && cumulative + this.bins[i] >= target) {
+                double start = this.getBinStart(i), end = this.getBinStart(i + 1);
+                return start + (end - start) * (target - cumulative) / this.bins[i];
+            }
+            cumulative += this.bins[i];
+        }
+        return this.max;
+    }
+
+    /**
+     * Get the value at a percentile
+     *
+     * @param p percentile, from {@code 0} to {@code 100}
+     * @return value, NaN if the histogram is empty
+     * @throws IllegalArgumentException p is outside {@code [0, 100]}
+     */
+    public double getPercentile(double p) {
+        return this.getQuantile(p / 100);
+    }
+
+    /**
+     * Serialize the histogram
+     *
+     * @return bytes
+     */
+    public byte[] toByteArray() {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + this.bins.length * 8);
+        buf.putInt(MAGIC).putInt(this.bins.length).putDouble(this.min).putDouble(this.max).putDouble(this.binWidth)
+                .putLong(this.underflow).putLong(this.overflow);
+        for (long c : this.bins) buf.putLong(c);
+        return buf.array();
+    }
+
+    /**
+     * Read a histogram written by {@link #toByteArray()}
+     *
+     * @param bytes serialized histogram
+     * @return histogram
+     * @throws IllegalArgumentException the bytes are not a serialized histogram
+     */
+    public static Histogram fromByteArray(byte[] bytes) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        if (bytes.length < HEADER_SIZE || buf.getInt() != MAGIC) throw new IllegalArgumentException("Not a histogram");
+        int length = buf.getInt();
+        Histogram h = new Histogram(buf.getDouble(), buf.getDouble(), buf.getDouble());
+        if (h.bins.length != length || bytes.length != HEADER_SIZE + length * 8) throw new IllegalArgumentException("Not a histogram");
+        h.underflow = buf.getLong();
+        h.overflow = buf.getLong();
+        for (int i = 0; i < length; i++) h.bins[i] = buf.getLong();
+        return h;
+    }
+}
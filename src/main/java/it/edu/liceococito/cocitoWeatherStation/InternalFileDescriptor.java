@@ -25,7 +25,10 @@
 
 package it.edu.liceococito.cocitoWeatherStation;
 
+import org.eclipse.jgit.lib.ObjectId;
+
 import java.io.File;
+import java.time.LocalDate;
 
 /**
  * File desciptor with file and datatype
@@ -33,6 +36,11 @@ import java.io.File;
 class InternalFileDescriptor {
     private File f;
     private DataType dt;
+    private LocalDate date;
+    private ObjectId blob;
+    private long startSecond = Long.MIN_VALUE;
+    private long endSecond = Long.MAX_VALUE;
+    private int period;
 
     /**
      * Build file descriptor
@@ -41,8 +49,33 @@ class InternalFileDescriptor {
      * @param dt data type
      */
     public InternalFileDescriptor(File f, DataType dt) {
+        this(f, dt, null);
+    }
+
+    /**
+     * Build file descriptor of a day file
+     *
+     * @param f    file
+     * @param dt   data type
+     * @param date day the file refers to
+     */
+    public InternalFileDescriptor(File f, DataType dt, LocalDate date) {
+        this(f, dt, date, null);
+    }
+
+    /**
+     * Build file descriptor of a day file stored in the git object database
+     *
+     * @param f    file, as it would be in the working tree
+     * @param dt   data type
+     * @param date day the file refers to
+     * @param blob id of the file content, {@code null} to read the working tree
+     */
+    public InternalFileDescriptor(File f, DataType dt, LocalDate date, ObjectId blob) {
         this.f = f;
         this.dt = dt;
+        this.date = date;
+        this.blob = blob;
     }
 
     /**
@@ -81,4 +114,73 @@ class InternalFileDescriptor {
         this.dt = dt;
     }
 
+    /**
+     * Get day the file refers to
+     *
+     * @return day, {@code null} if the file is not a day file
+     */
+    public LocalDate getDate() {
+        return date;
+    }
+
+    /**
+     * Get id of the file content in the git object database
+     *
+     * @return blob id, {@code null} if the file is read from the working tree
+     */
+    public ObjectId getBlob() {
+        return blob;
+    }
+
+    /**
+     * Copy the descriptor for a query time period, restricting the rows to read to a time range
+     *
+     * @param period      index of the query time period
+     * @param startSecond range start in epoch seconds, inclusive, {@code Long.MIN_VALUE} for none
+     * @param endSecond   range end in epoch seconds, exclusive, {@code Long.MAX_VALUE} for none
+     * @return the restricted copy
+     */
+    InternalFileDescriptor within(int period, long startSecond, long endSecond) {
+        InternalFileDescriptor fd = new InternalFileDescriptor(this.f, this.dt, this.date, this.blob);
+        fd.period = period;
+        fd.startSecond = startSecond;
+        fd.endSecond = endSecond;
+        return fd;
+    }
+
+    /**
+     * Get index of the query time period the file is read for
+     *
+     * @return period index
+     */
+    int getPeriod() {
+        return period;
+    }
+
+    /**
+     * Check whether only part of the file rows are to be read
+     *
+     * @return boolean
+     */
+    boolean isBounded() {
+        return this.startSecond != Long.MIN_VALUE || this.endSecond != Long.MAX_VALUE;
+    }
+
+    /**
+     * Get start of the rows to read
+     *
+     * @return epoch seconds, inclusive
+     */
+    long getStartSecond() {
+        return startSecond;
+    }
+
+    /**
+     * Get end of the rows to read
+     *
+     * @return epoch seconds, exclusive
+     */
+    long getEndSecond() {
+        return endSecond;
+    }
 }
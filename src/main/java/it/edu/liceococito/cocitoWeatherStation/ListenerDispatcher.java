@@ -0,0 +1,165 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+
+/**
+ * Bounded dispatch queue of one listener. Events are delivered in order on the shared dispatch executor,
+ * at most one at a time per listener, so a slow listener only delays itself
+ */
+class ListenerDispatcher {
+    private final StationEventListener listener;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final Executor executor;
+    private final ArrayDeque<StationEvent> queue;
+    private boolean draining;
+    private long delivered;
+    private long dropped;
+    private long failed;
+    private long totalLatencyNanos;
+    private long maxLatencyNanos;
+
+    /**
+     * Build the dispatcher
+     *
+     * @param listener the listener
+     * @param capacity maximum queued events
+     * @param policy   what to do when the queue is full
+     * @param executor executor running the deliveries
+     */
+    ListenerDispatcher(StationEventListener listener, int capacity, OverflowPolicy policy, Executor executor) {
+        if (capacity < 1) throw new IllegalArgumentException("Queue capacity must be at least 1");
+        this.listener = listener;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.executor = executor;
+        this.queue = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * Get the listener
+     *
+     * @return listener
+     */
+    StationEventListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Queue an event; only waits when the policy is {@link OverflowPolicy#BLOCK} and the queue is full
+     *
+     * @param event the event
+     * @throws InterruptedException interrupted while waiting for room
+     */
+    synchronized void offer(StationEvent event) throws InterruptedException {
+        if (this.policy == OverflowPolicy.COALESCE_TO_LATEST) {
+            for (Iterator<StationEvent> i = this.queue.iterator(); i.hasNext(); ) {
+                if (i.next().getKind() == event.getKind()) {
+                    i.remove();
+                    this.dropped++;
+                    break;
+                }
+            }
+        }
+        while (this.queue.size() >= this.capacity) {
+            if (this.policy == OverflowPolicy.BLOCK) {
+                this.wait();
+            } else {
+                this.queue.removeFirst();
+                this.dropped++;
+            }
+        }
+        this.queue.addLast(event);
+        if (!this.draining) {
+            this.draining = true;
+            this.executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Deliver queued events until the queue is empty.
+     * An error thrown by the listener is propagated, after handing the remaining events to a new delivery task
+     */
+    private void drain() {
+        while (true) {
+            StationEvent event;
+            synchronized (this) {
+                event = this.queue.pollFirst();
+                if (event == null) {
+                    this.draining = false;
+                    return;
+                }
+                this.notifyAll();
+            }
+            boolean ok = true;
+            try {
+                event.deliver(this.listener);
+            } catch (RuntimeException e) {
+                ok = false;
+            } catch (Error e) {
+                this.record(event, false);
+                synchronized (this) {
+                    if (this.queue.isEmpty()) this.draining = false;
+                    else this.executor.execute(this::drain);
+                }
+                throw e;
+            }
+            this.record(event, ok);
+        }
+    }
+
+    /**
+     * Count a delivered or failed event
+     *
+     * @param event the event
+     * @param ok    false if the listener threw
+     */
+    private synchronized void record(StationEvent event, boolean ok) {
+        long latency = System.nanoTime() - event.getEnqueuedNanos();
+        if (ok) this.delivered++;
+        else this.failed++;
+        this.totalLatencyNanos += latency;
+        this.maxLatencyNanos = Math.max(this.maxLatencyNanos, latency);
+    }
+
+    /**
+     * Get a snapshot of the metrics
+     *
+     * @return metrics
+     */
+    synchronized ListenerMetrics getMetrics() {
+        StationEvent oldest = this.queue.peekFirst();
+        long lag = oldest == null ? 0 : System.nanoTime() - oldest.getEnqueuedNanos();
+        long done = this.delivered + this.failed;
+        return new ListenerMetrics(this.delivered, this.dropped, this.failed, this.queue.size(), Duration.ofNanos(lag),
+                Duration.ofNanos(done == 0 ? 0 : this.totalLatencyNanos / done), Duration.ofNanos(this.maxLatencyNanos));
+    }
+}
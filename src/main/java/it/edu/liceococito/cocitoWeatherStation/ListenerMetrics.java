@@ -0,0 +1,130 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import java.time.Duration;
+
+/**
+ * Snapshot of the dispatch metrics of one listener
+ */
+public class ListenerMetrics {
+    private final long delivered;
+    private final long dropped;
+    private final long failed;
+    private final int queued;
+    private final Duration lag;
+    private final Duration meanLatency;
+    private final Duration maxLatency;
+
+    /**
+     * Build metrics snapshot
+     */
+    ListenerMetrics(long delivered, long dropped, long failed, int queued, Duration lag, Duration meanLatency, Duration maxLatency) {
+        this.delivered = delivered;
+        this.dropped = dropped;
+        this.failed = failed;
+        this.queued = queued;
+        this.lag = lag;
+        this.meanLatency = meanLatency;
+        this.maxLatency = maxLatency;
+    }
+
+    /**
+     * Get number of events delivered to the listener
+     *
+     * @return delivered events
+     */
+    public long getDelivered() {
+        return delivered;
+    }
+
+    /**
+     * Get number of events discarded or coalesced because the queue was full
+     *
+     * @return dropped events
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Get number of deliveries where the listener threw an exception
+     *
+     * @return failed deliveries
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Get number of events waiting in the queue
+     *
+     * @return queued events
+     */
+    public int getQueued() {
+        return queued;
+    }
+
+    /**
+     * Get how long the oldest queued event has been waiting
+     *
+     * @return lag, zero when the queue is empty
+     */
+    public Duration getLag() {
+        return lag;
+    }
+
+    /**
+     * Get mean time from queueing an event to the end of its delivery
+     *
+     * @return mean latency, zero if nothing was delivered
+     */
+    public Duration getMeanLatency() {
+        return meanLatency;
+    }
+
+    /**
+     * Get maximum time from queueing an event to the end of its delivery
+     *
+     * @return max latency
+     */
+    public Duration getMaxLatency() {
+        return maxLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "ListenerMetrics{" +
+                "delivered=" + delivered +
+                ", dropped=" + dropped +
+                ", failed=" + failed +
+                ", queued=" + queued +
+                ", lag=" + lag +
+                ", meanLatency=" + meanLatency +
+                ", maxLatency=" + maxLatency +
+                '}';
+    }
+}
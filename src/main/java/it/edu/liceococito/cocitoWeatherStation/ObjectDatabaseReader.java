@@ -0,0 +1,131 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads day files straight from the git object database. Blobs are immutable, so decoded files are cached by
+ * blob id and shared by every commit containing them; the day file listings of recent commits are cached too
+ */
+class ObjectDatabaseReader {
+    private static final int SNAPSHOTS = 4;
+    private final Repository repo;
+    private final LinkedHashMap<ObjectId, ArchiveSnapshot> snapshots;
+    private final LinkedHashMap<ObjectId, ColumnarDayFile> blobs;
+    private long capacity;
+    private long weight;
+
+    /**
+     * Build the reader
+     *
+     * @param repo     the repository
+     * @param capacity max number of rows kept in decoded blobs
+     */
+    ObjectDatabaseReader(Repository repo, long capacity) {
+        this.repo = repo;
+        this.snapshots = new LinkedHashMap<>(16, 0.75f, true);
+        this.blobs = new LinkedHashMap<>(16, 0.75f, true);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Get the day files of a commit
+     *
+     * @param commit the commit
+     * @return the snapshot
+     * @throws IOException Input/output error
+     */
+    ArchiveSnapshot snapshot(ObjectId commit) throws IOException {
+        synchronized (this) {
+            ArchiveSnapshot s = this.snapshots.get(commit);
+            if (s != null) return s;
+        }
+        ArchiveSnapshot s = ArchiveSnapshot.read(this.repo, commit);
+        synchronized (this) {
+            this.snapshots.put(s.getCommit(), s);
+            Iterator<ArchiveSnapshot> it = this.snapshots.values().iterator();
+            while (this.snapshots.size() > SNAPSHOTS) {
+                it.next();
+                it.remove();
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Decode a day file blob, or get it from the cache
+     *
+     * @param blob blob id
+     * @return the day file
+     * @throws IOException Input/output error
+     */
+    ColumnarDayFile open(ObjectId blob) throws IOException {
+        synchronized (this) {
+            ColumnarDayFile cdf = this.blobs.get(blob);
+            if (cdf != null) return cdf;
+        }
+        ColumnarDayFile cdf;
+        try (ObjectReader reader = this.repo.newObjectReader()) {
+            cdf = ColumnarDayFile.decode(reader.open(blob).getCachedBytes());
+        }
+        synchronized (this) {
+            if (cdf.size() <= this.capacity && this.blobs.put(blob.copy(), cdf) == null) {
+                this.weight += cdf.size();
+                this.trim();
+            }
+        }
+        return cdf;
+    }
+
+    /**
+     * Set how many rows decoded blobs may hold, least recently used blobs are dropped first
+     *
+     * @param capacity max number of rows, {@code 0} disables the cache
+     */
+    synchronized void setCapacity(long capacity) {
+        this.capacity = capacity;
+        this.trim();
+    }
+
+    /**
+     * Drop least recently used blobs until the cache fits its capacity
+     */
+    private void trim() {
+        Iterator<Map.Entry<ObjectId, ColumnarDayFile>> it = this.blobs.entrySet().iterator();
+        while (this.weight > this.capacity && it.hasNext()) {
+            this.weight -= it.next().getValue().size();
+            it.remove();
+        }
+    }
+}
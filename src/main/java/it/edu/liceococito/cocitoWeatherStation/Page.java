@@ -25,16 +25,395 @@
 
 package it.edu.liceococito.cocitoWeatherStation;
 
-import java.util.ArrayList;
+import java.io.File;
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
 
 /**
- * Data Page
+ * Data Page.
+ * Values are stored in primitive columns (epoch seconds, value, file line) with one file/type descriptor per run
+ * of consecutive values coming from the same file; {@code Value} objects are only built when accessed
+ * through the {@code List} interface. Timestamps have second precision, like the archive.
+ * Pages support every {@code List} operation; appending is the fast path, inserting or removing in the middle
+ * shifts the columns like {@code ArrayList} does. Pages are no longer {@code ArrayList} subclasses:
+ * code that stored a page in an {@code ArrayList<Value>} variable must use {@code List<Value>} or copy it
  */
-public class Page extends ArrayList<Value> {
+public class Page extends AbstractList<Value> implements RandomAccess, Serializable {
+    private long[] epochSeconds;
+    private double[] values;
+    private int[] fileLines;
+    private int size;
+    private File[] runFiles;
+    private DataType[] runTypes;
+    private int[] runStarts;
+    private int runs;
+
     /**
      * Build page
      */
     public Page() {
         super();
+        this.epochSeconds = new long[16];
+        this.values = new double[16];
+        this.fileLines = new int[16];
+        this.runFiles = new File[1];
+        this.runTypes = new DataType[1];
+        this.runStarts = new int[1];
+    }
+
+    /**
+     * Build a copy of a page
+     *
+     * @param other the page to copy
+     */
+    Page(Page other) {
+        super();
+        this.epochSeconds = Arrays.copyOf(other.epochSeconds, Math.max(other.size, 1));
+        this.values = Arrays.copyOf(other.values, Math.max(other.size, 1));
+        this.fileLines = Arrays.copyOf(other.fileLines, Math.max(other.size, 1));
+        this.size = other.size;
+        this.runFiles = Arrays.copyOf(other.runFiles, Math.max(other.runs, 1));
+        this.runTypes = Arrays.copyOf(other.runTypes, Math.max(other.runs, 1));
+        this.runStarts = Arrays.copyOf(other.runStarts, Math.max(other.runs, 1));
+        this.runs = other.runs;
+    }
+
+    /**
+     * Append a data point without building a {@code Value}
+     *
+     * @param epochSecond creation instant in epoch seconds
+     * @param value       data point value
+     * @param file        file containing the data point
+     * @param fileLine    zero-based data row index of the data point in its file
+     * @param type        type of data point
+     */
+    void append(long epochSecond, double value, File file, int fileLine, DataType type) {
+        if (this.size == this.epochSeconds.length) {
+            int capacity = this.size * 2;
+            this.epochSeconds = Arrays.copyOf(this.epochSeconds, capacity);
+            this.values = Arrays.copyOf(this.values, capacity);
+            this.fileLines = Arrays.copyOf(this.fileLines, capacity);
+        }
+        if (this.runs == 0 || !Objects.equals(this.runFiles[this.runs - 1], file) || this.runTypes[this.runs - 1] != type) {
+            if (this.runs == this.runStarts.length) {
+                this.runFiles = Arrays.copyOf(this.runFiles, this.runs * 2);
+                this.runTypes = Arrays.copyOf(this.runTypes, this.runs * 2);
+                this.runStarts = Arrays.copyOf(this.runStarts, this.runs * 2);
+            }
+            this.runFiles[this.runs] = file;
+            this.runTypes[this.runs] = type;
+            this.runStarts[this.runs] = this.size;
+            this.runs++;
+        }
+        this.epochSeconds[this.size] = epochSecond;
+        this.values[this.size] = value;
+        this.fileLines[this.size] = fileLine;
+        this.size++;
+        this.modCount++;
+    }
+
+    /**
+     * Append a value, its creation instant is truncated to seconds
+     *
+     * @param value the value
+     * @return {@code true}
+     */
+    @Override
+    public boolean add(Value value) {
+        this.append(value.getCreated().getEpochSecond(), value.getValue(), value.getFile(), value.getFileLine(), value.getType());
+        return true;
+    }
+
+    /**
+     * Insert a value, its creation instant is truncated to seconds
+     *
+     * @param index position of the value
+     * @param value the value
+     */
+    @Override
+    public void add(int index, Value value) {
+        if (index < 0 || index > this.size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+        if (index == this.size) {
+            this.add(value);
+            return;
+        }
+        File[] files = this.fileColumn(this.size + 1);
+        DataType[] types = this.typeColumn(this.size + 1);
+        System.arraycopy(files, index, files, index + 1, this.size - index);
+        System.arraycopy(types, index, types, index + 1, this.size - index);
+        this.shift(index, 1);
+        this.put(index, value);
+        files[index] = value.getFile();
+        types[index] = value.getType();
+        this.setRuns(files, types);
+        this.modCount++;
+    }
+
+    /**
+     * Replace a value, its creation instant is truncated to seconds
+     *
+     * @param index data point index
+     * @param value the new value
+     * @return the replaced value
+     */
+    @Override
+    public Value set(int index, Value value) {
+        Value old = this.get(index);
+        this.put(index, value);
+        int run = this.run(index);
+        if (!Objects.equals(this.runFiles[run], value.getFile()) || this.runTypes[run] != value.getType()) {
+            File[] files = this.fileColumn(this.size);
+            DataType[] types = this.typeColumn(this.size);
+            files[index] = value.getFile();
+            types[index] = value.getType();
+            this.setRuns(files, types);
+        }
+        return old;
+    }
+
+    /**
+     * Remove a value
+     *
+     * @param index data point index
+     * @return the removed value
+     */
+    @Override
+    public Value remove(int index) {
+        Value old = this.get(index);
+        this.removeRange(index, index + 1);
+        return old;
+    }
+
+    /**
+     * Remove the values in a range
+     *
+     * @param fromIndex first data point index
+     * @param toIndex   data point index after the last one
+     */
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex >= toIndex) return;
+        File[] files = this.fileColumn(this.size);
+        DataType[] types = this.typeColumn(this.size);
+        System.arraycopy(files, toIndex, files, fromIndex, this.size - toIndex);
+        System.arraycopy(types, toIndex, types, fromIndex, this.size - toIndex);
+        this.shift(toIndex, fromIndex - toIndex);
+        this.setRuns(files, types);
+        this.modCount++;
+    }
+
+    /**
+     * Get a view of a data point as a {@code Value}
+     *
+     * @param index data point index
+     * @return value
+     */
+    @Override
+    public Value get(int index) {
+        int run = this.run(index);
+        return new Value(Instant.ofEpochSecond(this.epochSeconds[index]), this.runFiles[run], this.fileLines[index],
+                this.values[index], this.runTypes[run]);
+    }
+
+    /**
+     * Get number of data points
+     *
+     * @return size
+     */
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Remove all data points
+     */
+    @Override
+    public void clear() {
+        this.size = 0;
+        this.runs = 0;
+        Arrays.fill(this.runFiles, null);
+        this.modCount++;
+    }
+
+    /**
+     * Get creation instant of a data point
+     *
+     * @param index data point index
+     * @return epoch seconds
+     */
+    public long getEpochSecond(int index) {
+        this.checkIndex(index);
+        return this.epochSeconds[index];
+    }
+
+    /**
+     * Get value of a data point
+     *
+     * @param index data point index
+     * @return value
+     */
+    public double getValue(int index) {
+        this.checkIndex(index);
+        return this.values[index];
+    }
+
+    /**
+     * Get the zero-based data row index of a data point in its file, see {@code Value.getFileLine()}
+     *
+     * @param index data point index
+     * @return row index
+     */
+    public int getFileLine(int index) {
+        this.checkIndex(index);
+        return this.fileLines[index];
+    }
+
+    /**
+     * Get source file of a data point
+     *
+     * @param index data point index
+     * @return file
+     */
+    public File getFile(int index) {
+        return this.runFiles[this.run(index)];
+    }
+
+    /**
+     * Get type of a data point
+     *
+     * @param index data point index
+     * @return data type
+     */
+    public DataType getType(int index) {
+        return this.runTypes[this.run(index)];
+    }
+
+    /**
+     * Get a copy of the creation instants column
+     *
+     * @return epoch seconds, one per data point
+     */
+    public long[] getEpochSeconds() {
+        return Arrays.copyOf(this.epochSeconds, this.size);
+    }
+
+    /**
+     * Get a copy of the values column
+     *
+     * @return values, one per data point
+     */
+    public double[] getValues() {
+        return Arrays.copyOf(this.values, this.size);
+    }
+
+    /**
+     * Write the primitive columns of a data point
+     *
+     * @param index data point index
+     * @param value the value
+     */
+    private void put(int index, Value value) {
+        this.epochSeconds[index] = value.getCreated().getEpochSecond();
+        this.values[index] = value.getValue();
+        this.fileLines[index] = value.getFileLine();
+    }
+
+    /**
+     * Move the primitive columns from a data point to the end, growing them if needed, and update the size
+     *
+     * @param from  first data point to move
+     * @param delta positions to move by, negative to move towards the start
+     */
+    private void shift(int from, int delta) {
+        if (this.size + delta > this.epochSeconds.length) {
+            int capacity = Math.max(this.size + delta, this.epochSeconds.length * 2);
+            this.epochSeconds = Arrays.copyOf(this.epochSeconds, capacity);
+            this.values = Arrays.copyOf(this.values, capacity);
+            this.fileLines = Arrays.copyOf(this.fileLines, capacity);
+        }
+        System.arraycopy(this.epochSeconds, from, this.epochSeconds, from + delta, this.size - from);
+        System.arraycopy(this.values, from, this.values, from + delta, this.size - from);
+        System.arraycopy(this.fileLines, from, this.fileLines, from + delta, this.size - from);
+        this.size += delta;
+    }
+
+    /**
+     * Expand the file descriptor runs to one file per data point
+     *
+     * @param length array length, at least the size
+     * @return files, one per data point
+     */
+    private File[] fileColumn(int length) {
+        File[] files = new File[length];
+        for (int r = 0; r < this.runs; r++) {
+            int end = r + 1 < this.runs ? this.runStarts[r + 1] : this.size;
+            Arrays.fill(files, this.runStarts[r], end, this.runFiles[r]);
+        }
+        return files;
+    }
+
+    /**
+     * Expand the type descriptor runs to one type per data point
+     *
+     * @param length array length, at least the size
+     * @return types, one per data point
+     */
+    private DataType[] typeColumn(int length) {
+        DataType[] types = new DataType[length];
+        for (int r = 0; r < this.runs; r++) {
+            int end = r + 1 < this.runs ? this.runStarts[r + 1] : this.size;
+            Arrays.fill(types, this.runStarts[r], end, this.runTypes[r]);
+        }
+        return types;
+    }
+
+    /**
+     * Rebuild the descriptor runs from one file and type per data point
+     *
+     * @param files files, one per data point
+     * @param types types, one per data point
+     */
+    private void setRuns(File[] files, DataType[] types) {
+        this.runs = 0;
+        Arrays.fill(this.runFiles, null);
+        for (int i = 0; i < this.size; i++) {
+            if (this.runs > 0 && Objects.equals(this.runFiles[this.runs - 1], files[i]) && this.runTypes[this.runs - 1] == types[i])
+                continue;
+            if (this.runs == this.runStarts.length) {
+                this.runFiles = Arrays.copyOf(this.runFiles, this.runs * 2);
+                this.runTypes = Arrays.copyOf(this.runTypes, this.runs * 2);
+                this.runStarts = Arrays.copyOf(this.runStarts, this.runs * 2);
+            }
+            this.runFiles[this.runs] = files[i];
+            this.runTypes[this.runs] = types[i];
+            this.runStarts[this.runs] = i;
+            this.runs++;
+        }
+    }
+
+    /**
+     * Find the descriptor run containing a data point
+     *
+     * @param index data point index
+     * @return run index
+     */
+    private int run(int index) {
+        this.checkIndex(index);
+        int run = Arrays.binarySearch(this.runStarts, 0, this.runs, index);
+        return run >= 0 ? run : -run - 2;
+    }
+
+    /**
+     * Check that an index is in bounds
+     *
+     * @param index data point index
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= this.size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
     }
 }
@@ -0,0 +1,81 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Infers how often the station publishes measurements from the {@code utciso} timestamps seen so far
+ */
+class PublishCadenceEstimator {
+    private static final int SAMPLES = 8;
+    private final long[] deltas;
+    private int count;
+    private Instant latest;
+
+    /**
+     * Build an estimator with no samples
+     */
+    PublishCadenceEstimator() {
+        this.deltas = new long[SAMPLES];
+    }
+
+    /**
+     * Record a measurement timestamp; repeated or older timestamps are ignored
+     *
+     * @param instant the {@code utciso} timestamp
+     */
+    void record(Instant instant) {
+        if (this.latest != null && instant.isAfter(this.latest)) {
+            this.deltas[this.count % SAMPLES] = Duration.between(this.latest, instant).toMillis();
+            this.count++;
+        }
+        if (this.latest == null || instant.isAfter(this.latest)) this.latest = instant;
+    }
+
+    /**
+     * Get the median interval between publications
+     *
+     * @return cadence, {@code null} until at least two intervals were seen
+     */
+    Duration getCadence() {
+        if (this.count < 2) return null;
+        long[] sorted = Arrays.copyOf(this.deltas, Math.min(this.count, SAMPLES));
+        Arrays.sort(sorted);
+        return Duration.ofMillis(sorted[sorted.length / 2]);
+    }
+
+    /**
+     * Get the latest timestamp seen
+     *
+     * @return instant, {@code null} if none
+     */
+    Instant getLatest() {
+        return latest;
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch (KLL, Karnin-Lang-Liberty) with bounded memory.
+ * With the default {@code k = 200} at most about 650 values are kept whatever the count, and a quantile's rank is
+ * within about {@link #getNormalizedRankError()} (1.3%) of the requested one with high probability.
+ * Sketches of parallel partial scans or of precomputed days can be merged; merging compacts, but the merged sketch
+ * keeps the same error bound as a sketch built from all the values.
+ * Compaction choices come from a fixed seed, so the same input always gives the same sketch
+ */
+public class QuantileSketch {
+    /**
+     * Default accuracy parameter
+     */
+    public static final int DEFAULT_K = 200;
+    private static final int MAGIC = 0x4A434B4C; // "JCKL"
+    private final int k;
+    private double[][] levels;
+    private int[] sizes;
+    private int numLevels;
+    private int retained;
+    private int limit;
+    private long count;
+    private double min;
+    private double max;
+    private long random;
+
+    /**
+     * Build an empty sketch with the default accuracy
+     */
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * Build an empty sketch
+     *
+     * @param k accuracy parameter, memory and accuracy grow linearly with it
+     * @throws IllegalArgumentException k is less than 8
+     */
+    public QuantileSketch(int k) {
+        if (k < 8) throw new IllegalArgumentException("k must be at least 8");
+        this.k = k;
+        this.levels = new double[][]{new double[k]};
+        this.sizes = new int[1];
+        this.numLevels = 1;
+        this.limit = capacity(k, 0);
+        this.min = Double.NaN;
+        this.max = Double.NaN;
+        this.random = 0x9E3779B97F4A7C15L;
+    }
+
+    /**
+     * Add a value
+     *
+     * @param value the value, NaN is ignored
+     */
+    public void add(double value) {
+        if (Double.isNaN(value)) return;
+        if (this.count == 0 || value < this.min) this.min = value;
+        if (this.count == 0 || value > this.max) this.max = value;
+        this.count++;
+        this.push(0, value);
+        this.compress();
+    }
+
+    /**
+     * Add the values of another sketch
+     *
+     * @param other the other sketch
+     */
+    public void merge(QuantileSketch other) {
+        if (other.count == 0) return;
+        if (this.count == 0 || other.min < this.min) this.min = other.min;
+        if (this.count == 0 || other.max > this.max) this.max = other.max;
+        this.count += other.count;
+        for (int h = 0; h < other.numLevels; h++) {
+            for (int i = 0; i < other.sizes[h]; i++) this.push(h, other.levels[h][i]);
+        }
+        this.compress();
+    }
+
+    /**
+     * Get the value at a quantile
+     *
+     * @param q quantile, from {@code 0} (min) to {@code 1} (max), e.g. {@code 0.98} for the 98th percentile
+     * @return value, NaN if the sketch is empty
+     * @throws IllegalArgumentException q is outside {@code [0, 1]}
+     */
+    public double getQuantile(double q) {
+        if (!(q >= 0 && q <= 1)) throw new IllegalArgumentException("Quantile must be between 0 and 1");
+        if (this.count == 0) return Double.NaN;
+        if (q == 0) return this.min;
+        if (q == 1) return this.max;
+        int retained = this.getRetained();
+        double[] items = new double[retained];
+        long[] weights = new long[retained];
+        int n = 0;
+        for (int h = 0; h < this.numLevels; h++) {
+            System.arraycopy(this.levels[h], 0, items, n, this.sizes[h]);
+            Arrays.fill(weights, n, n + this.sizes[h], 1L << h);
+            n += this.sizes[h];
+        }
+        Integer[] order = new Integer[retained];
+        for (int i = 0; i < retained; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(items[a], items[b]));
+        double target = q * this.count;
+        long cumulative = 0;
+        for (Integer i : order) {
+            cumulative += weights[i];
+            if (cumulative >= target) return items[i];
+        }
+        return this.max;
+    }
+
+    /**
+     * Get the median
+     *
+     * @return median, NaN if the sketch is empty
+     */
+    public double getMedian() {
+        return this.getQuantile(0.5);
+    }
+
+    /**
+     * Get how many values were added
+     *
+     * @return count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get the smallest value added
+     *
+     * @return min, NaN if the sketch is empty
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Get the largest value added
+     *
+     * @return max, NaN if the sketch is empty
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Get the accuracy parameter
+     *
+     * @return k
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Get how many values the sketch keeps
+     *
+     * @return retained values
+     */
+    public int getRetained() {
+        return retained;
+    }
+
+    /**
+     * Get the approximate rank error of quantiles, as a fraction of the count (99% confidence)
+     *
+     * @return normalized rank error
+     */
+    public double getNormalizedRankError() {
+        return 2.296 / Math.pow(this.k, 0.9723);
+    }
+
+    /**
+     * Get the largest number of bytes {@link #write(ByteBuffer, int)} needs for any count
+     *
+     * @param k accuracy parameter
+     * @return bytes
+     */
+    static int maxSerializedSize(int k) {
+        int items = 0;
+        for (int depth = 0; depth < 64; depth++) items += capacity(k, depth);
+        return 48 + 64 * 4 + items * 8;
+    }
+
+    /**
+     * Write the sketch at an offset
+     *
+     * @param buf    buffer
+     * @param offset byte offset
+     */
+    void write(ByteBuffer buf, int offset) {
+        buf.putInt(offset, MAGIC).putInt(offset + 4, this.k).putInt(offset + 8, this.numLevels).putInt(offset + 12, 0)
+                .putLong(offset + 16, this.count).putDouble(offset + 24, this.min);
+        int o = offset + 32;
+        buf.putDouble(o, this.max).putLong(o + 8, this.random);
+        o += 16;
+        for (int h = 0; h < this.numLevels; h++, o += 4) buf.putInt(o, this.sizes[h]);
+        for (int h = 0; h < this.numLevels; h++) {
+            for (int i = 0; i < this.sizes[h]; i++, o += 8) buf.putDouble(o, this.levels[h][i]);
+        }
+    }
+
+    /**
+     * Read a sketch written by {@link #write(ByteBuffer, int)}, including its compaction state, so adding the same
+     * values to the read sketch and to the written one gives the same sketch
+     *
+     * @param buf    buffer
+     * @param offset byte offset
+     * @return the sketch, {@code null} if there is none at the offset
+     */
+    static QuantileSketch read(ByteBuffer buf, int offset) {
+        if (buf.getInt(offset) != MAGIC) return null;
+        QuantileSketch s = new QuantileSketch(buf.getInt(offset + 4));
+        int numLevels = buf.getInt(offset + 8);
+        s.count = buf.getLong(offset + 16);
+        s.min = buf.getDouble(offset + 24);
+        s.max = buf.getDouble(offset + 32);
+        s.random = buf.getLong(offset + 40);
+        s.levels = new double[numLevels][];
+        s.sizes = new int[numLevels];
+        s.numLevels = numLevels;
+        s.limit = limit(s.k, numLevels);
+        int o = offset + 48;
+        for (int h = 0; h < numLevels; h++, o += 4) {
+            s.sizes[h] = buf.getInt(o);
+            s.retained += s.sizes[h];
+        }
+        for (int h = 0; h < numLevels; h++) {
+            s.levels[h] = new double[Math.max(2, s.sizes[h])];
+            for (int i = 0; i < s.sizes[h]; i++, o += 8) s.levels[h][i] = buf.getDouble(o);
+        }
+        return s;
+    }
+
+    /**
+     * Append a value to a level, adding levels as needed
+     */
+    private void push(int h, double value) {
+        while (h >= this.numLevels) {
+            if (this.numLevels == this.levels.length) {
+                this.levels = Arrays.copyOf(this.levels, this.numLevels * 2);
+                this.sizes = Arrays.copyOf(this.sizes, this.numLevels * 2);
+            }
+            this.levels[this.numLevels] = new double[Math.max(2, capacity(this.k, 0))];
+            this.sizes[this.numLevels] = 0;
+            this.numLevels++;
+            this.limit = limit(this.k, this.numLevels);
+        }
+        if (this.sizes[h] == this.levels[h].length) this.levels[h] = Arrays.copyOf(this.levels[h], this.sizes[h] * 2);
+        this.levels[h][this.sizes[h]++] = value;
+        this.retained++;
+    }
+
+    /**
+     * Compact full levels, bottom up, until the sketch fits its capacity
+     */
+    private void compress() {
+        while (this.retained >= this.limit) {
+            for (int h = 0; h < this.numLevels; h++) {
+                if (this.sizes[h] >= capacity(this.k, this.numLevels - 1 - h)) {
+                    this.compact(h);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sort a level and promote every other value to the next level, keeping one value back if the size is odd
+     */
+    private void compact(int h) {
+        double[] level = this.levels[h];
+        int size = this.sizes[h];
+        Arrays.sort(level, 0, size);
+        int keep = size % 2;
+        this.random ^= this.random << 13;
+        this.random ^= this.random >>> 7;
+        this.random ^= this.random << 17;
+        int offset = (int) (this.random & 1);
+        this.sizes[h] = keep;
+        this.retained -= size - keep;
+        double kept = level[size - 1];
+        int pairs = size - keep;
+        double[] promoted = new double[pairs / 2];
+        for (int i = 0; i < promoted.length; i++) promoted[i] = level[2 * i + offset];
+        if (keep == 1) level[0] = kept;
+        for (double v : promoted) this.push(h + 1, v);
+    }
+
+    /**
+     * Total capacity of the levels of a sketch
+     *
+     * @param k         accuracy parameter
+     * @param numLevels number of levels
+     * @return capacity
+     */
+    private static int limit(int k, int numLevels) {
+        int total = 0;
+        for (int depth = 0; depth < numLevels; depth++) total += capacity(k, depth);
+        return total;
+    }
+
+    /**
+     * Capacity of a level
+     *
+     * @param k     accuracy parameter
+     * @param depth distance from the top level
+     * @return capacity
+     */
+    private static int capacity(int k, int depth) {
+        return Math.max(2, (int) Math.ceil(k * Math.pow(2.0 / 3.0, depth)));
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of query results, weighted by number of values. Every entry is tied to the HEAD commit it was
+ * computed at and is only returned at that commit. When HEAD moves through an update the entries not reading
+ * changed day files move to the new commit; entries of other commits are never returned and age out
+ */
+class QueryCache {
+    private final LinkedHashMap<String, QueryCacheEntry> entries;
+    private long capacity;
+    private long weight;
+    private long hits, misses, evictions, invalidations;
+
+    /**
+     * Build cache
+     *
+     * @param capacity max number of cached values, {@code 0} disables the cache
+     */
+    QueryCache(long capacity) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Look a result up
+     *
+     * @param key  canonical query
+     * @param head current HEAD commit
+     * @return cached result, {@code null} on miss
+     */
+    synchronized ArchiveQueryResult get(String key, ObjectId head) {
+        QueryCacheEntry e = this.entries.get(key);
+        if (e == null || !head.equals(e.getHead())) {
+            this.misses++;
+            return null;
+        }
+        this.hits++;
+        return e.getResult();
+    }
+
+    /**
+     * Store a result computed at a given HEAD
+     *
+     * @param key   canonical query
+     * @param head  HEAD commit the result was computed at
+     * @param entry the result
+     */
+    synchronized void put(String key, ObjectId head, QueryCacheEntry entry) {
+        if (entry.getWeight() > this.capacity) return;
+        entry.setHead(head);
+        QueryCacheEntry old = this.entries.put(key, entry);
+        if (old != null) this.weight -= old.getWeight();
+        this.weight += entry.getWeight();
+        this.trim();
+    }
+
+    /**
+     * Move the entries of the previous HEAD to the new one after an update,
+     * dropping the entries that read changed day files
+     *
+     * @param before  HEAD commit before the update
+     * @param after   HEAD commit after the update
+     * @param changed day files changed by the update
+     */
+    synchronized void update(ObjectId before, ObjectId after, List<InternalFileDescriptor> changed) {
+        if (before == null || after == null || before.equals(after)) return;
+        Iterator<QueryCacheEntry> it = this.entries.values().iterator();
+        entries:
+        while (it.hasNext()) {
+            QueryCacheEntry e = it.next();
+            if (!before.equals(e.getHead())) continue;
+            for (InternalFileDescriptor fd : changed) {
+                if (e.dependsOn(fd)) {
+                    this.weight -= e.getWeight();
+                    this.invalidations++;
+                    it.remove();
+                    continue entries;
+                }
+            }
+            e.setHead(after);
+        }
+    }
+
+    /**
+     * Drop every entry
+     */
+    synchronized void clear() {
+        this.invalidations += this.entries.size();
+        this.entries.clear();
+        this.weight = 0;
+    }
+
+    /**
+     * Set max number of cached values
+     *
+     * @param capacity capacity, {@code 0} disables the cache
+     */
+    synchronized void setCapacity(long capacity) {
+        this.capacity = capacity;
+        this.trim();
+    }
+
+    /**
+     * Get counters
+     *
+     * @return counters snapshot
+     */
+    synchronized QueryCacheStats getStats() {
+        return new QueryCacheStats(this.hits, this.misses, this.evictions, this.invalidations, this.entries.size(), this.weight);
+    }
+
+    /**
+     * Drop least recently used entries until the cache fits its capacity
+     */
+    private void trim() {
+        Iterator<Map.Entry<String, QueryCacheEntry>> it = this.entries.entrySet().iterator();
+        while (this.weight > this.capacity && it.hasNext()) {
+            this.weight -= it.next().getValue().getWeight();
+            this.evictions++;
+            it.remove();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.time.LocalDate;
+import java.util.EnumSet;
+
+/**
+ * Cached query result with the archive files it depends on
+ */
+class QueryCacheEntry {
+    private final ArchiveQueryResult result;
+    private final long weight;
+    private final EnumSet<DataType> types;
+    private final LocalDate firstDay;
+    private final LocalDate lastDay;
+    private ObjectId head;
+
+    /**
+     * Build entry
+     *
+     * @param result   the result
+     * @param weight   number of values in the result
+     * @param types    data types read by the query
+     * @param firstDay first day read by the query
+     * @param lastDay  last day read by the query
+     */
+    QueryCacheEntry(ArchiveQueryResult result, long weight, EnumSet<DataType> types, LocalDate firstDay, LocalDate lastDay) {
+        this.result = result;
+        this.weight = weight;
+        this.types = types;
+        this.firstDay = firstDay;
+        this.lastDay = lastDay;
+    }
+
+    /**
+     * Get the result
+     *
+     * @return result
+     */
+    ArchiveQueryResult getResult() {
+        return result;
+    }
+
+    /**
+     * Get number of values in the result
+     *
+     * @return weight
+     */
+    long getWeight() {
+        return weight;
+    }
+
+    /**
+     * Get the HEAD commit the result holds for
+     *
+     * @return commit
+     */
+    ObjectId getHead() {
+        return head;
+    }
+
+    /**
+     * Set the HEAD commit the result holds for
+     *
+     * @param head commit
+     */
+    void setHead(ObjectId head) {
+        this.head = head;
+    }
+
+    /**
+     * Check whether the result depends on a day file
+     *
+     * @param fd day file descriptor
+     * @return boolean
+     */
+    boolean dependsOn(InternalFileDescriptor fd) {
+        return this.types.contains(fd.getDt()) && fd.getDate() != null
+                && !fd.getDate().isBefore(this.firstDay) && !fd.getDate().isAfter(this.lastDay);
+    }
+}
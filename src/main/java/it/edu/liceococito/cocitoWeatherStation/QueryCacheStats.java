@@ -0,0 +1,121 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+/**
+ * Counters of the station query result cache
+ */
+public class QueryCacheStats {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long invalidations;
+    private final int entries;
+    private final long weight;
+
+    /**
+     * Build counters snapshot
+     *
+     * @param hits          lookups answered from the cache
+     * @param misses        lookups that had to run the query
+     * @param evictions     entries dropped to stay within capacity
+     * @param invalidations entries dropped because the archive changed
+     * @param entries       cached results
+     * @param weight        cached values
+     */
+    QueryCacheStats(long hits, long misses, long evictions, long invalidations, int entries, long weight) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.invalidations = invalidations;
+        this.entries = entries;
+        this.weight = weight;
+    }
+
+    /**
+     * Get number of lookups answered from the cache
+     *
+     * @return hits
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get number of lookups that had to run the query
+     *
+     * @return misses
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get number of entries dropped to stay within capacity
+     *
+     * @return evictions
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Get number of entries dropped because the archive changed
+     *
+     * @return invalidations
+     */
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * Get number of cached results
+     *
+     * @return entries
+     */
+    public int getEntries() {
+        return entries;
+    }
+
+    /**
+     * Get number of cached values
+     *
+     * @return weight
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    /**
+     * Get fraction of lookups answered from the cache
+     *
+     * @return hit ratio, {@code 0} if there were no lookups
+     */
+    public double getHitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : hits / (double) lookups;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import java.io.InterruptedIOException;
+import java.time.Instant;
+import java.util.concurrent.Future;
+
+/**
+ * Deadline, cancellation and progress reporting of a running scan, checked between files and between pages.
+ * Partial scans of the same query running concurrently can share it
+ */
+final class QueryControl {
+    private final Instant deadline;
+    private final QueryProgressListener listener;
+    private final Future<?> future;
+    private int filesTotal;
+    private int filesRead;
+    private long valuesRead;
+    private volatile boolean cancelled;
+
+    /**
+     * Build the control of a query
+     *
+     * @param archiveQuery the query, giving deadline and progress listener
+     * @param future       future abandoned if cancelled, {@code null} for synchronous queries
+     */
+    QueryControl(ArchiveQuery archiveQuery, Future<?> future) {
+        this.deadline = archiveQuery.getDeadline();
+        this.listener = archiveQuery.getProgressListener();
+        this.future = future;
+    }
+
+    /**
+     * Add files to the number of files the query reads
+     *
+     * @param files number of files
+     */
+    synchronized void addFiles(int files) {
+        this.filesTotal += files;
+    }
+
+    /**
+     * Record that a file was read and notify the progress listener
+     *
+     * @param values values returned from the file
+     */
+    synchronized void fileRead(long values) {
+        this.filesRead++;
+        this.valuesRead += values;
+        if (this.listener != null) this.listener.receiveQueryProgress(this.filesRead, this.filesTotal, this.valuesRead);
+    }
+
+    /**
+     * Stop every scan sharing this control at its next check, e.g. when a partial scan of the same query failed
+     */
+    void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * Stop the query if it was cancelled, its thread interrupted or its deadline passed
+     *
+     * @throws InterruptedIOException the query must stop
+     */
+    void check() throws InterruptedIOException {
+        if (this.cancelled || (this.future != null && this.future.isCancelled())) throw new InterruptedIOException("Query cancelled");
+        if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Query interrupted");
+        if (this.deadline != null && Instant.now().isAfter(this.deadline))
+            throw new InterruptedIOException("Query deadline exceeded");
+    }
+}
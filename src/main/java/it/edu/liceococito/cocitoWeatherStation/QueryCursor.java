@@ -0,0 +1,160 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Opaque position in the values of a query, where the next page starts.
+ * It records the archive commit the first page was read at, so later pages read the same data: the commit of a
+ * query revision is read even if the archive was updated in between, a working tree cursor is rejected after an update.
+ * It also records the day file and row of the next value, so a page is read without reading the pages before it.
+ * Use {@link #toString()} and {@link #parse(String)} to hand it to clients
+ */
+public class QueryCursor {
+    private static final byte VERSION = 1;
+    private static final int SIZE = 1 + Constants.OBJECT_ID_LENGTH + 4 + 4 + 1 + 8 + 4;
+    private final ObjectId commit;
+    private final int queryHash;
+    private final int period;
+    private final DataType dataType;
+    private final LocalDate date;
+    private final int row;
+
+    /**
+     * Build the cursor
+     *
+     * @param commit    commit the query reads
+     * @param queryHash hash of the query canonical key
+     * @param period    index of the time period of the next value
+     * @param dataType  data type of the next value
+     * @param date      day file of the next value
+     * @param row       row of the next value in its day file
+     */
+    QueryCursor(ObjectId commit, int queryHash, int period, DataType dataType, LocalDate date, int row) {
+        this.commit = commit;
+        this.queryHash = queryHash;
+        this.period = period;
+        this.dataType = dataType;
+        this.date = date;
+        this.row = row;
+    }
+
+    /**
+     * Read a cursor from its string form
+     *
+     * @param cursor string given by {@link #toString()}
+     * @return the cursor
+     * @throws IllegalArgumentException the string is not a cursor
+     */
+    public static QueryCursor parse(String cursor) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Not a query cursor", e);
+        }
+        if (bytes.length != SIZE || bytes[0] != VERSION) throw new IllegalArgumentException("Not a query cursor");
+        ByteBuffer buf = ByteBuffer.wrap(bytes, 1, SIZE - 1);
+        ObjectId commit = ObjectId.fromRaw(bytes, 1);
+        buf.position(1 + Constants.OBJECT_ID_LENGTH);
+        int queryHash = buf.getInt(), period = buf.getInt(), type = buf.get();
+        if (type < 0 || type >= DataType.values().length) throw new IllegalArgumentException("Not a query cursor");
+        return new QueryCursor(commit, queryHash, period, DataType.values()[type], LocalDate.ofEpochDay(buf.getLong()), buf.getInt());
+    }
+
+    /**
+     * Get the cursor string form, safe to use in URLs
+     *
+     * @return string
+     */
+    @Override
+    public String toString() {
+        ByteBuffer buf = ByteBuffer.allocate(SIZE);
+        buf.put(VERSION);
+        this.commit.copyRawTo(buf.array(), 1);
+        buf.position(1 + Constants.OBJECT_ID_LENGTH);
+        buf.putInt(this.queryHash).putInt(this.period).put((byte) this.dataType.ordinal()).putLong(this.date.toEpochDay()).putInt(this.row);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buf.array());
+    }
+
+    /**
+     * Get the commit the query reads
+     *
+     * @return commit id
+     */
+    ObjectId getCommit() {
+        return commit;
+    }
+
+    /**
+     * Get the hash of the canonical key of the query the cursor belongs to
+     *
+     * @return hash
+     */
+    int getQueryHash() {
+        return queryHash;
+    }
+
+    /**
+     * Get the row of the next value in its day file
+     *
+     * @return row
+     */
+    int getRow() {
+        return row;
+    }
+
+    /**
+     * Check whether a day file comes before the cursor in the query file order: time period, data type, day
+     *
+     * @param fd    day file of the query
+     * @param types query data types, in order
+     * @return boolean
+     */
+    boolean isAfter(InternalFileDescriptor fd, List<DataType> types) {
+        if (fd.getPeriod() != this.period) return fd.getPeriod() < this.period;
+        int a = types.indexOf(fd.getDt()), b = types.indexOf(this.dataType);
+        if (a != b) return a < b;
+        return fd.getDate().isBefore(this.date);
+    }
+
+    /**
+     * Check whether a day file is the one of the next value
+     *
+     * @param fd day file of the query
+     * @return boolean
+     */
+    boolean isAt(InternalFileDescriptor fd) {
+        return fd.getPeriod() == this.period && fd.getDt() == this.dataType && fd.getDate().equals(this.date);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+/**
+ * How the values of a resampling bucket are reduced to one point
+ *
+ * @see ArchiveQuery#setResampling(java.time.Duration, ResampleFunction)
+ */
+public enum ResampleFunction {
+    /**
+     * Mean of the bucket values, at the bucket start
+     */
+    MEAN,
+    /**
+     * Smallest bucket value, at the bucket start
+     */
+    MIN,
+    /**
+     * Largest bucket value, at the bucket start
+     */
+    MAX,
+    /**
+     * Last value of the bucket, at its own time
+     */
+    LAST,
+    /**
+     * Number of values in the bucket, at the bucket start
+     */
+    COUNT,
+    /**
+     * Largest-Triangle-Three-Buckets: the one real value of the bucket that best preserves the shape of the
+     * series, chosen against the previous chosen value and the mean of the next bucket.
+     * The first and last values of the series are always kept
+     */
+    LTTB
+}
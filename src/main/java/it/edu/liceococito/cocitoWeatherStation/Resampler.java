@@ -0,0 +1,333 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reduces the values of a scan to one point per time bucket while they are read, so only the current bucket
+ * (and the next one, for LTTB) is held in memory. Each data type of each query time period is a separate series.
+ * Buckets of whole days start at Europe/Rome midnight, shorter buckets are aligned to the epoch
+ */
+class Resampler implements Iterator<Value>, AutoCloseable {
+    private static final long DAY = 86_400;
+    private final ArchiveValueIterator source;
+    private final long bucketSeconds;
+    private final ResampleFunction function;
+    private final Page ready;
+    private int readyIndex;
+    private boolean exhausted;
+    private int fileIndex;
+    private int period;
+
+    private DataType type;
+    private long start;
+    private long end;
+    private int count;
+    private double sum;
+    private double compensation;
+    private double min;
+    private double max;
+    private long lastTime;
+    private double last;
+    private File lastFile;
+    private int lastLine;
+    private File firstFile;
+    private int firstLine;
+
+    private long[] times;
+    private double[] values;
+    private File[] files;
+    private int[] lines;
+    private long[] pendingTimes;
+    private double[] pendingValues;
+    private File[] pendingFiles;
+    private int[] pendingLines;
+    private int pendingSize;
+    private long selectedTime;
+    private double selectedValue;
+
+    /**
+     * Build the resampler
+     *
+     * @param source   raw values, in series order
+     * @param bucket   bucket size in seconds
+     * @param function reduction of each bucket
+     */
+    Resampler(ArchiveValueIterator source, long bucket, ResampleFunction function) {
+        this.source = source;
+        this.bucketSeconds = bucket;
+        this.function = function;
+        this.ready = new Page();
+        this.fileIndex = -1;
+        if (function == ResampleFunction.LTTB) {
+            this.times = new long[64];
+            this.values = new double[64];
+            this.files = new File[64];
+            this.lines = new int[64];
+            this.pendingTimes = new long[64];
+            this.pendingValues = new double[64];
+            this.pendingFiles = new File[64];
+            this.pendingLines = new int[64];
+        }
+    }
+
+    /**
+     * Check whether another point is available, reading raw values until a bucket is complete
+     *
+     * @return boolean
+     * @throws UncheckedIOException a day file could not be read
+     */
+    @Override
+    public boolean hasNext() {
+        if (this.readyIndex < this.ready.size()) return true;
+        this.ready.clear();
+        this.readyIndex = 0;
+        while (this.ready.size() == 0 && !this.exhausted) {
+            if (this.source.advance()) {
+                InternalFileDescriptor fd = this.source.getDescriptor();
+                if (this.source.getFileIndex() != this.fileIndex) {
+                    this.fileIndex = this.source.getFileIndex();
+                    if (fd.getDt() != this.type || fd.getPeriod() != this.period) this.finishSeries();
+                    this.period = fd.getPeriod();
+                }
+                this.accept(this.source.getEpochSecond(), this.source.getValue(), fd.getF(), this.source.getLine(), fd.getDt());
+            } else {
+                this.exhausted = true;
+                this.finishSeries();
+            }
+        }
+        return this.readyIndex < this.ready.size();
+    }
+
+    /**
+     * Get the next point
+     *
+     * @return value
+     * @throws UncheckedIOException a day file could not be read
+     */
+    @Override
+    public Value next() {
+        if (!this.hasNext()) throw new NoSuchElementException();
+        return this.ready.get(this.readyIndex++);
+    }
+
+    /**
+     * Add a raw value to its bucket, closing the previous bucket when needed. A value earlier than the current
+     * bucket (the repeated hour when clocks go back) is counted in the current bucket
+     */
+    private void accept(long t, double v, File file, int line, DataType dt) {
+        if (this.type == null) {
+            this.type = dt;
+            this.start = Long.MIN_VALUE;
+            this.end = Long.MIN_VALUE;
+            if (this.function == ResampleFunction.LTTB) {
+                this.emit(t, v, file, line);
+                this.selectedTime = t;
+                this.selectedValue = v;
+                this.lastTime = t;
+                this.last = v;
+                this.lastFile = file;
+                this.lastLine = line;
+                return;
+            }
+        }
+        if (t >= this.end) {
+            if (this.count > 0) this.closeBucket();
+            this.openBucket(t);
+        }
+        if (this.count == 0) {
+            this.firstFile = file;
+            this.firstLine = line;
+            this.min = v;
+            this.max = v;
+        }
+        this.count++;
+        double y = v - this.compensation;
+        double s = this.sum + y;
+        this.compensation = (s - this.sum) - y;
+        this.sum = s;
+        if (v < this.min) this.min = v;
+        if (v > this.max) this.max = v;
+        this.lastTime = t;
+        this.last = v;
+        this.lastFile = file;
+        this.lastLine = line;
+        if (this.function == ResampleFunction.LTTB) {
+            int i = this.count - 1;
+            if (i == this.times.length) {
+                this.times = Arrays.copyOf(this.times, i * 2);
+                this.values = Arrays.copyOf(this.values, i * 2);
+                this.files = Arrays.copyOf(this.files, i * 2);
+                this.lines = Arrays.copyOf(this.lines, i * 2);
+            }
+            this.times[i] = t;
+            this.values[i] = v;
+            this.files[i] = file;
+            this.lines[i] = line;
+        }
+    }
+
+    /**
+     * Start the bucket holding an instant
+     *
+     * @param t epoch seconds
+     */
+    private void openBucket(long t) {
+        if (this.bucketSeconds % DAY == 0) {
+            long days = this.bucketSeconds / DAY;
+            LocalDate date = Instant.ofEpochSecond(t).atZone(Station.ARCHIVE_ZONE).toLocalDate();
+            long first = Math.floorDiv(date.toEpochDay(), days) * days;
+            this.start = LocalDate.ofEpochDay(first).atStartOfDay(Station.ARCHIVE_ZONE).toEpochSecond();
+            this.end = LocalDate.ofEpochDay(first + days).atStartOfDay(Station.ARCHIVE_ZONE).toEpochSecond();
+        } else {
+            this.start = Math.floorDiv(t, this.bucketSeconds) * this.bucketSeconds;
+            this.end = this.start + this.bucketSeconds;
+        }
+        this.count = 0;
+        this.sum = 0;
+        this.compensation = 0;
+    }
+
+    /**
+     * Emit the point of a complete bucket; for LTTB the previous bucket is decided now that this one's mean is known
+     */
+    private void closeBucket() {
+        switch (this.function) {
+            case MEAN:
+                this.emit(this.start, this.sum / this.count, this.firstFile, this.firstLine);
+                break;
+            case MIN:
+                this.emit(this.start, this.min, this.firstFile, this.firstLine);
+                break;
+            case MAX:
+                this.emit(this.start, this.max, this.firstFile, this.firstLine);
+                break;
+            case LAST:
+                this.emit(this.lastTime, this.last, this.lastFile, this.lastLine);
+                break;
+            case COUNT:
+                this.emit(this.start, this.count, this.firstFile, this.firstLine);
+                break;
+            default:
+                this.selectPending(this.meanTime(), this.sum / this.count);
+                this.swapPending();
+        }
+    }
+
+    /**
+     * Get the mean time of the current bucket values
+     *
+     * @return epoch seconds
+     */
+    private double meanTime() {
+        long offsets = 0;
+        for (int i = 0; i < this.count; i++) offsets += this.times[i] - this.times[0];
+        return this.times[0] + (double) offsets / this.count;
+    }
+
+    /**
+     * Close the current series: the last bucket and, for LTTB, the last value
+     */
+    private void finishSeries() {
+        if (this.type == null) return;
+        if (this.function != ResampleFunction.LTTB) {
+            if (this.count > 0) this.closeBucket();
+        } else if (this.count > 0) {
+            this.selectPending(this.meanTime(), this.sum / this.count);
+            this.swapPending();
+            this.pendingSize = this.count - 1;
+            this.selectPending(this.lastTime, this.last);
+            this.emit(this.lastTime, this.last, this.lastFile, this.lastLine);
+        }
+        this.count = 0;
+        this.pendingSize = 0;
+        this.type = null;
+    }
+
+    /**
+     * Emit the pending bucket value forming the largest triangle with the last chosen value and a target point
+     *
+     * @param targetTime  time of the target point
+     * @param targetValue value of the target point
+     */
+    private void selectPending(double targetTime, double targetValue) {
+        if (this.pendingSize == 0) return;
+        int best = 0;
+        double bestArea = -1;
+        for (int i = 0; i < this.pendingSize; i++) {
+            double area = Math.abs((this.selectedTime - targetTime) * (this.pendingValues[i] - this.selectedValue)
+                    - (this.selectedTime - this.pendingTimes[i]) * (targetValue - this.selectedValue));
+            if (area > bestArea) {
+                bestArea = area;
+                best = i;
+            }
+        }
+        this.selectedTime = this.pendingTimes[best];
+        this.selectedValue = this.pendingValues[best];
+        this.emit(this.pendingTimes[best], this.pendingValues[best], this.pendingFiles[best], this.pendingLines[best]);
+    }
+
+    /**
+     * Make the current bucket the pending one, reusing the old pending buffers
+     */
+    private void swapPending() {
+        long[] t = this.pendingTimes;
+        double[] v = this.pendingValues;
+        File[] f = this.pendingFiles;
+        int[] l = this.pendingLines;
+        this.pendingTimes = this.times;
+        this.pendingValues = this.values;
+        this.pendingFiles = this.files;
+        this.pendingLines = this.lines;
+        this.pendingSize = this.count;
+        this.times = t;
+        this.values = v;
+        this.files = f;
+        this.lines = l;
+    }
+
+    /**
+     * Queue an output point
+     */
+    private void emit(long t, double v, File file, int line) {
+        this.ready.append(t, v, file, line, this.type);
+    }
+
+    /**
+     * Release the source iterator
+     */
+    @Override
+    public void close() {
+        this.source.close();
+    }
+}
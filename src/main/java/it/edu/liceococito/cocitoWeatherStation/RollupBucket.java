@@ -0,0 +1,167 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import java.time.Instant;
+
+/**
+ * Aggregate of the values of a data type over a time bucket
+ */
+public class RollupBucket {
+    private final DataType dataType;
+    private final RollupResolution resolution;
+    private final Instant start;
+    private final Instant end;
+    private final long count;
+    private final double sum;
+    private final double sumOfSquares;
+    private final double min;
+    private final double max;
+
+    /**
+     * Build bucket
+     *
+     * @param dataType     data type
+     * @param resolution   bucket granularity
+     * @param start        bucket start, inclusive
+     * @param end          bucket end, exclusive
+     * @param count        number of values
+     * @param sum          sum of values
+     * @param sumOfSquares sum of squared values
+     * @param min          min value
+     * @param max          max value
+     */
+    RollupBucket(DataType dataType, RollupResolution resolution, Instant start, Instant end, long count, double sum, double sumOfSquares, double min, double max) {
+        this.dataType = dataType;
+        this.resolution = resolution;
+        this.start = start;
+        this.end = end;
+        this.count = count;
+        this.sum = sum;
+        this.sumOfSquares = sumOfSquares;
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * Get data type
+     *
+     * @return data type
+     */
+    public DataType getDataType() {
+        return dataType;
+    }
+
+    /**
+     * Get bucket granularity
+     *
+     * @return resolution
+     */
+    public RollupResolution getResolution() {
+        return resolution;
+    }
+
+    /**
+     * Get bucket start
+     *
+     * @return start instant, inclusive
+     */
+    public Instant getStart() {
+        return start;
+    }
+
+    /**
+     * Get bucket end
+     *
+     * @return end instant, exclusive
+     */
+    public Instant getEnd() {
+        return end;
+    }
+
+    /**
+     * Get number of values
+     *
+     * @return count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get sum of values
+     *
+     * @return sum
+     */
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * Get sum of squared values
+     *
+     * @return sum of squares
+     */
+    public double getSumOfSquares() {
+        return sumOfSquares;
+    }
+
+    /**
+     * Get min value
+     *
+     * @return min
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Get max value
+     *
+     * @return max
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Get mean value
+     *
+     * @return mean
+     */
+    public double getMean() {
+        return sum / count;
+    }
+
+    /**
+     * Get population standard deviation
+     *
+     * @return standard deviation
+     */
+    public double getStdev() {
+        return Math.sqrt(Math.max(0, sumOfSquares / count - this.getMean() * this.getMean()));
+    }
+}
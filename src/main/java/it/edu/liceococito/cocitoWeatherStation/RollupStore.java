@@ -0,0 +1,470 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Persisted hourly, daily and monthly aggregates (count, sum, sum of squares, min, max) of the archive,
+ * plus daily and monthly quantile sketches.
+ * There are two memory-mapped files per data type per year; each day records the size and last modification time
+ * of the csv it was computed from, so stale days are recomputed from the columnar day files when they are needed.
+ * Days changed by an update are always recomputed, since a corrected csv can keep its size
+ */
+class RollupStore {
+    private static final int MAGIC = 0x4A435752; // "JCWR"
+    private static final int VERSION = 4;
+    private static final int DAYS = 366;
+    private static final int HOUR_SLOTS = 25; // days are 23 to 25 hours long
+    private static final int BUCKET = 40;
+    private static final int STAMPS_OFFSET = 16;
+    private static final int HOURLY_OFFSET = STAMPS_OFFSET + DAYS * 16;
+    private static final int DAILY_OFFSET = HOURLY_OFFSET + DAYS * HOUR_SLOTS * BUCKET;
+    private static final int MONTHLY_OFFSET = DAILY_OFFSET + DAYS * BUCKET;
+    private static final int FILE_SIZE = MONTHLY_OFFSET + 12 * BUCKET;
+    private static final int SKETCH_MAGIC = 0x4A43574B; // "JCWK"
+    private static final int SKETCH_SLOT = QuantileSketch.maxSerializedSize(QuantileSketch.DEFAULT_K);
+    private static final int SKETCH_FILE_SIZE = SKETCH_SLOT * (1 + DAYS + 12); // slot 0 is the header
+
+    private final Station station;
+    private final ArchiveIndex index;
+    private final File directory;
+    private final HashMap<String, MappedByteBuffer> years;
+    private final HashMap<String, MappedByteBuffer> sketches;
+
+    /**
+     * Build the store
+     *
+     * @param station   station whose columnar files are aggregated
+     * @param index     archive index, used to detect stale days
+     * @param directory directory of the rollup files
+     */
+    RollupStore(Station station, ArchiveIndex index, File directory) {
+        this.station = station;
+        this.index = index;
+        this.directory = directory;
+        this.years = new HashMap<>();
+        this.sketches = new HashMap<>();
+    }
+
+    /**
+     * Recompute the days that changed in an update, for the years that already have rollups
+     *
+     * @param changed changed day files
+     * @throws IOException Input/output error
+     */
+    synchronized void update(List<InternalFileDescriptor> changed) throws IOException {
+        for (InternalFileDescriptor fd : changed) {
+            LocalDate day = fd.getDate();
+            DataType dt = fd.getDt();
+            if (!this.yearFile(dt, day.getYear()).isFile()) continue;
+            this.refreshDay(day, dt, this.index.getSize(day, dt), this.index.getLastModified(day, dt), true);
+        }
+    }
+
+    /**
+     * Mark days stale so that they are recomputed when next needed, whatever the size and last modification time
+     * of their csv
+     *
+     * @param changed day files to mark, {@code null} to mark every day of every existing year file
+     * @throws IOException Input/output error
+     */
+    synchronized void invalidate(List<InternalFileDescriptor> changed) throws IOException {
+        if (changed != null) {
+            for (InternalFileDescriptor fd : changed) {
+                if (!this.yearFile(fd.getDt(), fd.getDate().getYear()).isFile()) continue;
+                markStale(this.buffer(fd.getDt(), fd.getDate().getYear()), fd.getDate().getDayOfYear() - 1);
+            }
+            return;
+        }
+        for (DataType dt : DataType.values()) {
+            File[] files = new File(this.directory, dt.getCsvName()).listFiles((d, name) -> name.matches("\\d+\\.bin"));
+            if (files == null) continue;
+            for (File f : files) {
+                MappedByteBuffer buf = this.buffer(dt, Integer.parseInt(f.getName().substring(0, f.getName().length() - 4)));
+                for (int i = 0; i < DAYS; i++) markStale(buf, i);
+            }
+        }
+    }
+
+    /**
+     * Compute statistics of the values of a data type in {@code [start, end)}, using the coarsest aggregates
+     * that fit in the range and reading raw values only for partial hours at its edges.
+     * Quantile sketches are kept per day, so the sketch reads raw values for partial days
+     *
+     * @param dt     data type
+     * @param start  range start, inclusive
+     * @param end    range end, exclusive
+     * @param sketch sketch the values in the range are added to
+     * @return statistics
+     * @throws IOException Input/output error
+     */
+    synchronized StatisticsAccumulator statistics(DataType dt, Instant start, Instant end, QuantileSketch sketch) throws IOException {
+        StatisticsAccumulator acc = new StatisticsAccumulator();
+        long s = ceilSecond(start), e = ceilSecond(end);
+        if (s >= e) return acc;
+        LocalDate day = Instant.ofEpochSecond(s).atZone(Station.ARCHIVE_ZONE).toLocalDate();
+        LocalDate last = Instant.ofEpochSecond(e - 1).atZone(Station.ARCHIVE_ZONE).toLocalDate();
+        while (!day.isAfter(last)) {
+            if (day.getDayOfMonth() == 1 && epochSecond(day) >= s && epochSecond(day.plusMonths(1)) <= e) {
+                for (LocalDate d = day; d.getMonth() == day.getMonth(); d = d.plusDays(1)) this.refreshDay(d, dt);
+                acc.merge(accumulator(this.buffer(dt, day.getYear()), MONTHLY_OFFSET + (day.getMonthValue() - 1) * BUCKET));
+                this.mergeSketch(sketch, dt, day.getYear(), DAYS + day.getMonthValue() - 1);
+                day = day.plusMonths(1);
+                continue;
+            }
+            long ds = epochSecond(day), de = epochSecond(day.plusDays(1));
+            this.refreshDay(day, dt);
+            MappedByteBuffer buf = this.buffer(dt, day.getYear());
+            if (ds >= s && de <= e) {
+                acc.merge(accumulator(buf, DAILY_OFFSET + (day.getDayOfYear() - 1) * BUCKET));
+                this.mergeSketch(sketch, dt, day.getYear(), day.getDayOfYear() - 1);
+            } else if (this.index.contains(day, dt)) {
+                ColumnarDayFile cdf = this.station.openColumnar(this.index.getFile(day, dt));
+                for (int row = 0; row < cdf.size(); row++) {
+                    long t = cdf.getEpochSecond(row);
+                    if (t >= s && t < e) sketch.add(cdf.getValue(row));
+                }
+                for (int slot = 0; slot < (de - ds) / 3600; slot++) {
+                    long hs = ds + slot * 3600L, he = hs + 3600;
+                    if (he <= s || hs >= e) continue;
+                    if (hs >= s && he <= e) {
+                        acc.merge(accumulator(buf, hourOffset(day, slot)));
+                        continue;
+                    }
+                    long from = Math.max(s, hs), to = Math.min(e, he);
+                    for (int row = 0; row < cdf.size(); row++) {
+                        long t = cdf.getEpochSecond(row);
+                        if (t >= from && t < to) acc.add(cdf.getValue(row));
+                    }
+                }
+            }
+            day = day.plusDays(1);
+        }
+        return acc;
+    }
+
+    /**
+     * Check from the daily min and max whether any value of a day can match a predicate.
+     * The day is first checked against the size and last modification time of its csv on disk, as the columnar copy
+     * is, so a day rewritten since it was aggregated is never skipped on stale bounds
+     *
+     * @param day       the day
+     * @param dt        data type
+     * @param predicate the predicate
+     * @return false if no value of the day matches
+     * @throws IOException Input/output error
+     */
+    synchronized boolean mayMatch(LocalDate day, DataType dt, ValuePredicate predicate) throws IOException {
+        File csv = this.index.getFile(day, dt);
+        this.refreshDay(day, dt, csv.isFile() ? csv.length() : -1, csv.lastModified(), false);
+        int offset = DAILY_OFFSET + (day.getDayOfYear() - 1) * BUCKET;
+        MappedByteBuffer buf = this.buffer(dt, day.getYear());
+        return buf.getLong(offset) > 0 && predicate.mayMatch(buf.getDouble(offset + 24), buf.getDouble(offset + 32));
+    }
+
+    /**
+     * Get the non-empty buckets of a data type overlapping {@code [start, end)}
+     *
+     * @param dt         data type
+     * @param start      range start, inclusive
+     * @param end        range end, exclusive
+     * @param resolution bucket granularity
+     * @return buckets in time order
+     * @throws IOException Input/output error
+     */
+    synchronized List<RollupBucket> buckets(DataType dt, Instant start, Instant end, RollupResolution resolution) throws IOException {
+        ArrayList<RollupBucket> out = new ArrayList<>();
+        long s = ceilSecond(start), e = ceilSecond(end);
+        if (s >= e) return out;
+        LocalDate day = Instant.ofEpochSecond(s).atZone(Station.ARCHIVE_ZONE).toLocalDate();
+        LocalDate last = Instant.ofEpochSecond(e - 1).atZone(Station.ARCHIVE_ZONE).toLocalDate();
+        if (resolution == RollupResolution.MONTHLY) {
+            for (LocalDate month = day.withDayOfMonth(1); !month.isAfter(last); month = month.plusMonths(1)) {
+                for (LocalDate d = month; d.getMonth() == month.getMonth(); d = d.plusDays(1)) this.refreshDay(d, dt);
+                bucket(out, dt, resolution, this.buffer(dt, month.getYear()), MONTHLY_OFFSET + (month.getMonthValue() - 1) * BUCKET,
+                        epochSecond(month), epochSecond(month.plusMonths(1)));
+            }
+            return out;
+        }
+        for (; !day.isAfter(last); day = day.plusDays(1)) {
+            this.refreshDay(day, dt);
+            MappedByteBuffer buf = this.buffer(dt, day.getYear());
+            long ds = epochSecond(day), de = epochSecond(day.plusDays(1));
+            if (resolution == RollupResolution.DAILY) {
+                bucket(out, dt, resolution, buf, DAILY_OFFSET + (day.getDayOfYear() - 1) * BUCKET, ds, de);
+                continue;
+            }
+            for (int slot = 0; slot < (de - ds) / 3600; slot++) {
+                long hs = ds + slot * 3600L;
+                if (hs + 3600 > s && hs < e) bucket(out, dt, resolution, buf, hourOffset(day, slot), hs, hs + 3600);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Recompute the aggregates of a day if the csv size or last modification time differs from the one
+     * they were computed from
+     *
+     * @param day the day
+     * @param dt  data type
+     * @throws IOException Input/output error
+     */
+    private void refreshDay(LocalDate day, DataType dt) throws IOException {
+        this.refreshDay(day, dt, this.index.getSize(day, dt), this.index.getLastModified(day, dt), false);
+    }
+
+    /**
+     * Recompute the aggregates of a day
+     *
+     * @param day          the day
+     * @param dt           data type
+     * @param size         csv size, {@code -1} if it does not exist
+     * @param lastModified csv last modification time
+     * @param force        recompute even if the csv size and last modification time are unchanged
+     * @throws IOException Input/output error
+     */
+    private void refreshDay(LocalDate day, DataType dt, long size, long lastModified, boolean force) throws IOException {
+        MappedByteBuffer buf = this.buffer(dt, day.getYear());
+        int dayIndex = day.getDayOfYear() - 1;
+        int stamp = STAMPS_OFFSET + dayIndex * 16;
+        if (!force && buf.getLong(stamp) == size && buf.getLong(stamp + 8) == lastModified) return;
+        long[] counts = new long[HOUR_SLOTS];
+        double[] sums = new double[HOUR_SLOTS], squares = new double[HOUR_SLOTS];
+        double[] mins = new double[HOUR_SLOTS], maxs = new double[HOUR_SLOTS];
+        Arrays.fill(mins, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+        QuantileSketch daySketch = new QuantileSketch();
+        if (size >= 0) {
+            long ds = epochSecond(day);
+            ColumnarDayFile cdf = this.station.openColumnar(this.index.getFile(day, dt));
+            for (int row = 0; row < cdf.size(); row++) {
+                int slot = (int) Math.max(0, Math.min(HOUR_SLOTS - 1, Math.floorDiv(cdf.getEpochSecond(row) - ds, 3600)));
+                double v = cdf.getValue(row);
+                daySketch.add(v);
+                if (v < mins[slot]) mins[slot] = v; // NaN is counted but never a bound, as in StatisticsAccumulator
+                if (v > maxs[slot]) maxs[slot] = v;
+                counts[slot]++;
+                sums[slot] += v;
+                squares[slot] += v * v;
+            }
+        }
+        long count = 0;
+        double sum = 0, square = 0, min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+        for (int slot = 0; slot < HOUR_SLOTS; slot++) {
+            writeBucket(buf, hourOffset(day, slot), counts[slot], sums[slot], squares[slot], mins[slot], maxs[slot]);
+            if (counts[slot] == 0) continue;
+            min = Math.min(min, mins[slot]);
+            max = Math.max(max, maxs[slot]);
+            count += counts[slot];
+            sum += sums[slot];
+            square += squares[slot];
+        }
+        writeBucket(buf, DAILY_OFFSET + dayIndex * BUCKET, count, sum, square, min, max);
+        count = 0;
+        sum = square = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+        for (LocalDate d = day.withDayOfMonth(1); d.getMonth() == day.getMonth(); d = d.plusDays(1)) {
+            int o = DAILY_OFFSET + (d.getDayOfYear() - 1) * BUCKET;
+            long c = buf.getLong(o);
+            if (c == 0) continue;
+            min = Math.min(min, buf.getDouble(o + 24));
+            max = Math.max(max, buf.getDouble(o + 32));
+            count += c;
+            sum += buf.getDouble(o + 8);
+            square += buf.getDouble(o + 16);
+        }
+        writeBucket(buf, MONTHLY_OFFSET + (day.getMonthValue() - 1) * BUCKET, count, sum, square, min, max);
+        MappedByteBuffer sketches = this.sketches.get(dt.getCsvName() + day.getYear());
+        daySketch.write(sketches, SKETCH_SLOT * (1 + dayIndex));
+        QuantileSketch monthSketch = new QuantileSketch();
+        for (LocalDate d = day.withDayOfMonth(1); d.getMonth() == day.getMonth(); d = d.plusDays(1)) {
+            this.mergeSketch(monthSketch, dt, day.getYear(), d.getDayOfYear() - 1);
+        }
+        monthSketch.write(sketches, SKETCH_SLOT * (1 + DAYS + day.getMonthValue() - 1));
+        buf.putLong(stamp, size).putLong(stamp + 8, lastModified);
+    }
+
+    /**
+     * Add a stored day or month sketch to a sketch
+     *
+     * @param sketch the sketch to add to
+     * @param dt     data type
+     * @param year   year
+     * @param slot   day of year from {@code 0}, or {@code 366} plus the month from {@code 0}
+     * @throws IOException Input/output error
+     */
+    private void mergeSketch(QuantileSketch sketch, DataType dt, int year, int slot) throws IOException {
+        this.buffer(dt, year);
+        QuantileSketch stored = QuantileSketch.read(this.sketches.get(dt.getCsvName() + year), SKETCH_SLOT * (1 + slot));
+        if (stored != null) sketch.merge(stored);
+    }
+
+    /**
+     * Get the mapped rollup file of a data type and year, creating it and its sketch file if needed.
+     * All days are marked stale if either file is missing or invalid
+     *
+     * @param dt   data type
+     * @param year year
+     * @return mapped buffer
+     * @throws IOException Input/output error
+     */
+    private MappedByteBuffer buffer(DataType dt, int year) throws IOException {
+        String key = dt.getCsvName() + year;
+        MappedByteBuffer buf = this.years.get(key);
+        if (buf != null) return buf;
+        File f = this.yearFile(dt, year);
+        MappedByteBuffer sketches = map(new File(f.getParentFile(), year + ".kll"), SKETCH_FILE_SIZE, SKETCH_MAGIC);
+        buf = map(f, FILE_SIZE, MAGIC);
+        boolean valid = buf.getInt(0) == MAGIC && sketches.getInt(0) == SKETCH_MAGIC;
+        if (!valid) {
+            sketches.putInt(0, SKETCH_MAGIC).putInt(4, VERSION).putInt(8, year);
+            buf.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, year);
+            for (int i = 0; i < DAYS; i++) buf.putLong(STAMPS_OFFSET + i * 16, -1);
+        }
+        this.sketches.put(key, sketches);
+        this.years.put(key, buf);
+        return buf;
+    }
+
+    /**
+     * Map a file read-write, clearing it if its size or header do not match
+     *
+     * @param f     the file
+     * @param size  expected size
+     * @param magic expected magic number
+     * @return mapped buffer, all zero if it was cleared
+     * @throws IOException Input/output error
+     */
+    private static MappedByteBuffer map(File f, int size, int magic) throws IOException {
+        File dir = f.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) throw new IOException("Could not create " + dir);
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            if (!(raf.length() == size && raf.readInt() == magic && raf.readInt() == VERSION)) {
+                raf.setLength(0);
+                raf.setLength(size);
+            }
+            MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buf.order(ByteOrder.BIG_ENDIAN);
+            return buf;
+        }
+    }
+
+    /**
+     * Get the rollup file of a data type and year
+     *
+     * @param dt   data type
+     * @param year year
+     * @return file
+     */
+    private File yearFile(DataType dt, int year) {
+        return new File(new File(this.directory, dt.getCsvName()), year + ".bin");
+    }
+
+    /**
+     * Offset of an hourly bucket
+     *
+     * @param day  the day
+     * @param slot hour since local midnight
+     * @return byte offset
+     */
+    private static int hourOffset(LocalDate day, int slot) {
+        return HOURLY_OFFSET + ((day.getDayOfYear() - 1) * HOUR_SLOTS + slot) * BUCKET;
+    }
+
+    /**
+     * Set the csv stamp of a day to values no csv has
+     *
+     * @param buf      mapped rollup file
+     * @param dayIndex day of year from {@code 0}
+     */
+    private static void markStale(MappedByteBuffer buf, int dayIndex) {
+        buf.putLong(STAMPS_OFFSET + dayIndex * 16, -2).putLong(STAMPS_OFFSET + dayIndex * 16 + 8, Long.MIN_VALUE);
+    }
+
+    /**
+     * Write a bucket
+     */
+    private static void writeBucket(MappedByteBuffer buf, int offset, long count, double sum, double square, double min, double max) {
+        buf.putLong(offset, count).putDouble(offset + 8, sum).putDouble(offset + 16, square)
+                .putDouble(offset + 24, min).putDouble(offset + 32, max);
+    }
+
+    /**
+     * Read a bucket as an accumulator
+     *
+     * @param buf    mapped buffer
+     * @param offset bucket offset
+     * @return accumulator
+     */
+    private static StatisticsAccumulator accumulator(MappedByteBuffer buf, int offset) {
+        return StatisticsAccumulator.fromMoments(buf.getLong(offset), buf.getDouble(offset + 8), buf.getDouble(offset + 16),
+                buf.getDouble(offset + 24), buf.getDouble(offset + 32));
+    }
+
+    /**
+     * Read a bucket and add it to a list if it is not empty
+     */
+    private static void bucket(List<RollupBucket> out, DataType dt, RollupResolution resolution, MappedByteBuffer buf, int offset, long start, long end) {
+        long count = buf.getLong(offset);
+        if (count == 0) return;
+        out.add(new RollupBucket(dt, resolution, Instant.ofEpochSecond(start), Instant.ofEpochSecond(end), count,
+                buf.getDouble(offset + 8), buf.getDouble(offset + 16), buf.getDouble(offset + 24), buf.getDouble(offset + 32)));
+    }
+
+    /**
+     * Local midnight of a day in epoch seconds
+     *
+     * @param day the day
+     * @return epoch seconds
+     */
+    private static long epochSecond(LocalDate day) {
+        return day.atStartOfDay(Station.ARCHIVE_ZONE).toEpochSecond();
+    }
+
+    /**
+     * Smallest whole second not before an instant
+     *
+     * @param i instant
+     * @return epoch seconds
+     */
+    static long ceilSecond(Instant i) {
+        return i.getNano() == 0 ? i.getEpochSecond() : i.getEpochSecond() + 1;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.util.io.DisabledOutputStream;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps only the day files of some years or data types in the working tree. Files outside the selection are
+ * neither written nor kept in the git index; files outside the day directories are always checked out,
+ * keeping their executable or symbolic link mode.
+ * The selection is stored in the repository configuration, so it survives reopening the archive
+ */
+final class SparseCheckout {
+    private static final String SECTION = "jcocito";
+    private static final String YEAR = "sparseYear";
+    private static final String TYPE = "sparseType";
+    private final Set<Integer> years;
+    private final EnumSet<DataType> types;
+
+    /**
+     * Build the selection
+     *
+     * @param years years to keep, empty for all
+     * @param types data types to keep, empty for all
+     */
+    SparseCheckout(Collection<Integer> years, Collection<DataType> types) {
+        this.years = new HashSet<>(years);
+        this.types = types.isEmpty() ? EnumSet.noneOf(DataType.class) : EnumSet.copyOf(types);
+    }
+
+    /**
+     * Read the selection stored in a repository
+     *
+     * @param repo the repository
+     * @return the selection, {@code null} if the working tree is not sparse
+     */
+    static SparseCheckout load(Repository repo) {
+        StoredConfig config = repo.getConfig();
+        ArrayList<Integer> years = new ArrayList<>();
+        for (String y : config.getStringList(SECTION, null, YEAR)) years.add(Integer.parseInt(y));
+        ArrayList<DataType> types = new ArrayList<>();
+        for (String t : config.getStringList(SECTION, null, TYPE)) {
+            for (DataType dt : DataType.values()) if (dt.getCsvName().equals(t)) types.add(dt);
+        }
+        if (years.isEmpty() && types.isEmpty()) return null;
+        return new SparseCheckout(years, types);
+    }
+
+    /**
+     * Store the selection in a repository
+     *
+     * @param repo the repository
+     * @throws IOException Input/output error
+     */
+    void save(Repository repo) throws IOException {
+        StoredConfig config = repo.getConfig();
+        List<String> years = new ArrayList<>();
+        for (Integer y : this.years) years.add(y.toString());
+        List<String> types = new ArrayList<>();
+        for (DataType dt : this.types) types.add(dt.getCsvName());
+        config.setStringList(SECTION, null, YEAR, years);
+        config.setStringList(SECTION, null, TYPE, types);
+        config.save();
+    }
+
+    /**
+     * Check whether a path belongs to the selection
+     *
+     * @param path slash separated path relative to the working tree
+     * @return boolean
+     */
+    boolean includes(String path) {
+        int slash = path.indexOf('/');
+        if (slash != 4 || !isYear(path)) return true;
+        if (!this.years.isEmpty() && !this.years.contains(Integer.parseInt(path.substring(0, 4)))) return false;
+        if (this.types.isEmpty()) return true;
+        InternalFileDescriptor fd = ArchiveIndex.describe(new File("."), path);
+        return fd == null || this.types.contains(fd.getDt());
+    }
+
+    /**
+     * Check whether a path starts with a four digit directory name
+     *
+     * @param path slash separated path
+     * @return boolean
+     */
+    private static boolean isYear(String path) {
+        for (int i = 0; i < 4; i++) {
+            if (!Character.isDigit(path.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Bring the working tree and index from one commit to another, touching only the selected files
+     *
+     * @param repo the repository
+     * @param from commit currently checked out, {@code null} for an empty working tree
+     * @param to   commit to check out
+     * @throws IOException Input/output error
+     */
+    void checkout(Repository repo, ObjectId from, ObjectId to) throws IOException {
+        File workTree = repo.getWorkTree();
+        DirCache index = repo.lockDirCache();
+        try (ObjectReader reader = repo.newObjectReader();
+             RevWalk rw = new RevWalk(reader);
+             DiffFormatter df = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
+            df.setRepository(repo);
+            DirCacheEditor editor = index.editor();
+            for (DiffEntry e : df.scan(from == null ? new EmptyTreeIterator() : new CanonicalTreeParser(null, reader, rw.parseCommit(from).getTree()),
+                    new CanonicalTreeParser(null, reader, rw.parseCommit(to).getTree()))) {
+                if (e.getChangeType() != DiffEntry.ChangeType.ADD && this.includes(e.getOldPath())) {
+                    Files.deleteIfExists(new File(workTree, e.getOldPath()).toPath());
+                    editor.add(new DirCacheEditor.DeletePath(e.getOldPath()));
+                }
+                FileMode mode = e.getNewMode();
+                if (e.getChangeType() != DiffEntry.ChangeType.DELETE && this.includes(e.getNewPath())
+                        && (mode == FileMode.REGULAR_FILE || mode == FileMode.EXECUTABLE_FILE || mode == FileMode.SYMLINK)) {
+                    File f = new File(workTree, e.getNewPath());
+                    File dir = f.getParentFile();
+                    if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) throw new IOException("Could not create " + dir);
+                    ObjectId id = e.getNewId().toObjectId();
+                    long length;
+                    if (mode == FileMode.SYMLINK) {
+                        byte[] target = reader.open(id).getBytes();
+                        length = target.length;
+                        Files.deleteIfExists(f.toPath());
+                        Files.createSymbolicLink(f.toPath(), Paths.get(new String(target, StandardCharsets.UTF_8)));
+                    } else {
+                        try (OutputStream out = new FileOutputStream(f)) {
+                            reader.open(id).copyTo(out);
+                        }
+                        length = f.length();
+                        if (mode == FileMode.EXECUTABLE_FILE && !f.setExecutable(true)) throw new IOException("Could not make " + f + " executable");
+                    }
+                    Instant modified = Files.getLastModifiedTime(f.toPath(), LinkOption.NOFOLLOW_LINKS).toInstant();
+                    editor.add(new DirCacheEditor.PathEdit(e.getNewPath()) {
+                        @Override
+                        public void apply(DirCacheEntry ent) {
+                            ent.setFileMode(mode);
+                            ent.setObjectId(id);
+                            ent.setLength(length);
+                            ent.setLastModified(modified);
+                        }
+                    });
+                }
+            }
+            editor.finish();
+            index.write();
+            index.commit();
+        } finally {
+            index.unlock();
+        }
+    }
+}
@@ -26,32 +26,54 @@
 package it.edu.liceococito.cocitoWeatherStation;
 
 import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.PullResult;
+import org.eclipse.jgit.api.CloneCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
 import org.jetbrains.annotations.NotNull;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
 import java.io.*;
-import java.nio.file.Paths;
+import java.nio.file.Files;
+import java.time.Duration;
 import java.time.Instant;
-import java.time.LocalDateTime;
+import java.time.LocalDate;
 import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.Locale;
-import java.util.Scanner;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The Station object
  */
 public class Station {
+    static final ZoneId ARCHIVE_ZONE = ZoneId.of("Europe/Rome");
+    private static final String REMOTE_BRANCH = Constants.R_REMOTES + "origin/main";
     private final File archivePath;
     private final Repository repo;
+    private final ArchiveIndex index;
+    private final RollupStore rollups;
+    private final QueryCache queryCache;
+    private final ObjectDatabaseReader objectDatabase;
     private String remoteGitURI;
+    private volatile Semaphore fetchPermits;
+    private final SparseCheckout sparse;
 
     /**
      * Construct Archive in local dir {@code "dati"}
@@ -100,6 +122,21 @@ public class Station {
      * @throws GitAPIException        Git error
      */
     public Station(@NotNull File archivePath, boolean createDir, String remoteGitURI) throws NotADirectoryException, IOException, GitAPIException {
+        this(archivePath, createDir, remoteGitURI, null);
+    }
+
+    /**
+     * Construct Archive in given path, cloning it with the given options if it does not exist yet
+     *
+     * @param archivePath  The Filepath to the dir where to store the git archive
+     * @param createDir    Wether to create the dir if it is not present
+     * @param remoteGitURI The remote repository custom url. Ignored if the local archive already exists
+     * @param cloneOptions Shallow and sparse clone options, {@code null} for a full clone. Ignored if the local archive already exists
+     * @throws NotADirectoryException The selected path is not a dir
+     * @throws IOException            Could not create the path
+     * @throws GitAPIException        Git error
+     */
+    public Station(@NotNull File archivePath, boolean createDir, String remoteGitURI, CloneOptions cloneOptions) throws NotADirectoryException, IOException, GitAPIException {
         this.fixslf4j();
         if (!archivePath.exists() && createDir) {
             if (!archivePath.mkdir()) throw new IOException();
@@ -112,12 +149,17 @@ public class Station {
         }
         if (!this.isGitArchive()) {
             try {
-                this.cloneRemoteArchive();
+                this.cloneRemoteArchive(cloneOptions);
             } catch (ArchiveAlreadyExists ignored) {
             }
         }
         this.repo = this.getRepo();
-
+        this.sparse = SparseCheckout.load(this.repo);
+        this.index = new ArchiveIndex(this.repo.getWorkTree());
+        this.index.rebuild();
+        this.rollups = new RollupStore(this, this.index, new File(this.getCacheDirectory(), "rollup"));
+        this.queryCache = new QueryCache(1_000_000);
+        this.objectDatabase = new ObjectDatabaseReader(this.repo, 2_000_000);
     }
 
     /**
@@ -141,6 +183,15 @@ public class Station {
         this.remoteGitURI = remoteGitURI;
     }
 
+    /**
+     * Limit concurrent fetches, shared by the stations of a {@link StationManager}
+     *
+     * @param fetchPermits permits taken by every pull, {@code null} for no limit
+     */
+    void setFetchPermits(Semaphore fetchPermits) {
+        this.fetchPermits = fetchPermits;
+    }
+
     /**
      * Clone the git repo
      *
@@ -151,7 +202,48 @@ public class Station {
         if (this.isGitArchive()) throw new ArchiveAlreadyExists();
         Git.cloneRepository()
                 .setURI(this.remoteGitURI)
-                .call();
+                .setDirectory(this.archivePath)
+                .call()
+                .close();
+    }
+
+    /**
+     * Clone the git repo with shallow and sparse options
+     *
+     * @param cloneOptions clone options, {@code null} for a full clone
+     * @throws GitAPIException      Git Error
+     * @throws ArchiveAlreadyExists The git repo has already been inited
+     * @throws IOException          Input/Output error during the sparse checkout
+     */
+    public void cloneRemoteArchive(CloneOptions cloneOptions) throws GitAPIException, ArchiveAlreadyExists, IOException {
+        if (cloneOptions == null) {
+            this.cloneRemoteArchive();
+            return;
+        }
+        if (this.isGitArchive()) throw new ArchiveAlreadyExists();
+        CloneCommand clone = Git.cloneRepository()
+                .setURI(this.remoteGitURI)
+                .setDirectory(this.archivePath)
+                .setNoCheckout(cloneOptions.isSparse());
+        if (cloneOptions.getDepth() > 0) clone.setDepth(cloneOptions.getDepth());
+        if (cloneOptions.getShallowSince() != null) clone.setShallowSince(cloneOptions.getShallowSince());
+        try (Git git = clone.call()) {
+            if (!cloneOptions.isSparse()) return;
+            Repository repository = git.getRepository();
+            SparseCheckout sparseCheckout = new SparseCheckout(cloneOptions.getSparseYears(), cloneOptions.getSparseDataTypes());
+            sparseCheckout.save(repository);
+            ObjectId head = repository.resolve(REMOTE_BRANCH);
+            if (head == null) return;
+            RefUpdate branch = repository.updateRef(Constants.R_HEADS + "main");
+            branch.setNewObjectId(head);
+            branch.update();
+            repository.updateRef(Constants.HEAD).link(Constants.R_HEADS + "main");
+            StoredConfig config = repository.getConfig();
+            config.setString("branch", "main", "remote", "origin");
+            config.setString("branch", "main", "merge", Constants.R_HEADS + "main");
+            config.save();
+            sparseCheckout.checkout(repository, null, head);
+        }
     }
 
     /**
@@ -190,28 +282,42 @@ public class Station {
     }
 
     /**
-     * @param aq Obtain all the files involved in a query and the datatype associated
+     * Obtain all the files involved in a query and the datatype associated, resolved through the archive index.
+     * Files are listed by time period, then data type, then day; a day is included when it overlaps the period,
+     * and days only partly inside it are bounded to the period so that only the rows inside it are read.
+     * Working tree days whose daily min and max cannot match the value predicate of their data type are left out.
+     * The query control is checked for every day, since pruning may decode the rollups of the whole range
+     *
+     * @param aq       the query
+     * @param snapshot commit to read the files from, {@code null} for the working tree
+     * @param control  deadline, cancellation and progress of the query
      * @return a file desciptor list
+     * @throws IOException Input/output error, {@code InterruptedIOException} if the query must stop
      * @see it.edu.liceococito.cocitoWeatherStation.DataType
      * @see it.edu.liceococito.cocitoWeatherStation.InternalFileDescriptor
      */
-    private @NotNull ArrayList<InternalFileDescriptor> queryFiles(ArchiveQuery aq) {
+    private @NotNull ArrayList<InternalFileDescriptor> queryFiles(ArchiveQuery aq, ArchiveSnapshot snapshot, QueryControl control) throws IOException {
         ArrayList<InternalFileDescriptor> fl = new ArrayList<>();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd").withLocale(Locale.ITALIAN)
-                .withZone(ZoneId.of("Europe/Rome"));
-        ArrayList<TimePeriod> tps = aq.getTimePeriods();
-        ArrayList<DataType> adts = aq.getAllowedDataTypes();
-        Instant start, end;
-        File a;
-        for (int i = 0; i < tps.size(); i++) {
-            start = tps.get(i).getStart();
-            end = tps.get(i).getEnd();
-            for (int j = 0; j < adts.size(); j++) {
-                while (start.compareTo(end) < 0) {
-                    String path = Paths.get(this.repo.getDirectory().getAbsolutePath()).getParent().getFileName() + File.separator + formatter.format(start).replaceAll("-", File.separator) + File.separator + adts.get(i).getCsvName() + ".csv";
-                    a = new File(path);
-                    if (a.exists()) fl.add(new InternalFileDescriptor(a, adts.get(i)));
-                    start = start.plus(1, ChronoUnit.DAYS);
+        for (int p = 0; p < aq.getTimePeriods().size(); p++) {
+            TimePeriod tp = aq.getTimePeriods().get(p);
+            if (tp.getStart().compareTo(tp.getEnd()) >= 0) continue;
+            LocalDate first = tp.getStart().atZone(ARCHIVE_ZONE).toLocalDate();
+            LocalDate last = tp.getEnd().minusNanos(1).atZone(ARCHIVE_ZONE).toLocalDate();
+            long start = RollupStore.ceilSecond(tp.getStart()), end = RollupStore.ceilSecond(tp.getEnd());
+            for (DataType dt : aq.getAllowedDataTypes()) {
+                ValuePredicate predicate = aq.getValuePredicate(dt);
+                for (LocalDate day = first; !day.isAfter(last); day = day.plusDays(1)) {
+                    control.check();
+                    InternalFileDescriptor fd = null;
+                    if (snapshot != null) {
+                        fd = snapshot.get(day, dt);
+                    } else if (this.index.contains(day, dt) && (predicate == null || this.rollups.mayMatch(day, dt, predicate))) {
+                        fd = new InternalFileDescriptor(this.index.getFile(day, dt), dt, day);
+                    }
+                    if (fd == null) continue;
+                    boolean whole = day.atStartOfDay(ARCHIVE_ZONE).toEpochSecond() >= start
+                            && day.plusDays(1).atStartOfDay(ARCHIVE_ZONE).toEpochSecond() <= end;
+                    fl.add(whole ? fd.within(p, Long.MIN_VALUE, Long.MAX_VALUE) : fd.within(p, start, end));
                 }
             }
         }
@@ -219,57 +325,657 @@ public class Station {
     }
 
     /**
-     * Execute a query on the archive
+     * Execute a query on the archive.
+     * Results are cached per query and archive commit, see {@code setQueryCacheCapacity(long)}
      *
      * @param archiveQuery the query to execute
      * @return the result of the query
-     * @throws IOException Input/output error
+     * @throws IOException Input/output error, {@code InterruptedIOException} if the query deadline passed
      */
     public ArchiveQueryResult query(ArchiveQuery archiveQuery) throws IOException {
-        ArrayList<InternalFileDescriptor> files = this.queryFiles(archiveQuery);
+        return this.cachedQuery(archiveQuery, null);
+    }
+
+    /**
+     * Execute a query on the archive on an executor.
+     * Cancelling the returned future stops the scan at the next day file or page, so abandoned queries stop
+     * using IO and CPU; if the query deadline passes first, the future completes with an {@code InterruptedIOException}.
+     * Progress is reported to the query progress listener
+     *
+     * @param archiveQuery the query to execute
+     * @param executor     executor running the query
+     * @return future result of the query
+     * @see ArchiveQuery#setDeadline(Instant)
+     * @see ArchiveQuery#setProgressListener(QueryProgressListener)
+     */
+    public CompletableFuture<ArchiveQueryResult> queryAsync(ArchiveQuery archiveQuery, Executor executor) {
+        CompletableFuture<ArchiveQueryResult> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                if (future.isDone()) return;
+                try {
+                    future.complete(this.cachedQuery(archiveQuery, future));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Read one page of a query, starting where the previous page ended.
+     * The first page is read at the commit of the query revision, or of the working tree; the returned cursor
+     * records it. Later pages of a query with a revision read that commit even if the archive is updated in between,
+     * while the cursor of a working tree query is rejected once the archive was updated, so no page mixes two commits.
+     * Each page only reads the day files it returns values from. Results are not cached
+     *
+     * @param archiveQuery the query to execute, unchanged between pages
+     * @param cursor       cursor returned with the previous page, {@code null} for the first page
+     * @return a result holding one page, and the cursor of the next page
+     * @throws IOException              Input/output error, {@code InterruptedIOException} if the query deadline passed
+     * @throws IllegalArgumentException the cursor belongs to another query, the archive was updated since the first
+     *                                  page of a working tree query, or the query is resampled
+     */
+    public ArchiveQueryResult query(ArchiveQuery archiveQuery, QueryCursor cursor) throws IOException {
+        if (archiveQuery.getResampleFunction() != null) throw new IllegalArgumentException("Resampled queries cannot be read with cursors");
+        int queryHash = archiveQuery.getCanonicalKey().hashCode();
+        if (cursor != null && cursor.getQueryHash() != queryHash) throw new IllegalArgumentException("Cursor belongs to another query");
+        ObjectId head = this.getHead();
+        ObjectId commit;
+        if (cursor != null) {
+            commit = cursor.getCommit();
+            if (archiveQuery.getRevision() == null && !commit.equals(head))
+                throw new IllegalArgumentException("Archive updated since the cursor was made");
+        } else {
+            commit = archiveQuery.getRevision() != null ? this.resolve(archiveQuery.getRevision()) : head;
+        }
+        if (archiveQuery.getRevision() != null || !commit.equals(head)) archiveQuery = this.at(archiveQuery, commit);
+        QueryControl control = new QueryControl(archiveQuery, null);
+        ArrayList<InternalFileDescriptor> files;
+        try {
+            files = this.queryFiles(archiveQuery, control);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        int first = 0, row = 0;
+        if (cursor != null) {
+            while (first < files.size() && cursor.isAfter(files.get(first), archiveQuery.getAllowedDataTypes())) first++;
+            if (first < files.size() && cursor.isAt(files.get(first))) row = cursor.getRow();
+        }
+        int pageSize = archiveQuery.getPageSize();
+        Page page = new Page();
+        QueryCursor next = null;
+        try (ArchiveValueIterator it = new ArchiveValueIterator(this, files, archiveQuery.getValuePredicates(),
+                archiveQuery.getParallelism(), archiveQuery.getExecutor(), control)) {
+            it.resume(first, row);
+            while ((pageSize == 0 || page.size() < pageSize) && it.advance()) {
+                InternalFileDescriptor fd = it.getDescriptor();
+                page.append(it.getEpochSecond(), it.getValue(), fd.getF(), it.getLine(), fd.getDt());
+            }
+            if (it.hasNext()) {
+                InternalFileDescriptor fd = it.getDescriptor();
+                next = new QueryCursor(commit, queryHash, fd.getPeriod(), fd.getDt(), fd.getDate(), it.getNextLine());
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        PageList pages = new PageList();
+        pages.add(page);
+        ArchiveQueryResult result = new ArchiveQueryResult(pages, Instant.now());
+        result.setNextCursor(next);
+        return result;
+    }
+
+    /**
+     * Execute a query on the archive, through the cache
+     *
+     * @param archiveQuery the query to execute
+     * @param future       future abandoned if the query is cancelled, {@code null} for synchronous queries
+     * @return the result of the query
+     * @throws IOException Input/output error
+     */
+    private ArchiveQueryResult cachedQuery(ArchiveQuery archiveQuery, Future<?> future) throws IOException {
+        String key = archiveQuery.getCanonicalKey();
+        if (archiveQuery.getRevision() != null) {
+            ObjectId commit = this.resolve(archiveQuery.getRevision());
+            key += '@' + commit.name();
+            archiveQuery = this.at(archiveQuery, commit);
+        }
+        ObjectId head = this.getHead();
+        ArchiveQueryResult cached = this.queryCache.get(key, head);
+        if (cached != null) return cached.copy();
+        ArchiveQueryResult result = this.runQuery(archiveQuery, new QueryControl(archiveQuery, future));
+        EnumSet<DataType> types = archiveQuery.getAllowedDataTypes().isEmpty() ? EnumSet.noneOf(DataType.class)
+                : EnumSet.copyOf(archiveQuery.getAllowedDataTypes());
+        LocalDate first = LocalDate.MAX, last = LocalDate.MIN;
+        for (TimePeriod tp : archiveQuery.getTimePeriods()) {
+            if (tp.getStart().compareTo(tp.getEnd()) >= 0) continue;
+            LocalDate a = tp.getStart().atZone(ARCHIVE_ZONE).toLocalDate(), b = tp.getEnd().minusNanos(1).atZone(ARCHIVE_ZONE).toLocalDate();
+            if (a.isBefore(first)) first = a;
+            if (b.isAfter(last)) last = b;
+        }
+        this.queryCache.put(key, head, new QueryCacheEntry(result.copy(), result.getValueCount(), types, first, last));
+        return result;
+    }
+
+    /**
+     * Get query result cache counters
+     *
+     * @return counters snapshot
+     */
+    public QueryCacheStats getQueryCacheStats() {
+        return this.queryCache.getStats();
+    }
+
+    /**
+     * Set how many values the query result cache may hold, least recently used results are dropped first
+     *
+     * @param capacity max number of cached values, {@code 0} disables the cache; default {@code 1000000}
+     */
+    public void setQueryCacheCapacity(long capacity) {
+        this.queryCache.setCapacity(capacity);
+    }
+
+    /**
+     * Get the commit the working tree is at
+     *
+     * @return HEAD commit, zero id if there is none
+     * @throws IOException Input/output error
+     */
+    private ObjectId getHead() throws IOException {
+        ObjectId head = this.repo.resolve(Constants.HEAD);
+        return head == null ? ObjectId.zeroId() : head;
+    }
+
+    /**
+     * Execute a query on the archive, bypassing the cache
+     *
+     * @param archiveQuery the query to execute
+     * @param control      deadline, cancellation and progress of the query
+     * @return the result of the query
+     * @throws IOException Input/output error
+     */
+    private ArchiveQueryResult runQuery(ArchiveQuery archiveQuery, QueryControl control) throws IOException {
         PageList pages = new PageList();
-        DateTimeFormatter valFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withLocale(Locale.ITALIAN)
-                .withZone(ZoneId.systemDefault());
         Page page = new Page();
-        int lineN;
-        String line;
-        for (int i = 0; i < files.size(); i++) {
-            File f = files.get(i).getF();
-            BufferedReader br = new BufferedReader(new FileReader(f));
-            lineN = 0;
-            while ((line = br.readLine()) != null)   //returns a Boolean value
-            {
-                String[] csvLine = line.split(",");    // use comma as separator
-                if (csvLine.length < 2) continue;
-                Instant instant = LocalDateTime.parse(csvLine[0], valFormatter).atZone(ZoneId.of("Europe/Rome")).toInstant();
-                page.add(new Value(instant, f, lineN, Double.parseDouble(csvLine[1]), files.get(i).getDt()));
-                if (lineN * (i + 1) % archiveQuery.getPageSize() == 0 && lineN * (i + 1) != 0 && archiveQuery.getPageSize() != 0) {
+        int pageSize = archiveQuery.getPageSize();
+        if (archiveQuery.getResampleFunction() != null) {
+            try (Resampler it = this.resampler(archiveQuery, control)) {
+                while (it.hasNext()) {
+                    page.add(it.next());
+                    if (page.size() == pageSize) {
+                        pages.add(page);
+                        page = new Page();
+                        control.check();
+                    }
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (page.size() > 0 || pages.isEmpty()) pages.add(page);
+            return new ArchiveQueryResult(pages, Instant.now());
+        }
+        try (ArchiveValueIterator it = this.iterator(archiveQuery, control)) {
+            while (it.advance()) {
+                InternalFileDescriptor fd = it.getDescriptor();
+                page.append(it.getEpochSecond(), it.getValue(), fd.getF(), it.getLine(), fd.getDt());
+                if (page.size() == pageSize) {
                     pages.add(page);
                     page = new Page();
+                    control.check();
                 }
-                lineN++;
             }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
-        if (archiveQuery.getPageSize() == 0) {
-            pages.add(page);
-        }
+        if (page.size() > 0 || pages.isEmpty()) pages.add(page);
         return new ArchiveQueryResult(pages, Instant.now());
     }
 
+    /**
+     * Execute a query on the archive lazily: day files are opened one at a time while the stream is consumed,
+     * so memory use does not depend on the queried time span. Pagination settings are ignored.
+     * Close the stream (e.g. with try-with-resources) if it is not fully consumed
+     *
+     * @param archiveQuery the query to execute
+     * @return ordered stream of values, read errors are thrown as {@code UncheckedIOException}
+     */
+    public Stream<Value> stream(ArchiveQuery archiveQuery) {
+        if (archiveQuery.getResampleFunction() != null) {
+            Resampler it = this.resampler(archiveQuery);
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                    .onClose(it::close);
+        }
+        ArchiveValueIterator it = this.iterator(archiveQuery);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(it::close);
+    }
+
+    /**
+     * Execute a query on the archive lazily, joining its data types on time: each row holds the values of all
+     * data types taken at the same instant, e.g. temperature, humidity and pressure to compute the dew point.
+     * Day files of each data type are merged in time order, so memory use depends on the number of data types only.
+     * A row starts at the earliest pending value and takes, for every data type, the next value not later than
+     * {@code tolerance} after it; data types with no such value are NaN in the row.
+     * Time periods are joined one after the other, each on its own, so rows follow the order of the periods.
+     * Pagination and resampling settings are ignored.
+     * Close the stream (e.g. with try-with-resources) if it is not fully consumed
+     *
+     * @param archiveQuery the query to execute
+     * @param tolerance    max distance between values of the same row, whole seconds; {@code Duration.ZERO}
+     *                     joins exact matches only
+     * @return ordered stream of rows, read errors are thrown as {@code UncheckedIOException}
+     * @throws IllegalArgumentException the tolerance is negative
+     */
+    public Stream<WideRow> streamJoined(ArchiveQuery archiveQuery, Duration tolerance) {
+        if (tolerance.isNegative()) throw new IllegalArgumentException("Tolerance must not be negative");
+        int types = DataType.values().length;
+        ArrayList<ArrayList<InternalFileDescriptor>> byPeriodAndType = new ArrayList<>();
+        for (int i = 0; i < archiveQuery.getTimePeriods().size() * types; i++) byPeriodAndType.add(null);
+        QueryControl control = new QueryControl(archiveQuery, null);
+        for (InternalFileDescriptor fd : this.queryFiles(archiveQuery, control)) {
+            int i = fd.getPeriod() * types + fd.getDt().ordinal();
+            if (byPeriodAndType.get(i) == null) byPeriodAndType.set(i, new ArrayList<>());
+            byPeriodAndType.get(i).add(fd);
+        }
+        ArrayList<ArchiveValueIterator[]> periods = new ArrayList<>();
+        for (int p = 0; p < archiveQuery.getTimePeriods().size(); p++) {
+            ArchiveValueIterator[] sources = new ArchiveValueIterator[types];
+            boolean any = false;
+            for (int i = 0; i < types; i++) {
+                ArrayList<InternalFileDescriptor> files = byPeriodAndType.get(p * types + i);
+                if (files == null) continue;
+                sources[i] = new ArchiveValueIterator(this, files, archiveQuery.getValuePredicates(),
+                        archiveQuery.getParallelism(), archiveQuery.getExecutor(), control);
+                any = true;
+            }
+            if (any) periods.add(sources);
+        }
+        WideRowJoiner it = new WideRowJoiner(periods, tolerance.getSeconds());
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(it::close);
+    }
+
+    /**
+     * Find the highest or lowest values of a query while scanning the archive, keeping only {@code n} values in memory,
+     * e.g. the worst PM2,5 readings. If the query is resampled, buckets are ranked instead of values: daily
+     * {@code MAX} resampling gives the hottest days. Values of all the query data types are ranked together.
+     * With parallelism greater than {@code 1} the day files are split into partial scans whose rankings are merged.
+     * Pagination settings are ignored
+     *
+     * @param archiveQuery the query to execute
+     * @param n            number of values to return
+     * @param highest      true for the highest values, false for the lowest
+     * @return ranking, best first
+     * @throws IOException              Input/output error, {@code InterruptedIOException} if the query deadline passed
+     * @throws IllegalArgumentException the query is resampled with {@code LTTB}
+     */
+    public ValueRanking queryRanking(ArchiveQuery archiveQuery, int n, boolean highest) throws IOException {
+        ResampleFunction function = archiveQuery.getResampleFunction();
+        if (function == ResampleFunction.LTTB) throw new IllegalArgumentException("LTTB points cannot be ranked");
+        QueryControl control = new QueryControl(archiveQuery, null);
+        ArrayList<InternalFileDescriptor> files;
+        try {
+            files = this.queryFiles(archiveQuery, control);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        int parallelism = archiveQuery.getParallelism();
+        long bucket = function == null ? 0 : archiveQuery.getResampleBucket().getSeconds();
+        if (function != null && bucket != 86_400 && 3600 % bucket != 0) parallelism = 1; // buckets may span day files
+        int chunks = Math.max(1, Math.min(parallelism, files.size()));
+        ArrayList<CompletableFuture<ValueRanking>> partials = new ArrayList<>();
+        for (int c = 0; c < chunks; c++) {
+            List<InternalFileDescriptor> chunk = files.subList(files.size() * c / chunks, files.size() * (c + 1) / chunks);
+            Supplier<ValueRanking> scan = () -> {
+                ValueRanking ranking = new ValueRanking(n, highest);
+                ArchiveValueIterator it = new ArchiveValueIterator(this, chunk, archiveQuery.getValuePredicates(), 1, null, control);
+                if (function != null) {
+                    try (Resampler r = new Resampler(it, bucket, function)) {
+                        while (r.hasNext()) ranking.offer(r.next());
+                    }
+                } else {
+                    try (it) {
+                        while (it.advance()) {
+                            InternalFileDescriptor fd = it.getDescriptor();
+                            ranking.offer(it.getEpochSecond(), it.getValue(), fd.getDt(), fd.getF(), it.getLine());
+                        }
+                    }
+                }
+                return ranking;
+            };
+            partials.add(chunks == 1 ? CompletableFuture.completedFuture(scan.get())
+                    : archiveQuery.getExecutor() == null ? CompletableFuture.supplyAsync(scan) : CompletableFuture.supplyAsync(scan, archiveQuery.getExecutor()));
+        }
+        ValueRanking ranking = new ValueRanking(n, highest);
+        try {
+            for (CompletableFuture<ValueRanking> partial : partials) ranking.merge(partial.join());
+        } catch (CompletionException e) {
+            control.cancel(); // partial scans already running stop at their next day file
+            for (CompletableFuture<ValueRanking> partial : partials) partial.cancel(false);
+            if (e.getCause() instanceof UncheckedIOException) throw ((UncheckedIOException) e.getCause()).getCause();
+            throw e;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return ranking;
+    }
+
+    /**
+     * Compute statistics of the values matched by a query while scanning the archive,
+     * without building the query result. Pagination and resampling settings are ignored
+     *
+     * @param archiveQuery the query to execute
+     * @return statistics per data type
+     * @throws IOException Input/output error
+     */
+    public StatisticalReporter queryStatistics(ArchiveQuery archiveQuery) throws IOException {
+        StatisticalReporter reporter = new StatisticalReporter();
+        try (ArchiveValueIterator it = this.iterator(archiveQuery)) {
+            while (it.advance()) {
+                reporter.accept(it.getDescriptor().getDt(), it.getValue());
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return reporter;
+    }
+
+    /**
+     * Compute statistics of the values inside the query time periods from the precomputed hourly, daily and
+     * monthly aggregates, reading raw values only for partial hours at the period edges.
+     * Quantiles are merged from daily and monthly sketches, plus the raw values of partial days.
+     * Much faster than {@code queryStatistics} over long periods, but no integer mode or histogram is available.
+     * Aggregates are computed the first time they are needed and kept up to date by {@code udpate()}.
+     * Queries with a revision or value predicates fall back to {@code queryStatistics}
+     *
+     * @param archiveQuery the query to execute
+     * @return statistics per data type
+     * @throws IOException Input/output error
+     */
+    public StatisticalReporter queryRollupStatistics(ArchiveQuery archiveQuery) throws IOException {
+        if (archiveQuery.getRevision() != null || !archiveQuery.getValuePredicates().isEmpty()) return this.queryStatistics(archiveQuery);
+        StatisticalReporter reporter = new StatisticalReporter();
+        for (TimePeriod tp : archiveQuery.getTimePeriods()) {
+            for (DataType dt : archiveQuery.getAllowedDataTypes()) {
+                QuantileSketch sketch = new QuantileSketch();
+                reporter.merge(dt, this.rollups.statistics(dt, tp.getStart(), tp.getEnd(), sketch), sketch);
+            }
+        }
+        return reporter;
+    }
+
+    /**
+     * Get precomputed aggregates of the query data types, one per Europe/Rome hour, day or month
+     * overlapping the query time periods. Empty buckets are left out
+     *
+     * @param archiveQuery the query to execute
+     * @param resolution   bucket granularity
+     * @return buckets by time period, then data type, then time
+     * @throws IOException              Input/output error
+     * @throws IllegalArgumentException the query has a revision, aggregates only exist for the working tree,
+     *                                  or value predicates, aggregates include every value
+     */
+    public List<RollupBucket> queryBuckets(ArchiveQuery archiveQuery, RollupResolution resolution) throws IOException {
+        if (archiveQuery.getRevision() != null) throw new IllegalArgumentException("Aggregates are only available for the working tree");
+        if (!archiveQuery.getValuePredicates().isEmpty()) throw new IllegalArgumentException("Aggregates cannot apply value predicates");
+        ArrayList<RollupBucket> buckets = new ArrayList<>();
+        for (TimePeriod tp : archiveQuery.getTimePeriods()) {
+            for (DataType dt : archiveQuery.getAllowedDataTypes()) {
+                buckets.addAll(this.rollups.buckets(dt, tp.getStart(), tp.getEnd(), resolution));
+            }
+        }
+        return buckets;
+    }
+
+    /**
+     * Build the value iterator for a query, honouring its parallelism settings
+     *
+     * @param archiveQuery the query
+     * @return iterator over the query values
+     */
+    private ArchiveValueIterator iterator(ArchiveQuery archiveQuery) {
+        return this.iterator(archiveQuery, new QueryControl(archiveQuery, null));
+    }
+
+    /**
+     * Build the value iterator for a query, honouring its parallelism settings
+     *
+     * @param archiveQuery the query
+     * @param control      deadline, cancellation and progress of the query
+     * @return iterator over the query values
+     */
+    private ArchiveValueIterator iterator(ArchiveQuery archiveQuery, QueryControl control) {
+        return new ArchiveValueIterator(this, this.queryFiles(archiveQuery, control), archiveQuery.getValuePredicates(),
+                archiveQuery.getParallelism(), archiveQuery.getExecutor(), control);
+    }
+
+    /**
+     * Get the files of a query, from the working tree or from the commit of its revision
+     *
+     * @param archiveQuery the query
+     * @param control      deadline, cancellation and progress of the query
+     * @return a file desciptor list
+     * @throws UncheckedIOException the revision or the rollups could not be read, or the query must stop
+     */
+    private ArrayList<InternalFileDescriptor> queryFiles(ArchiveQuery archiveQuery, QueryControl control) {
+        try {
+            ArchiveSnapshot snapshot = null;
+            if (archiveQuery.getRevision() != null) snapshot = this.objectDatabase.snapshot(this.resolve(archiveQuery.getRevision()));
+            return this.queryFiles(archiveQuery, snapshot, control);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Build the resampling iterator for a query
+     *
+     * @param archiveQuery the query, with resampling set
+     * @return iterator over one point per bucket
+     */
+    private Resampler resampler(ArchiveQuery archiveQuery) {
+        return this.resampler(archiveQuery, new QueryControl(archiveQuery, null));
+    }
+
+    /**
+     * Build the resampling iterator for a query
+     *
+     * @param archiveQuery the query, with resampling set
+     * @param control      deadline, cancellation and progress of the query
+     * @return iterator over one point per bucket
+     */
+    private Resampler resampler(ArchiveQuery archiveQuery, QueryControl control) {
+        return new Resampler(this.iterator(archiveQuery, control), archiveQuery.getResampleBucket().getSeconds(), archiveQuery.getResampleFunction());
+    }
+
+    /**
+     * Resolve a revision to a commit
+     *
+     * @param revision revision string
+     * @return commit id
+     * @throws IOException              Input/output error
+     * @throws IllegalArgumentException the revision does not name a commit
+     */
+    private ObjectId resolve(String revision) throws IOException {
+        ObjectId commit = this.repo.resolve(revision + "^{commit}");
+        if (commit == null) throw new IllegalArgumentException("Unknown revision " + revision);
+        return commit;
+    }
+
+    /**
+     * Copy a query pinning its revision to a resolved commit
+     *
+     * @param archiveQuery the query
+     * @param commit       the commit
+     * @return the pinned copy
+     */
+    private ArchiveQuery at(ArchiveQuery archiveQuery, ObjectId commit) {
+        ArchiveQuery pinned = new ArchiveQuery();
+        pinned.setAllowedDataTypes(archiveQuery.getAllowedDataTypes());
+        pinned.setTimePeriods(archiveQuery.getTimePeriods());
+        pinned.setPageSize(archiveQuery.getPageSize());
+        pinned.setParallelism(archiveQuery.getParallelism());
+        pinned.setExecutor(archiveQuery.getExecutor());
+        pinned.setRevision(commit.name());
+        if (archiveQuery.getResampleFunction() != null)
+            pinned.setResampling(archiveQuery.getResampleBucket(), archiveQuery.getResampleFunction());
+        pinned.setValuePredicates(archiveQuery.getValuePredicates());
+        pinned.setDeadline(archiveQuery.getDeadline());
+        pinned.setProgressListener(archiveQuery.getProgressListener());
+        return pinned;
+    }
+
+    /**
+     * Open a day file, from the working tree or, if it carries a blob id, from the git object database
+     *
+     * @param fd file descriptor
+     * @return the day file
+     * @throws IOException Input/output error
+     */
+    ColumnarDayFile open(InternalFileDescriptor fd) throws IOException {
+        return fd.getBlob() != null ? this.objectDatabase.open(fd.getBlob()) : this.openColumnar(fd.getF());
+    }
+
+    /**
+     * Set how many rows of day files read from the git object database are kept decoded in memory,
+     * least recently used files are dropped first
+     *
+     * @param capacity max number of rows, {@code 0} disables the cache; default {@code 2000000}
+     * @see ArchiveQuery#setRevision(String)
+     */
+    public void setBlobCacheCapacity(long capacity) {
+        this.objectDatabase.setCapacity(capacity);
+    }
+
+    /**
+     * Open the columnar binary copy of a day csv file, (re)building it when the csv has changed.
+     * Binary copies live in the git directory so they never show up in the working tree
+     *
+     * @param csv the day csv file
+     * @return the mapped columnar file
+     * @throws IOException Input/output error
+     * @see it.edu.liceococito.cocitoWeatherStation.ColumnarDayFile
+     */
+    ColumnarDayFile openColumnar(File csv) throws IOException {
+        String relative = this.repo.getWorkTree().toPath().relativize(csv.toPath()).toString();
+        File columnar = new File(new File(this.getCacheDirectory(), "columnar"),
+                relative.substring(0, relative.length() - ".csv".length()) + ColumnarDayFile.EXTENSION);
+        return ColumnarDayFile.open(csv, columnar);
+    }
+
+    /**
+     * Get the directory where derived data (binary copies, indexes) is kept
+     *
+     * @return cache directory inside the git directory
+     */
+    private File getCacheDirectory() {
+        return new File(this.repo.getDirectory(), "jcocito");
+    }
+
     /**
      * Update the local archive with the freshest data
      *
      * @return Operation success status
      * @throws IOException     Input/Output error
      * @throws GitAPIException Git error
+     * @see it.edu.liceococito.cocitoWeatherStation.Station#pullChanges()
      */
     public boolean udpate() throws IOException, GitAPIException {
-        Git git = Git.open(this.repo.getDirectory());
-        PullResult result = git.pull()
-                .setRemote("origin")
-                .setRemoteBranchName("main")
-                .call();
-        return result.isSuccessful();
+        return this.pullChanges().isSuccessful();
+    }
+
+    /**
+     * Update the local archive with the freshest data and report which day files changed,
+     * with the rows appended to them. Indexes, aggregates and cached results are updated from the change set.
+     * Updates of the same station run one at a time, e.g. when a watcher and a manager both update it
+     *
+     * @return the changes brought by the update
+     * @throws IOException     Input/Output error
+     * @throws GitAPIException Git error
+     */
+    public synchronized ArchiveChangeSet pullChanges() throws IOException, GitAPIException {
+        ObjectId before = this.repo.resolve(Constants.HEAD);
+        boolean successful;
+        Semaphore permits = this.fetchPermits;
+        if (permits != null) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting to fetch");
+            }
+        }
+        try (Git git = Git.open(this.repo.getDirectory())) {
+            if (this.sparse == null) {
+                successful = git.pull()
+                        .setRemote("origin")
+                        .setRemoteBranchName("main")
+                        .call()
+                        .isSuccessful();
+            } else {
+                git.fetch().setRemote("origin").call();
+                ObjectId remote = this.repo.resolve(REMOTE_BRANCH);
+                successful = true;
+                if (remote != null && !remote.equals(before)) {
+                    this.sparse.checkout(this.repo, before, remote);
+                    RefUpdate head = this.repo.updateRef(Constants.HEAD);
+                    head.setNewObjectId(remote);
+                    head.setForceUpdate(true);
+                    RefUpdate.Result result = head.update();
+                    if (result != RefUpdate.Result.NEW && result != RefUpdate.Result.FORCED
+                            && result != RefUpdate.Result.FAST_FORWARD && result != RefUpdate.Result.NO_CHANGE) {
+                        // HEAD did not move: put the working tree back to the commit it still points to
+                        if (before != null) this.sparse.checkout(this.repo, remote, before);
+                        successful = false;
+                    }
+                }
+            }
+        } finally {
+            if (permits != null) permits.release();
+        }
+        ObjectId after = this.repo.resolve(Constants.HEAD);
+        List<InternalFileDescriptor> changed = null;
+        try {
+            List<ArchiveFileChange> changes = after == null || after.equals(before) ? new ArrayList<>()
+                    : ArchiveDiff.between(this.repo, before, after, this.repo.getWorkTree(), this.sparse);
+            ArchiveChangeSet changeSet = new ArchiveChangeSet(successful, before == null ? null : before.name(),
+                    after == null ? null : after.name(), changes);
+            changed = changeSet.getDescriptors();
+            this.index.apply(changed);
+            this.rollups.update(changed);
+            this.queryCache.update(before, after, changed);
+            return changeSet;
+        } catch (IOException | RuntimeException e) {
+            // HEAD has already moved: nothing derived from the old tree may be trusted any more
+            this.invalidate(changed, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Drop the data derived from the archive after an update failed half way: cached results are cleared,
+     * the index is walked again and the rollups of the changed days, or of every day if they are not known,
+     * are recomputed when next needed
+     *
+     * @param changed changed day files, {@code null} if the diff did not complete
+     * @param failure the update failure, errors met here are added to it as suppressed
+     */
+    private void invalidate(List<InternalFileDescriptor> changed, Exception failure) {
+        this.queryCache.clear();
+        try {
+            this.index.rebuild();
+        } catch (IOException | RuntimeException e) {
+            failure.addSuppressed(e);
+        }
+        try {
+            this.rollups.invalidate(changed);
+        } catch (IOException | RuntimeException e) {
+            failure.addSuppressed(e);
+        }
     }
 
     /**
@@ -279,11 +985,7 @@ public class Station {
      * @throws IOException Error reading the file
      */
     public String getHardwareReport() throws IOException {
-        String hrp = Paths.get(this.repo.getDirectory().getAbsolutePath()).getParent().getFileName() + File.separator + "report.txt";
-        Scanner scanner = new Scanner(new File(hrp));
-        String text = scanner.useDelimiter("\\A").next();
-        scanner.close();
-        return text;
+        return Files.readString(new File(this.repo.getWorkTree(), "report.txt").toPath());
     }
 
     /**
@@ -294,9 +996,12 @@ public class Station {
      * @throws ParseException JSON error
      */
     public LatestMeasurements getLastMeasurements() throws IOException, ParseException {
-        String lastPath = Paths.get(this.repo.getDirectory().getAbsolutePath()).getParent().getFileName() + File.separator + "last.json";
+        File last = new File(this.repo.getWorkTree(), "last.json");
         JSONParser parser = new JSONParser();
-        JSONObject a = (JSONObject) parser.parse(new FileReader(lastPath));
+        JSONObject a;
+        try (Reader reader = new FileReader(last)) {
+            a = (JSONObject) parser.parse(reader);
+        }
         Instant i = Instant.parse((String) a.get("utciso"));
         double T = ((Number) a.get("T")).doubleValue();
         double H = ((Number) a.get("H")).doubleValue();
@@ -304,7 +1009,7 @@ public class Station {
         double PM10 = ((Number) a.get("PM10")).doubleValue();
         double PM25 = ((Number) a.get("PM25")).doubleValue();
         double S = ((Number) a.get("S")).doubleValue();
-        return new LatestMeasurements(T, H, P, PM10, PM25, S, lastPath, i);
+        return new LatestMeasurements(T, H, P, PM10, PM25, S, last.getPath(), i);
     }
 
     /**
@@ -0,0 +1,86 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+/**
+ * A station event waiting in a listener dispatch queue
+ */
+final class StationEvent {
+    static final int MEASUREMENTS = 0;
+    static final int HARDWARE_REPORT = 1;
+    static final int ERROR = 2;
+    private final int kind;
+    private final Object payload;
+    private final long enqueuedNanos;
+
+    /**
+     * Build the event
+     *
+     * @param kind    {@link #MEASUREMENTS}, {@link #HARDWARE_REPORT} or {@link #ERROR}
+     * @param payload the latest measurements, report text or exception
+     */
+    StationEvent(int kind, Object payload) {
+        this.kind = kind;
+        this.payload = payload;
+        this.enqueuedNanos = System.nanoTime();
+    }
+
+    /**
+     * Get the kind of the event
+     *
+     * @return kind
+     */
+    int getKind() {
+        return kind;
+    }
+
+    /**
+     * Get when the event was queued
+     *
+     * @return {@link System#nanoTime()} value
+     */
+    long getEnqueuedNanos() {
+        return enqueuedNanos;
+    }
+
+    /**
+     * Call the matching listener method
+     *
+     * @param listener the listener
+     */
+    void deliver(StationEventListener listener) {
+        switch (this.kind) {
+            case MEASUREMENTS:
+                listener.receiveStationLatestMeasurements((LatestMeasurements) this.payload);
+                break;
+            case HARDWARE_REPORT:
+                listener.receiveStationLatestHardwareReport((String) this.payload);
+                break;
+            default:
+                listener.receiveStationError((Exception) this.payload);
+        }
+    }
+}
@@ -42,4 +42,12 @@ public interface StationEventListener {
      * @param latestHardwareReport Hardware report text
      */
     void receiveStationLatestHardwareReport(String latestHardwareReport);
+
+    /**
+     * Receive event when a polling cycle fails; the watcher keeps going and retries with backoff
+     *
+     * @param e the error
+     */
+    default void receiveStationError(Exception e) {
+    }
 }
@@ -0,0 +1,363 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Owns several stations, each with its own archive and remote, and keeps them up to date on the shared watcher
+ * scheduler. Updates are staggered over the polling interval and the number of concurrent git fetches is limited,
+ * also for the watchers of the managed stations. Updates waiting for a fetch permit wait on the shared polling
+ * executor, never on the scheduler, and an update is skipped while the previous one of the same station is running
+ */
+public class StationManager implements AutoCloseable {
+    private final Map<String, Station> stations;
+    private final Map<String, ScheduledFuture<?>> schedules;
+    private final Set<String> updating;
+    private final Semaphore fetchPermits;
+    private final Executor queryExecutor;
+    private StationUpdateListener updateListener;
+    private Duration updateInterval;
+
+    /**
+     * Build manager allowing 2 concurrent fetches, running queries on the common fork-join pool
+     */
+    public StationManager() {
+        this(2, null);
+    }
+
+    /**
+     * Build manager
+     *
+     * @param maxConcurrentFetches maximum git fetches (clones and pulls) running at the same time
+     * @param queryExecutor        executor for cross-station queries, {@code null} for the common fork-join pool
+     * @throws IllegalArgumentException maxConcurrentFetches is less than 1
+     */
+    public StationManager(int maxConcurrentFetches, Executor queryExecutor) {
+        if (maxConcurrentFetches < 1) throw new IllegalArgumentException("At least one fetch must be allowed");
+        this.stations = new LinkedHashMap<>();
+        this.schedules = new LinkedHashMap<>();
+        this.updating = ConcurrentHashMap.newKeySet();
+        this.fetchPermits = new Semaphore(maxConcurrentFetches, true);
+        this.queryExecutor = queryExecutor == null ? ForkJoinPool.commonPool() : queryExecutor;
+    }
+
+    /**
+     * Open or clone a station archive and manage it. The clone counts as a fetch
+     *
+     * @param name         unique station name
+     * @param archivePath  archive directory, created if missing
+     * @param remoteGitURI remote repository, used if the archive does not exist yet
+     * @return the station
+     * @throws IOException              Input/Output error, or interrupted waiting to clone
+     * @throws GitAPIException          Git error
+     * @throws NotADirectoryException   the archive path is not a directory
+     * @throws IllegalArgumentException the name is already used
+     */
+    public Station addStation(@NotNull String name, @NotNull File archivePath, @NotNull String remoteGitURI) throws IOException, GitAPIException, NotADirectoryException {
+        return this.addStation(name, archivePath, remoteGitURI, null);
+    }
+
+    /**
+     * Open or clone a station archive with shallow and sparse options and manage it. The clone counts as a fetch
+     *
+     * @param name         unique station name
+     * @param archivePath  archive directory, created if missing
+     * @param remoteGitURI remote repository, used if the archive does not exist yet
+     * @param cloneOptions clone options, {@code null} for a full clone
+     * @return the station
+     * @throws IOException              Input/Output error, or interrupted waiting to clone
+     * @throws GitAPIException          Git error
+     * @throws NotADirectoryException   the archive path is not a directory
+     * @throws IllegalArgumentException the name is already used
+     */
+    public Station addStation(@NotNull String name, @NotNull File archivePath, @NotNull String remoteGitURI, CloneOptions cloneOptions) throws IOException, GitAPIException, NotADirectoryException {
+        synchronized (this) {
+            if (this.stations.containsKey(name)) throw new IllegalArgumentException("Station " + name + " already exists");
+        }
+        try {
+            this.fetchPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting to clone " + remoteGitURI);
+        }
+        Station station;
+        try {
+            station = new Station(archivePath, true, remoteGitURI, cloneOptions);
+        } finally {
+            this.fetchPermits.release();
+        }
+        this.addStation(name, station);
+        return station;
+    }
+
+    /**
+     * Manage an already opened station
+     *
+     * @param name    unique station name
+     * @param station the station
+     * @throws IllegalArgumentException the name is already used
+     */
+    public synchronized void addStation(@NotNull String name, @NotNull Station station) {
+        if (this.stations.containsKey(name)) throw new IllegalArgumentException("Station " + name + " already exists");
+        station.setFetchPermits(this.fetchPermits);
+        this.stations.put(name, station);
+        if (this.updateInterval != null) this.reschedule();
+    }
+
+    /**
+     * Stop managing a station, it keeps working on its own
+     *
+     * @param name station name
+     * @return the station, {@code null} if unknown
+     */
+    public synchronized Station removeStation(String name) {
+        Station station = this.stations.remove(name);
+        if (station == null) return null;
+        station.setFetchPermits(null);
+        if (this.updateInterval != null) this.reschedule();
+        return station;
+    }
+
+    /**
+     * Get a managed station
+     *
+     * @param name station name
+     * @return the station, {@code null} if unknown
+     */
+    public synchronized Station getStation(String name) {
+        return this.stations.get(name);
+    }
+
+    /**
+     * Get the managed stations by name, in insertion order
+     *
+     * @return unmodifiable snapshot
+     */
+    public synchronized Map<String, Station> getStations() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(this.stations));
+    }
+
+    /**
+     * Get the update listener
+     *
+     * @return the listener, {@code null} if none
+     */
+    public synchronized StationUpdateListener getUpdateListener() {
+        return updateListener;
+    }
+
+    /**
+     * Set the listener receiving the result of every scheduled update
+     *
+     * @param updateListener the listener, {@code null} for none
+     */
+    public synchronized void setUpdateListener(StationUpdateListener updateListener) {
+        this.updateListener = updateListener;
+    }
+
+    /**
+     * Update every station periodically. Stations are spread evenly over the interval so their fetches do not line up
+     *
+     * @param interval time between two updates of the same station
+     */
+    public synchronized void startUpdating(@NotNull Duration interval) {
+        if (interval.isNegative() || interval.isZero()) throw new IllegalArgumentException("Interval must be positive");
+        this.updateInterval = interval;
+        this.reschedule();
+    }
+
+    /**
+     * Stop the periodic updates; running updates complete
+     */
+    public synchronized void stopUpdating() {
+        this.updateInterval = null;
+        this.cancelSchedules();
+    }
+
+    /**
+     * Cancel and recreate the staggered schedules for the current stations
+     */
+    private void reschedule() {
+        this.cancelSchedules();
+        long period = this.updateInterval.toMillis();
+        int n = this.stations.size();
+        int i = 0;
+        for (Map.Entry<String, Station> e : this.stations.entrySet()) {
+            String name = e.getKey();
+            Station station = e.getValue();
+            long offset = period * i++ / n;
+            this.schedules.put(name, WatcherScheduler.get().scheduleWithFixedDelay(() -> this.submitUpdate(name, station),
+                    offset, period, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    /**
+     * Cancel all schedules
+     */
+    private void cancelSchedules() {
+        for (ScheduledFuture<?> f : this.schedules.values()) f.cancel(false);
+        this.schedules.clear();
+    }
+
+    /**
+     * Start a scheduled update on the polling executor, unless the previous one is still running
+     *
+     * @param name    station name
+     * @param station the station
+     */
+    private void submitUpdate(String name, Station station) {
+        if (!this.updating.add(name)) return;
+        WatcherScheduler.getPoller().execute(() -> {
+            try {
+                this.update(name, station);
+            } finally {
+                this.updating.remove(name);
+            }
+        });
+    }
+
+    /**
+     * Run one scheduled update and report it
+     *
+     * @param name    station name
+     * @param station the station
+     */
+    private void update(String name, Station station) {
+        StationUpdateListener listener = this.getUpdateListener();
+        try {
+            ArchiveChangeSet changes = station.pullChanges();
+            if (listener != null) listener.receiveStationUpdate(name, changes);
+        } catch (Exception e) {
+            if (listener != null) {
+                try {
+                    listener.receiveStationUpdateError(name, e);
+                } catch (RuntimeException ignored) {
+                    // a failing listener must not cancel the schedule
+                }
+            }
+        }
+    }
+
+    /**
+     * Run a query on every station concurrently
+     *
+     * @param archiveQuery the query
+     * @return results by station name
+     * @throws IOException Input/Output error on any station
+     */
+    public Map<String, ArchiveQueryResult> query(ArchiveQuery archiveQuery) throws IOException {
+        return this.join(this.queryAsync(s -> {
+            try {
+                return s.query(archiveQuery);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+    }
+
+    /**
+     * Compute the statistics of a query on every station concurrently, from the rollups
+     *
+     * @param archiveQuery the query
+     * @return reports by station name
+     * @throws IOException Input/Output error on any station
+     * @see Station#queryRollupStatistics(ArchiveQuery)
+     */
+    public Map<String, StatisticalReporter> queryRollupStatistics(ArchiveQuery archiveQuery) throws IOException {
+        return this.join(this.queryAsync(s -> {
+            try {
+                return s.queryRollupStatistics(archiveQuery);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+    }
+
+    /**
+     * Submit a per-station function for every station
+     *
+     * @param function     the per-station work
+     * @param <T>          result type
+     * @return futures by station name
+     */
+    private <T> Map<String, CompletableFuture<T>> queryAsync(Function<Station, T> function) {
+        Map<String, CompletableFuture<T>> futures = new LinkedHashMap<>();
+        for (Map.Entry<String, Station> e : this.getStations().entrySet()) {
+            Station station = e.getValue();
+            futures.put(e.getKey(), CompletableFuture.supplyAsync(() -> function.apply(station), this.queryExecutor));
+        }
+        return futures;
+    }
+
+    /**
+     * Wait for every future, failing with the first I/O error
+     *
+     * @param futures futures by station name
+     * @param <T>     result type
+     * @return results by station name
+     * @throws IOException Input/Output error on any station
+     */
+    private <T> Map<String, T> join(Map<String, CompletableFuture<T>> futures) throws IOException {
+        Map<String, T> results = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, CompletableFuture<T>> e : futures.entrySet()) results.put(e.getKey(), e.getValue().join());
+        } catch (CompletionException e) {
+            for (CompletableFuture<T> f : futures.values()) f.cancel(false);
+            if (e.getCause() instanceof UncheckedIOException) throw ((UncheckedIOException) e.getCause()).getCause();
+            throw e;
+        }
+        return results;
+    }
+
+    /**
+     * Stop the periodic updates
+     */
+    @Override
+    public void close() {
+        this.stopUpdating();
+    }
+}
@@ -25,15 +25,25 @@
 
 package it.edu.liceococito.cocitoWeatherStation;
 
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
 /**
- * Watches station events and sends them to receiver
+ * Watches station events and sends them to receivers.
+ * Watchers run on a scheduler shared by all of them, so an idle watcher holds no thread; polling cycles are
+ * started on a separate executor, so a cycle waiting for a fetch permit never delays the others.
+ * Each listener has its own bounded queue delivered on a separate executor, so the polling never waits on a listener
+ * unless it was registered with {@link OverflowPolicy#BLOCK}
  */
 public class StationWatcher {
     private Station station;
     private StationEventListener stationEventListener;
     private int secondsBetweenUpdates;
-    private boolean watchingEnabled;
-    private StationWatcherThread stationWatcherThread;
+    private volatile boolean watchingEnabled;
+    private StationWatcherTask task;
+    private ScheduledFuture<?> scheduled;
+    private final CopyOnWriteArrayList<ListenerDispatcher> dispatchers;
 
     /**
      * Build watcher
@@ -45,8 +55,9 @@ public class StationWatcher {
     public StationWatcher(Station station, int secondsBetweenUpdates, StationEventListener sev) {
         this.station = station;
         this.secondsBetweenUpdates = secondsBetweenUpdates;
-        this.stationEventListener = sev;
         this.watchingEnabled = false;
+        this.dispatchers = new CopyOnWriteArrayList<>();
+        this.setStationEventListener(sev);
     }
 
     /**
@@ -86,7 +97,7 @@ public class StationWatcher {
     }
 
     /**
-     * Get the station event listener that this watcher is associated with
+     * Get the station event listener this watcher was built with
      *
      * @return the station event listener
      */
@@ -95,12 +106,71 @@ public class StationWatcher {
     }
 
     /**
-     * Set the station event listener that this watcher is associated with
+     * Replace the station event listener this watcher was built with, other registered listeners are kept
      *
      * @param stationEventListener the station event listener
      */
-    public void setStationEventListener(StationEventListener stationEventListener) {
+    public synchronized void setStationEventListener(StationEventListener stationEventListener) {
+        if (this.stationEventListener != null) this.removeStationEventListener(this.stationEventListener);
         this.stationEventListener = stationEventListener;
+        if (stationEventListener != null) this.addStationEventListener(stationEventListener);
+    }
+
+    /**
+     * Register a listener with a queue of 16 events that drops the oldest when full
+     *
+     * @param listener the station event listener
+     */
+    public void addStationEventListener(StationEventListener listener) {
+        this.addStationEventListener(listener, 16, OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * Register a listener with its own bounded queue
+     *
+     * @param listener the station event listener
+     * @param capacity maximum events waiting for the listener
+     * @param policy   what to do when the queue is full
+     * @throws IllegalArgumentException capacity is less than 1
+     */
+    public void addStationEventListener(StationEventListener listener, int capacity, OverflowPolicy policy) {
+        this.dispatchers.add(new ListenerDispatcher(listener, capacity, policy, WatcherScheduler.getDispatcher()));
+    }
+
+    /**
+     * Unregister a listener, events already queued for it are still delivered
+     *
+     * @param listener the station event listener
+     * @return false if the listener was not registered
+     */
+    public boolean removeStationEventListener(StationEventListener listener) {
+        for (ListenerDispatcher d : this.dispatchers) {
+            if (d.getListener() == listener) return this.dispatchers.remove(d);
+        }
+        return false;
+    }
+
+    /**
+     * Get the dispatch metrics of a listener
+     *
+     * @param listener the station event listener
+     * @return metrics, {@code null} if the listener is not registered
+     */
+    public ListenerMetrics getListenerMetrics(StationEventListener listener) {
+        for (ListenerDispatcher d : this.dispatchers) {
+            if (d.getListener() == listener) return d.getMetrics();
+        }
+        return null;
+    }
+
+    /**
+     * Queue an event for every registered listener
+     *
+     * @param event the event
+     * @throws InterruptedException interrupted while waiting on a blocking listener queue
+     */
+    void publish(StationEvent event) throws InterruptedException {
+        for (ListenerDispatcher d : this.dispatchers) d.offer(event);
     }
 
     /**
@@ -115,19 +185,33 @@ public class StationWatcher {
     /**
      * Start or resume watching
      */
-    public void startWatching() {
+    public synchronized void startWatching() {
         if (!this.watchingEnabled) {
-            this.stationWatcherThread = new StationWatcherThread(this);
-            this.stationWatcherThread.start();
+            this.watchingEnabled = true;
+            this.task = new StationWatcherTask(this);
+            this.schedule(this.task, 0);
         }
-        this.watchingEnabled = true;
     }
 
     /**
      * Stop watching
      */
-    public void stopWatching() {
+    public synchronized void stopWatching() {
         this.watchingEnabled = false;
+        this.task = null;
+        if (this.scheduled != null) this.scheduled.cancel(false);
+    }
+
+    /**
+     * Schedule a polling cycle on the shared scheduler, unless watching was stopped since the task was started.
+     * A task still running when watching is stopped and started again is not rescheduled
+     *
+     * @param task        the polling task
+     * @param delayMillis delay in milliseconds
+     */
+    synchronized void schedule(StationWatcherTask task, long delayMillis) {
+        if (!this.watchingEnabled || task != this.task) return;
+        this.scheduled = WatcherScheduler.get().schedule(() -> WatcherScheduler.getPoller().execute(task), delayMillis, TimeUnit.MILLISECONDS);
     }
 
 }
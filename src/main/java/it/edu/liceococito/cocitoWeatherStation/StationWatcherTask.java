@@ -0,0 +1,130 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One polling cycle of a station watcher: update the archive, read {@code last.json} and, when it is new,
+ * {@code report.txt}, each once, then dispatch events and schedule the next cycle.
+ * The next cycle is aligned to when the station is expected to publish again; after an error it is retried
+ * with exponential backoff and jitter
+ */
+class StationWatcherTask implements Runnable {
+    private static final long PUBLISH_GRACE_MILLIS = 5_000;
+    private static final long MIN_DELAY_MILLIS = 1_000;
+    private static final long MAX_BACKOFF_MILLIS = 10 * 60_000;
+    private final StationWatcher stationWatcher;
+    private final PublishCadenceEstimator cadence;
+    private int failures;
+    private boolean started;
+
+    /**
+     * Build the task
+     *
+     * @param stationWatcher Watcher
+     */
+    StationWatcherTask(StationWatcher stationWatcher) {
+        this.stationWatcher = stationWatcher;
+        this.cadence = new PublishCadenceEstimator();
+    }
+
+    /**
+     * Run a cycle and schedule the next one
+     */
+    @Override
+    public void run() {
+        if (!this.stationWatcher.isWatchingEnabled()) return;
+        long delay;
+        try {
+            this.poll();
+            this.failures = 0;
+            delay = this.nextDelay();
+        } catch (Exception e) {
+            this.failures++;
+            delay = this.backoff();
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                this.stationWatcher.publish(new StationEvent(StationEvent.ERROR, e));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        this.stationWatcher.schedule(this, delay);
+    }
+
+    /**
+     * Update the archive and dispatch events if a new measurement batch arrived.
+     * The first cycle only records the current measurements
+     *
+     * @throws Exception any error from the station, or interrupted while waiting on a blocking listener queue
+     */
+    private void poll() throws Exception {
+        Station station = this.stationWatcher.getStation();
+        if (this.started) station.udpate();
+        LatestMeasurements lms = station.getLastMeasurements();
+        Instant previous = this.cadence.getLatest();
+        this.cadence.record(lms.getInstant());
+        if (this.started && previous != null && lms.getInstant().isAfter(previous)) {
+            this.stationWatcher.publish(new StationEvent(StationEvent.HARDWARE_REPORT, station.getHardwareReport()));
+            this.stationWatcher.publish(new StationEvent(StationEvent.MEASUREMENTS, lms));
+        }
+        this.started = true;
+    }
+
+    /**
+     * Delay until the next expected publication (plus a grace period for the archive push),
+     * or the configured polling interval when the cadence is unknown or the station is late
+     *
+     * @return delay in milliseconds
+     */
+    private long nextDelay() {
+        long interval = TimeUnit.SECONDS.toMillis(this.stationWatcher.getSecondsBetweenUpdates());
+        Duration c = this.cadence.getCadence();
+        if (c == null || this.cadence.getLatest() == null) return Math.max(MIN_DELAY_MILLIS, interval);
+        long expected = this.cadence.getLatest().plus(c).toEpochMilli() + PUBLISH_GRACE_MILLIS - System.currentTimeMillis();
+        if (expected < MIN_DELAY_MILLIS) return Math.max(MIN_DELAY_MILLIS, interval);
+        return expected;
+    }
+
+    /**
+     * Exponential backoff with jitter after consecutive failures
+     *
+     * @return delay in milliseconds
+     */
+    private long backoff() {
+        long base = Math.max(MIN_DELAY_MILLIS, TimeUnit.SECONDS.toMillis(Math.min(this.stationWatcher.getSecondsBetweenUpdates(), 5)));
+        long delay = Math.min(MAX_BACKOFF_MILLIS, base << Math.min(this.failures - 1, 20));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+}
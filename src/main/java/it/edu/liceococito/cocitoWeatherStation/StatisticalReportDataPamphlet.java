@@ -26,14 +26,26 @@ package it.edu.liceococito.cocitoWeatherStation;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 
 /**
- * Data holder for statistical data results for a given data type
+ * Data holder for statistical data results for a given data type.
+ * Values are accumulated in a single pass without being stored; quantiles come from a mergeable sketch
  */
 public class StatisticalReportDataPamphlet {
+    /**
+     * Values added here are folded into the statistics at the next {@code compute()}.
+     * Kept for compatibility, values are now accumulated without being stored
+     */
+    @Deprecated
     public ArrayList<Double> values;
+    private final StatisticsAccumulator accumulator;
+    private final QuantileSketch sketch;
+    private final Histogram histogram;
+    private final int integerMin;
+    private final int integerMax;
+    private long[] integerCounts;
+    private final HashMap<Integer, Long> outOfRangeIntegerCounts;
     private double mean;
     private double min;
     private double max;
@@ -49,6 +61,109 @@ public class StatisticalReportDataPamphlet {
     StatisticalReportDataPamphlet(DataType dataType) {
         this.dataType = dataType;
         this.values = new ArrayList<>();
+        this.accumulator = new StatisticsAccumulator();
+        this.sketch = new QuantileSketch();
+        this.histogram = new Histogram(dataType);
+        this.integerMin = (int) Math.floor(dataType.getHistogramMin());
+        this.integerMax = (int) Math.ceil(dataType.getHistogramMax());
+        this.outOfRangeIntegerCounts = new HashMap<>();
+    }
+
+    /**
+     * Accumulate a value
+     *
+     * @param val the value
+     */
+    void accept(double val) {
+        this.accumulator.add(val);
+        this.sketch.add(val);
+        this.histogram.add(val);
+        this.countInteger((int) val, 1);
+    }
+
+    /**
+     * Count values by integer part, in a primitive array over the data type histogram range
+     * and in a map for the rare values outside it
+     *
+     * @param key   integer part
+     * @param count number of values
+     */
+    private void countInteger(int key, long count) {
+        if (key < this.integerMin || key > this.integerMax) {
+            this.outOfRangeIntegerCounts.merge(key, count, Long::sum);
+            return;
+        }
+        if (this.integerCounts == null) this.integerCounts = new long[this.integerMax - this.integerMin + 1];
+        this.integerCounts[key - this.integerMin] += count;
+    }
+
+    /**
+     * Merge the values accumulated by another pamphlet of the same data type
+     *
+     * @param other the pamphlet to merge, left unchanged
+     */
+    void merge(StatisticalReportDataPamphlet other) {
+        for (double val : other.values) this.accept(val);
+        this.accumulator.merge(other.accumulator);
+        this.sketch.merge(other.sketch);
+        this.histogram.merge(other.histogram);
+        if (other.integerCounts != null) {
+            for (int i = 0; i < other.integerCounts.length; i++) {
+                if (other.integerCounts[i] > 0) this.countInteger(other.integerMin + i, other.integerCounts[i]);
+            }
+        }
+        other.outOfRangeIntegerCounts.forEach(this::countInteger);
+    }
+
+    /**
+     * Merge precomputed statistics, which carry no histogram
+     *
+     * @param other  statistics to merge, left unchanged
+     * @param sketch quantile sketch of the same values, left unchanged
+     */
+    void merge(StatisticsAccumulator other, QuantileSketch sketch) {
+        this.accumulator.merge(other);
+        this.sketch.merge(sketch);
+    }
+
+    /**
+     * Get the underlying accumulator
+     *
+     * @return accumulator
+     */
+    public StatisticsAccumulator getAccumulator() {
+        this.drainValues();
+        return accumulator;
+    }
+
+    /**
+     * Get the underlying quantile sketch
+     *
+     * @return sketch
+     */
+    public QuantileSketch getQuantileSketch() {
+        this.drainValues();
+        return sketch;
+    }
+
+    /**
+     * Get the value at a quantile, within the sketch rank error
+     *
+     * @param q quantile, from {@code 0} to {@code 1}, e.g. {@code 0.98} for the 98th percentile
+     * @return value, NaN if there are no values
+     * @see it.edu.liceococito.cocitoWeatherStation.QuantileSketch#getNormalizedRankError()
+     */
+    public double getQuantile(double q) {
+        return this.getQuantileSketch().getQuantile(q);
+    }
+
+    /**
+     * Get median value, within the sketch rank error
+     *
+     * @return median, NaN if there are no values
+     */
+    public double getMedian() {
+        return this.getQuantile(0.5);
     }
 
     /**
@@ -79,9 +194,19 @@ public class StatisticalReportDataPamphlet {
     }
 
     /**
-     * Get integer mode
+     * Get the histogram of the values, with the data type default bins
+     *
+     * @return histogram
+     */
+    public Histogram getHistogram() {
+        this.drainValues();
+        return histogram;
+    }
+
+    /**
+     * Get integer mode, the most frequent integer part of the values, the smallest on ties
      *
-     * @return mode
+     * @return mode, {@code 0} if there are no values
      */
 
     public int getMode() {
@@ -151,77 +276,60 @@ public class StatisticalReportDataPamphlet {
            Listening to Maniac by Micheal Sembello
            0:30
         */
-        this.numberElements = this.values.size();
-        int sum = 0;
-        int i;
-        double max = 0, min = 0;
-        HashMap<Integer, Integer> integerModeOccurrence = new HashMap<>();
-        for (i = 0; i < this.numberElements; i++) {
-            double val = this.values.get(i);
-            sum += val;
-            if (i == 0 || max < val) {
-                max = val;
-            }
-            if (i == 0 || min > val) {
-                min = val;
-            }
-            if (integerModeOccurrence.containsKey((int) val)) {
-                integerModeOccurrence.put((int) val, integerModeOccurrence.get((int) val) + 1);
-            } else {
-                integerModeOccurrence.put((int) val, 1);
+        this.drainValues();
+        this.numberElements = (int) this.accumulator.getCount();
+        this.mean = this.accumulator.getMean();
+        this.max = this.numberElements == 0 ? 0 : this.accumulator.getMax();
+        this.min = this.numberElements == 0 ? 0 : this.accumulator.getMin();
+        this.stdev = this.accumulator.getStdev();
+        this.mode = this.integerMode();
+    }
+
+    /**
+     * Find the most frequent integer part, the smallest on ties wherever the counts are kept
+     *
+     * @return mode, {@code 0} if there are no values
+     */
+    private int integerMode() {
+        int mode = 0;
+        long best = 0;
+        if (this.integerCounts != null) {
+            for (int i = 0; i < this.integerCounts.length; i++) {
+                if (isBetterMode(this.integerMin + i, this.integerCounts[i], mode, best)) {
+                    best = this.integerCounts[i];
+                    mode = this.integerMin + i;
+                }
             }
         }
-        this.mean = sum / (double) i;
-        this.max = max;
-        this.min = min;
-        int biggestValue = 0, biggestKey = 0;
-        Iterator<Map.Entry<Integer, Integer>> it = integerModeOccurrence.entrySet().iterator();
-        i = 0;
-        while (it.hasNext()) {
-            Map.Entry<Integer, Integer> pair = it.next();
-            if (i == 0 || biggestValue < pair.getValue()) {
-                biggestValue = pair.getValue();
-                biggestKey = pair.getKey();
+        for (Map.Entry<Integer, Long> e : this.outOfRangeIntegerCounts.entrySet()) {
+            if (isBetterMode(e.getKey(), e.getValue(), mode, best)) {
+                best = e.getValue();
+                mode = e.getKey();
             }
-            i++;
         }
-        this.mode = biggestKey;
-        this.stdev = this.sd();
-        this.values.clear();
+        return mode;
     }
 
     /**
-     * Calculate standard deviation
+     * Check whether an integer part should replace the current mode
      *
-     * @return standard deviation
+     * @param key   integer part
+     * @param count its count
+     * @param mode  current mode
+     * @param best  count of the current mode, {@code 0} if there is none yet
+     * @return true if it is more frequent, or as frequent and smaller
      */
-    private double sd() {
-
-        /*
-         * Standard deviation:
-         * Step 1: Find the mean.
-         * Step 2: For each data point, find the square of its distance to the mean.
-         * Step 3: Sum the values from Step 2.
-         * Step 4: Divide by the number of data points.
-         * Step 5: Take the square root.
-         */
-        // Step 1:
-        double mean = this.mean;
-        double temp = 0;
-
-        for (double val : this.values) {
-            // Step 2:
-            double squrDiffToMean = Math.pow(val - mean, 2);
-
-            // Step 3:
-            temp += squrDiffToMean;
-        }
-
-        // Step 4:
-        double meanOfDiffs = temp / (double) (this.values.size());
+    private static boolean isBetterMode(int key, long count, int mode, long best) {
+        return count > best || (count == best && count > 0 && key < mode);
+    }
 
-        // Step 5:
-        return Math.sqrt(meanOfDiffs);
+    /**
+     * Fold the values added to the legacy value list into the accumulator
+     */
+    private void drainValues() {
+        if (this.values.isEmpty()) return;
+        for (double val : this.values) this.accept(val);
+        this.values.clear();
     }
 
 }
@@ -25,6 +25,7 @@
 package it.edu.liceococito.cocitoWeatherStation;
 
 import java.util.HashMap;
+import java.util.stream.Stream;
 
 /**
  * Generate Statistical data from archive query result
@@ -38,7 +39,31 @@ public class StatisticalReporter {
      * @param aqs query results
      */
     public StatisticalReporter(ArchiveQueryResult aqs) {
-        PageList pgl = aqs.getPageList();
+        this();
+        for (Page p : aqs.getPageList()) {
+            for (int i = 0; i < p.size(); i++) {
+                this.accept(p.getType(i), p.getValue(i));
+            }
+        }
+    }
+
+    /**
+     * Build and compute stats consuming a value stream, without materializing the query result
+     *
+     * @param values value stream, e.g. from {@code Station.stream(ArchiveQuery)}; it is closed when consumed
+     * @see it.edu.liceococito.cocitoWeatherStation.Station#stream(ArchiveQuery)
+     */
+    public StatisticalReporter(Stream<Value> values) {
+        this();
+        try (values) {
+            values.forEach(v -> this.accept(v.getType(), v.getValue()));
+        }
+    }
+
+    /**
+     * Build empty reporter, to be filled while a query runs
+     */
+    StatisticalReporter() {
         StatisticalReportDataPamphlet temperature = new StatisticalReportDataPamphlet(DataType.TEMPERATURE);
         StatisticalReportDataPamphlet humidity = new StatisticalReportDataPamphlet(DataType.HUMIDITY);
         StatisticalReportDataPamphlet pressure = new StatisticalReportDataPamphlet(DataType.PRESSURE);
@@ -52,15 +77,38 @@ public class StatisticalReporter {
         datamap.put(DataType.PM10, pm10);
         datamap.put(DataType.PM25, pm25);
         datamap.put(DataType.SMOKE_AND_FLAMMABLE_VAPOURS, smokeAndFlammableVapours);
+    }
 
-        for (Page p : pgl) {
-            for (Value v : p) {
-                StatisticalReportDataPamphlet srdp = datamap.get(v.getType());
-                srdp.setDataType(v.getType());
-                srdp.getValues().add(v.getValue());
-            }
-        }
+    /**
+     * Accumulate a value
+     *
+     * @param dataType value data type
+     * @param value    the value
+     */
+    void accept(DataType dataType, double value) {
+        this.datamap.get(dataType).accept(value);
+    }
+
+    /**
+     * Merge precomputed statistics of a data type
+     *
+     * @param dataType data type
+     * @param other    statistics to merge, left unchanged
+     * @param sketch   quantile sketch of the same values, left unchanged
+     */
+    void merge(DataType dataType, StatisticsAccumulator other, QuantileSketch sketch) {
+        this.datamap.get(dataType).merge(other, sketch);
+    }
 
+    /**
+     * Merge partial statistics computed by another reporter
+     *
+     * @param other the reporter to merge, left unchanged
+     */
+    public void merge(StatisticalReporter other) {
+        for (DataType dt : DataType.values()) {
+            this.datamap.get(dt).merge(other.datamap.get(dt));
+        }
     }
 
     /**
@@ -0,0 +1,189 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+/**
+ * Single pass, constant memory accumulator of count, sum, mean, variance, min and max.
+ * The mean and variance use Welford's update, the sum uses Kahan compensation.
+ * Accumulators can be merged, so partial results computed separately (per file, per thread) can be combined
+ */
+public class StatisticsAccumulator {
+    private long count;
+    private double mean;
+    private double m2;
+    private double sum;
+    private double sumCompensation;
+    private double min;
+    private double max;
+
+    /**
+     * Build an empty accumulator
+     */
+    public StatisticsAccumulator() {
+        this.min = Double.POSITIVE_INFINITY;
+        this.max = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Build an accumulator from precomputed moments
+     *
+     * @param count        number of values
+     * @param sum          sum of values
+     * @param sumOfSquares sum of squared values
+     * @param min          min value
+     * @param max          max value
+     * @return accumulator
+     */
+    static StatisticsAccumulator fromMoments(long count, double sum, double sumOfSquares, double min, double max) {
+        StatisticsAccumulator acc = new StatisticsAccumulator();
+        if (count == 0) return acc;
+        acc.count = count;
+        acc.sum = sum;
+        acc.mean = sum / count;
+        acc.m2 = Math.max(0, sumOfSquares - sum * acc.mean);
+        acc.min = min;
+        acc.max = max;
+        return acc;
+    }
+
+    /**
+     * Add a value
+     *
+     * @param value the value
+     */
+    public void add(double value) {
+        this.count++;
+        double delta = value - this.mean;
+        this.mean += delta / this.count;
+        this.m2 += delta * (value - this.mean);
+        this.addToSum(value);
+        if (value < this.min) this.min = value;
+        if (value > this.max) this.max = value;
+    }
+
+    /**
+     * Merge another accumulator into this one
+     *
+     * @param other the accumulator to merge, left unchanged
+     */
+    public void merge(StatisticsAccumulator other) {
+        if (other.count == 0) return;
+        if (this.count == 0) {
+            this.count = other.count;
+            this.mean = other.mean;
+            this.m2 = other.m2;
+            this.sum = other.sum;
+            this.sumCompensation = other.sumCompensation;
+            this.min = other.min;
+            this.max = other.max;
+            return;
+        }
+        long n = this.count + other.count;
+        double delta = other.mean - this.mean;
+        this.mean += delta * other.count / n;
+        this.m2 += other.m2 + delta * delta * ((double) this.count * other.count / n);
+        this.count = n;
+        this.addToSum(other.sum);
+        this.addToSum(-other.sumCompensation);
+        if (other.min < this.min) this.min = other.min;
+        if (other.max > this.max) this.max = other.max;
+    }
+
+    /**
+     * Kahan summation step
+     *
+     * @param value value to add to the sum
+     */
+    private void addToSum(double value) {
+        double y = value - this.sumCompensation;
+        double t = this.sum + y;
+        this.sumCompensation = (t - this.sum) - y;
+        this.sum = t;
+    }
+
+    /**
+     * Get number of values
+     *
+     * @return count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get sum of values
+     *
+     * @return sum
+     */
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * Get mean value
+     *
+     * @return mean, {@code NaN} if empty
+     */
+    public double getMean() {
+        return this.count == 0 ? Double.NaN : this.mean;
+    }
+
+    /**
+     * Get population variance
+     *
+     * @return variance, {@code NaN} if empty
+     */
+    public double getVariance() {
+        return this.count == 0 ? Double.NaN : this.m2 / this.count;
+    }
+
+    /**
+     * Get population standard deviation
+     *
+     * @return standard deviation, {@code NaN} if empty
+     */
+    public double getStdev() {
+        return Math.sqrt(this.getVariance());
+    }
+
+    /**
+     * Get min value
+     *
+     * @return min, {@code NaN} if empty
+     */
+    public double getMin() {
+        return this.count == 0 ? Double.NaN : this.min;
+    }
+
+    /**
+     * Get max value
+     *
+     * @return max, {@code NaN} if empty
+     */
+    public double getMax() {
+        return this.count == 0 ? Double.NaN : this.max;
+    }
+}
@@ -29,7 +29,9 @@ import java.io.File;
 import java.time.Instant;
 
 /**
- * A value data point
+ * A value data point.
+ * Its file line is the zero-based index of the data row among the rows of its file: lines with less than two
+ * fields, such as blank lines, are not counted, so it is the csv line index only for files without such lines
  */
 public class Value {
     private final Instant created;
@@ -43,7 +45,7 @@ public class Value {
      *
      * @param created  Data point generation instant
      * @param file     File containing the data point
-     * @param fileLine Line of the source file containing the data point
+     * @param fileLine Zero-based data row index of the data point in its file
      * @param value    Data point value
      * @param type     Type of data point
      */
@@ -65,9 +67,9 @@ public class Value {
     }
 
     /**
-     * Get the line of the source file containing the data point
+     * Get the zero-based data row index of the data point in its file, skipped lines not counted
      *
-     * @return line
+     * @return row index
      */
     public int getFileLine() {
         return fileLine;
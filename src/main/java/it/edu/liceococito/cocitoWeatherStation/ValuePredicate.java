@@ -0,0 +1,137 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+/**
+ * Range of accepted values of a data type, e.g. {@code ValuePredicate.greaterThan(30)} for hot readings.
+ * NaN never matches
+ */
+public class ValuePredicate {
+    private final double lower;
+    private final boolean lowerInclusive;
+    private final double upper;
+    private final boolean upperInclusive;
+
+    /**
+     * Build the predicate
+     *
+     * @param lower          lower bound, {@code Double.NEGATIVE_INFINITY} for none
+     * @param lowerInclusive whether the lower bound matches
+     * @param upper          upper bound, {@code Double.POSITIVE_INFINITY} for none
+     * @param upperInclusive whether the upper bound matches
+     */
+    private ValuePredicate(double lower, boolean lowerInclusive, double upper, boolean upperInclusive) {
+        if (Double.isNaN(lower) || Double.isNaN(upper)) throw new IllegalArgumentException("Bounds must not be NaN");
+        this.lower = lower;
+        this.lowerInclusive = lowerInclusive;
+        this.upper = upper;
+        this.upperInclusive = upperInclusive;
+    }
+
+    /**
+     * Values greater than a threshold
+     *
+     * @param threshold threshold, excluded
+     * @return predicate
+     */
+    public static ValuePredicate greaterThan(double threshold) {
+        return new ValuePredicate(threshold, false, Double.POSITIVE_INFINITY, true);
+    }
+
+    /**
+     * Values greater than or equal to a threshold
+     *
+     * @param threshold threshold, included
+     * @return predicate
+     */
+    public static ValuePredicate atLeast(double threshold) {
+        return new ValuePredicate(threshold, true, Double.POSITIVE_INFINITY, true);
+    }
+
+    /**
+     * Values less than a threshold
+     *
+     * @param threshold threshold, excluded
+     * @return predicate
+     */
+    public static ValuePredicate lessThan(double threshold) {
+        return new ValuePredicate(Double.NEGATIVE_INFINITY, true, threshold, false);
+    }
+
+    /**
+     * Values less than or equal to a threshold
+     *
+     * @param threshold threshold, included
+     * @return predicate
+     */
+    public static ValuePredicate atMost(double threshold) {
+        return new ValuePredicate(Double.NEGATIVE_INFINITY, true, threshold, true);
+    }
+
+    /**
+     * Values in a closed range
+     *
+     * @param min range start, included
+     * @param max range end, included
+     * @return predicate
+     */
+    public static ValuePredicate between(double min, double max) {
+        return new ValuePredicate(min, true, max, true);
+    }
+
+    /**
+     * Check whether a value matches
+     *
+     * @param value the value
+     * @return boolean
+     */
+    public boolean test(double value) {
+        return (this.lowerInclusive ? value >= this.lower : value > this.lower)
+                && (this.upperInclusive ? value <= this.upper : value < this.upper);
+    }
+
+    /**
+     * Check whether any value in {@code [min, max]} can match, to skip day files by their min and max
+     *
+     * @param min smallest value
+     * @param max largest value
+     * @return false if no value in the range matches
+     */
+    boolean mayMatch(double min, double max) {
+        return (this.lowerInclusive ? max >= this.lower : max > this.lower)
+                && (this.upperInclusive ? min <= this.upper : min < this.upper);
+    }
+
+    /**
+     * Get the predicate in interval notation, e.g. {@code (30.0,Infinity]}
+     *
+     * @return string
+     */
+    @Override
+    public String toString() {
+        return (this.lowerInclusive ? "[" : "(") + this.lower + ',' + this.upper + (this.upperInclusive ? "]" : ")");
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import java.io.File;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The {@code n} highest or lowest values seen, kept in a bounded heap of primitive arrays while the archive is scanned.
+ * Rankings of partial scans, or of different stations, can be merged. Equal values rank by time, earliest first
+ */
+public class ValueRanking {
+    private final int limit;
+    private final boolean highest;
+    private final double[] values;
+    private final long[] times;
+    private final DataType[] types;
+    private final File[] files;
+    private final int[] lines;
+    private int size;
+
+    /**
+     * Build an empty ranking
+     *
+     * @param limit   number of values kept
+     * @param highest true to keep the highest values, false to keep the lowest
+     * @throws IllegalArgumentException limit is negative
+     */
+    public ValueRanking(int limit, boolean highest) {
+        if (limit < 0) throw new IllegalArgumentException("Limit must not be negative");
+        this.limit = limit;
+        this.highest = highest;
+        this.values = new double[limit];
+        this.times = new long[limit];
+        this.types = new DataType[limit];
+        this.files = new File[limit];
+        this.lines = new int[limit];
+    }
+
+    /**
+     * Offer a value, kept if it ranks among the first {@code limit}
+     *
+     * @param epochSecond creation instant
+     * @param value       the value, NaN is ignored
+     * @param dataType    data type
+     * @param file        source file, may be {@code null}
+     * @param line        zero-based data row index in the source file
+     */
+    void offer(long epochSecond, double value, DataType dataType, File file, int line) {
+        if (Double.isNaN(value) || this.limit == 0) return;
+        int i;
+        if (this.size < this.limit) {
+            i = this.size++;
+            while (i > 0 && this.ranksBefore(this.values[(i - 1) / 2], this.times[(i - 1) / 2], value, epochSecond)) {
+                this.move((i - 1) / 2, i);
+                i = (i - 1) / 2;
+            }
+        } else {
+            if (!this.ranksBefore(value, epochSecond, this.values[0], this.times[0])) return;
+            i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= this.size) break;
+                if (child + 1 < this.size && this.ranksBefore(this.values[child], this.times[child], this.values[child + 1], this.times[child + 1]))
+                    child++;
+                if (!this.ranksBefore(value, epochSecond, this.values[child], this.times[child])) break;
+                this.move(child, i);
+                i = child;
+            }
+        }
+        this.values[i] = value;
+        this.times[i] = epochSecond;
+        this.types[i] = dataType;
+        this.files[i] = file;
+        this.lines[i] = line;
+    }
+
+    /**
+     * Offer a value, kept if it ranks among the first {@code limit}
+     *
+     * @param value the value
+     */
+    public void offer(Value value) {
+        this.offer(value.getCreated().getEpochSecond(), value.getValue(), value.getType(), value.getFile(), value.getFileLine());
+    }
+
+    /**
+     * Add the values of another ranking
+     *
+     * @param other ranking of the same direction, left unchanged
+     * @throws IllegalArgumentException the rankings have different directions
+     */
+    public void merge(ValueRanking other) {
+        if (other.highest != this.highest) throw new IllegalArgumentException("Rankings have different directions");
+        for (int i = 0; i < other.size; i++) {
+            this.offer(other.times[i], other.values[i], other.types[i], other.files[i], other.lines[i]);
+        }
+    }
+
+    /**
+     * Get the ranked values, best first
+     *
+     * @return values
+     */
+    public List<Value> getValues() {
+        Integer[] order = new Integer[this.size];
+        for (int i = 0; i < this.size; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> this.ranksBefore(this.values[a], this.times[a], this.values[b], this.times[b]) ? -1
+                : this.ranksBefore(this.values[b], this.times[b], this.values[a], this.times[a]) ? 1 : 0);
+        ArrayList<Value> out = new ArrayList<>(this.size);
+        for (int i : order) out.add(new Value(Instant.ofEpochSecond(this.times[i]), this.files[i], this.lines[i], this.values[i], this.types[i]));
+        return out;
+    }
+
+    /**
+     * Get how many values are kept
+     *
+     * @return limit
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Check whether the highest or the lowest values are kept
+     *
+     * @return true for the highest
+     */
+    public boolean isHighest() {
+        return highest;
+    }
+
+    /**
+     * Get how many values the ranking holds
+     *
+     * @return size, at most the limit
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check whether a value ranks before another
+     */
+    private boolean ranksBefore(double v1, long t1, double v2, long t2) {
+        if (v1 != v2) return this.highest ? v1 > v2 : v1 < v2;
+        return t1 < t2;
+    }
+
+    /**
+     * Move a heap entry
+     */
+    private void move(int from, int to) {
+        this.values[to] = this.values[from];
+        this.times[to] = this.times[from];
+        this.types[to] = this.types[from];
+        this.files[to] = this.files[from];
+        this.lines[to] = this.lines[from];
+    }
+}
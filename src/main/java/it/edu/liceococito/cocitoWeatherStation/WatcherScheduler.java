@@ -0,0 +1,103 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scheduler, polling executor and dispatch executor shared by all station watchers and station managers.
+ * The scheduler only starts polling cycles and updates on the polling executor, so cycles waiting for a fetch permit
+ * never hold a scheduler thread.
+ * As with a watcher thread, the JVM is kept alive while a watcher is watching: threads are not daemons,
+ * cancelled cycles leave the scheduler queue at once and idle threads end after a minute
+ */
+final class WatcherScheduler {
+    private static final long KEEP_ALIVE_SECONDS = 60;
+    private static final ScheduledExecutorService SCHEDULER = scheduler();
+    private static final ExecutorService POLLER = Executors.newCachedThreadPool(threadFactory("station-poller-"));
+    private static final ExecutorService DISPATCHER = Executors.newCachedThreadPool(threadFactory("station-listener-"));
+
+    private WatcherScheduler() {
+    }
+
+    /**
+     * Build the scheduler, whose threads end when no cycle is scheduled
+     *
+     * @return scheduler
+     */
+    private static ScheduledExecutorService scheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(
+                Math.max(2, Runtime.getRuntime().availableProcessors()), threadFactory("station-watcher-"));
+        scheduler.setRemoveOnCancelPolicy(true);
+        scheduler.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        scheduler.allowCoreThreadTimeOut(true);
+        return scheduler;
+    }
+
+    /**
+     * Build a factory of named threads
+     *
+     * @param prefix thread name prefix
+     * @return thread factory
+     */
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger n = new AtomicInteger();
+        return r -> new Thread(r, prefix + n.incrementAndGet());
+    }
+
+    /**
+     * Get the shared scheduler running the polling cycles
+     *
+     * @return scheduler
+     */
+    static ScheduledExecutorService get() {
+        return SCHEDULER;
+    }
+
+    /**
+     * Get the shared executor running polling cycles and updates, which may wait for a fetch permit
+     *
+     * @return executor
+     */
+    static ExecutorService getPoller() {
+        return POLLER;
+    }
+
+    /**
+     * Get the shared executor delivering events to listeners
+     *
+     * @return executor
+     */
+    static ExecutorService getDispatcher() {
+        return DISPATCHER;
+    }
+}
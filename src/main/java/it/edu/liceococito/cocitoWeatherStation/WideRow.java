@@ -0,0 +1,91 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Values of several data types taken at the same instant
+ */
+public class WideRow {
+    private final Instant created;
+    private final double[] values;
+
+    /**
+     * Build a wide row
+     *
+     * @param created instant of the row, the earliest of its values
+     * @param values  values by data type ordinal, NaN where the data type has no value; not copied
+     */
+    WideRow(Instant created, double[] values) {
+        this.created = created;
+        this.values = values;
+    }
+
+    /**
+     * Get the row instant
+     *
+     * @return instant of the earliest value in the row
+     */
+    public Instant getCreated() {
+        return created;
+    }
+
+    /**
+     * Get the value of a data type
+     *
+     * @param dataType data type
+     * @return value, NaN if the data type has no value at this instant
+     */
+    public double getValue(DataType dataType) {
+        return values[dataType.ordinal()];
+    }
+
+    /**
+     * Check whether a data type has a value at this instant
+     *
+     * @param dataType data type
+     * @return boolean
+     */
+    public boolean hasValue(DataType dataType) {
+        return !Double.isNaN(values[dataType.ordinal()]);
+    }
+
+    /**
+     * Get the data types having a value at this instant
+     *
+     * @return data types
+     */
+    public List<DataType> getDataTypes() {
+        ArrayList<DataType> types = new ArrayList<>();
+        for (DataType dt : DataType.values()) {
+            if (this.hasValue(dt)) types.add(dt);
+        }
+        return types;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Merge join on time of one value scan per data type, each already in time order.
+ * The earliest pending value opens a row and every data type whose pending value is within the tolerance joins it,
+ * so only one pending value per data type is held in memory.
+ * Time periods are joined one after the other, so their scans need not follow each other in time.
+ * No day file is opened before the first call to {@code hasNext()}
+ */
+class WideRowJoiner implements Iterator<WideRow>, AutoCloseable {
+    private final List<ArchiveValueIterator[]> periods;
+    private final long toleranceSeconds;
+    private ArchiveValueIterator[] sources;
+    private int period;
+    private final boolean[] pending;
+    private final long[] times;
+    private final double[] values;
+
+    /**
+     * Build the joiner
+     *
+     * @param periods          for each time period in order, one scan per data type, indexed by data type ordinal,
+     *                         {@code null} for types not queried
+     * @param toleranceSeconds how far after the row instant a value can be and still join the row
+     */
+    WideRowJoiner(List<ArchiveValueIterator[]> periods, long toleranceSeconds) {
+        this.periods = periods;
+        this.toleranceSeconds = toleranceSeconds;
+        this.period = -1;
+        this.pending = new boolean[DataType.values().length];
+        this.times = new long[this.pending.length];
+        this.values = new double[this.pending.length];
+    }
+
+    /**
+     * Check whether another row is available, starting the scans of the next time period if needed
+     *
+     * @return boolean
+     * @throws UncheckedIOException a day file could not be read
+     */
+    @Override
+    public boolean hasNext() {
+        while (true) {
+            for (boolean p : this.pending) {
+                if (p) return true;
+            }
+            if (this.period + 1 >= this.periods.size()) return false;
+            if (this.sources != null) close(this.sources);
+            this.sources = this.periods.get(++this.period);
+            for (int i = 0; i < this.sources.length; i++) this.fill(i);
+        }
+    }
+
+    /**
+     * Get the next row
+     *
+     * @return row
+     * @throws UncheckedIOException a day file could not be read
+     */
+    @Override
+    public WideRow next() {
+        if (!this.hasNext()) throw new NoSuchElementException();
+        int first = -1;
+        for (int i = 0; i < this.pending.length; i++) {
+            if (this.pending[i] && (first < 0 || this.times[i] < this.times[first])) first = i;
+        }
+        long time = this.times[first];
+        double[] row = new double[DataType.values().length];
+        Arrays.fill(row, Double.NaN);
+        for (int i = 0; i < this.pending.length; i++) {
+            if (!this.pending[i] || this.times[i] - time > this.toleranceSeconds) continue;
+            row[i] = this.values[i];
+            this.fill(i);
+        }
+        return new WideRow(Instant.ofEpochSecond(time), row);
+    }
+
+    /**
+     * Read the next value of a data type
+     *
+     * @param i data type ordinal
+     */
+    private void fill(int i) {
+        ArchiveValueIterator source = this.sources[i];
+        this.pending[i] = source != null && source.advance();
+        if (!this.pending[i]) return;
+        this.times[i] = source.getEpochSecond();
+        this.values[i] = source.getValue();
+    }
+
+    /**
+     * Release the open day files, no further rows will be returned
+     */
+    @Override
+    public void close() {
+        for (ArchiveValueIterator[] sources : this.periods) close(sources);
+        this.period = this.periods.size();
+        Arrays.fill(this.pending, false);
+    }
+
+    /**
+     * Close the scans of a time period
+     *
+     * @param sources scans, {@code null} for types not queried
+     */
+    private static void close(ArchiveValueIterator[] sources) {
+        for (ArchiveValueIterator source : sources) {
+            if (source != null) source.close();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Changes between two commits and the rows appended to day files
+ */
+class ArchiveDiffTest {
+    private static final LocalDate DAY = LocalDate.of(2022, 6, 1);
+    private static final String HEADER = "2022-06-01 00:00:00,1.0\n\n2022-06-01 00:10:00,not a number\n";
+
+    @TempDir
+    File dir;
+    private ArchiveFixture remote;
+    private String first;
+
+    @BeforeEach
+    void buildRemote() throws Exception {
+        this.remote = new ArchiveFixture(new File(this.dir, "remote"));
+        this.remote.writeLatest(Instant.parse("2022-06-01T12:00:00Z"));
+        // the second old row would not decode: decoding must start after the old content
+        this.remote.write(ArchiveFixture.dayPath(DAY, DataType.TEMPERATURE), HEADER);
+        this.remote.write(ArchiveFixture.dayPath(DAY, DataType.HUMIDITY), "2022-06-01 00:00:00,50.0\n2022-06-01 00:10:00,51.0\n");
+        this.remote.write(ArchiveFixture.dayPath(DAY, DataType.PRESSURE), "2022-06-01 00:00:00,1000.0\n");
+        this.remote.write(ArchiveFixture.dayPath(DAY, DataType.PM10), "2022-06-01 00:00:00,10.0\n2022-06-01 00:10:0");
+        this.first = this.remote.commit("first");
+    }
+
+    /**
+     * Diff the first commit with a second one, in the working clone of the fixture
+     */
+    private List<ArchiveFileChange> diff(String second) throws Exception {
+        try (Git git = Git.open(this.remote.file("."))) {
+            return ArchiveDiff.between(git.getRepository(), ObjectId.fromString(this.first), ObjectId.fromString(second),
+                    this.remote.file("."), null);
+        }
+    }
+
+    @Test
+    void appendedRowsAreDecodedFromTheOldLength() throws Exception {
+        this.remote.write(ArchiveFixture.dayPath(DAY, DataType.TEMPERATURE), HEADER + "2022-06-01 00:20:00,3.5\n\n2022-06-01 00:30:00,4.5\r\n");
+        List<ArchiveFileChange> changes = this.diff(this.remote.commit("append"));
+        assertEquals(1, changes.size());
+        ArchiveFileChange c = changes.get(0);
+        assertEquals(DiffEntry.ChangeType.MODIFY, c.getChangeType());
+        assertEquals(HEADER.length(), c.getPreviousSize());
+        assertTrue(c.isAppendOnly());
+        Page page = c.getAppendedValues();
+        assertEquals(2, page.size());
+        assertEquals(3.5, page.getValue(0));
+        assertEquals(4.5, page.getValue(1));
+        // two old rows, the blank line is not a row
+        assertEquals(2, page.getFileLine(0));
+        assertEquals(3, page.getFileLine(1));
+        assertEquals(LocalDateTime.parse("2022-06-01T00:20").atZone(Station.ARCHIVE_ZONE).toEpochSecond(), page.getEpochSecond(0));
+    }
+
+    @Test
+    void addedFilesAreDecodedWhole() throws Exception {
+        LocalDate next = DAY.plusDays(1);
+        this.remote.writeDay(next, DataType.TEMPERATURE, 7, 8);
+        List<ArchiveFileChange> changes = this.diff(this.remote.commit("add"));
+        assertEquals(1, changes.size());
+        ArchiveFileChange c = changes.get(0);
+        assertEquals(DiffEntry.ChangeType.ADD, c.getChangeType());
+        assertEquals(-1, c.getPreviousSize());
+        assertEquals(next, c.getDate());
+        assertEquals(2, c.getAppendedValues().size());
+        assertEquals(0, c.getAppendedValues().getFileLine(0));
+        assertEquals(8.0, c.getAppendedValues().getValue(1));
+    }
+
+    @Test
+    void rewrittenTruncatedAndDeletedFilesHaveNoAppendedRows() throws Exception {
+        // same length, different old content
+        this.remote.write(ArchiveFixture.dayPath(DAY, DataType.HUMIDITY), "2022-06-01 00:00:00,52.0\n2022-06-01 00:10:00,51.0\n2022-06-01 00:20:00,53.0\n");
+        this.remote.write(ArchiveFixture.dayPath(DAY, DataType.TEMPERATURE), "2022-06-01 00:00:00,1.0\n");
+        // the old last line was not complete
+        this.remote.write(ArchiveFixture.dayPath(DAY, DataType.PM10), "2022-06-01 00:00:00,10.0\n2022-06-01 00:10:00,11.0\n");
+        assertTrue(this.remote.file(ArchiveFixture.dayPath(DAY, DataType.PRESSURE)).delete());
+        List<ArchiveFileChange> changes = this.diff(this.remote.commit("rewrite"));
+        assertEquals(4, changes.size());
+        for (ArchiveFileChange c : changes) {
+            assertNull(c.getAppendedValues(), c.getDataType().toString());
+            assertFalse(c.isAppendOnly(), c.getDataType().toString());
+        }
+        ArchiveFileChange deleted = changes.stream().filter(c -> c.getDataType() == DataType.PRESSURE).findFirst().orElseThrow();
+        assertEquals(DiffEntry.ChangeType.DELETE, deleted.getChangeType());
+        assertEquals(-1, deleted.getSize());
+        ArchiveFileChange truncated = changes.stream().filter(c -> c.getDataType() == DataType.TEMPERATURE).findFirst().orElseThrow();
+        assertTrue(truncated.getSize() < truncated.getPreviousSize());
+    }
+}
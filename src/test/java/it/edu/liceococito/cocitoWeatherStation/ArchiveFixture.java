@@ -0,0 +1,175 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.transport.URIish;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Remote station archive for tests: a bare repository reached through a {@code file://} uri,
+ * filled from a working clone of it
+ */
+class ArchiveFixture implements AutoCloseable {
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private final File remote;
+    private final Git work;
+
+    /**
+     * Build an empty remote archive
+     *
+     * @param dir directory holding the bare repository and the working clone
+     * @throws GitAPIException    Git error
+     * @throws URISyntaxException bad directory name
+     */
+    ArchiveFixture(File dir) throws GitAPIException, URISyntaxException {
+        this.remote = new File(dir, "remote.git");
+        Git.init().setBare(true).setInitialBranch("main").setDirectory(this.remote).call().close();
+        this.work = Git.init().setInitialBranch("main").setDirectory(new File(dir, "work")).call();
+        this.work.remoteAdd().setName("origin").setUri(new URIish(this.getUri())).call();
+    }
+
+    /**
+     * Get the uri stations clone from
+     *
+     * @return {@code file://} uri of the bare repository
+     */
+    String getUri() {
+        return "file://" + this.remote.getAbsolutePath();
+    }
+
+    /**
+     * Write a day file with a row every ten minutes from local midnight
+     *
+     * @param day    the day
+     * @param dt     data type
+     * @param values row values
+     * @throws IOException Input/output error
+     */
+    void writeDay(LocalDate day, DataType dt, double... values) throws IOException {
+        StringBuilder csv = new StringBuilder();
+        LocalDateTime t = day.atStartOfDay();
+        for (double v : values) {
+            csv.append(TIMESTAMP.format(t)).append(',').append(v).append('\n');
+            t = t.plusMinutes(10);
+        }
+        this.write(dayPath(day, dt), csv.toString());
+    }
+
+    /**
+     * Append a row to a day file
+     *
+     * @param day   the day
+     * @param dt    data type
+     * @param time  local time of the row
+     * @param value row value
+     * @throws IOException Input/output error
+     */
+    void appendRow(LocalDate day, DataType dt, LocalDateTime time, double value) throws IOException {
+        Files.writeString(this.file(dayPath(day, dt)).toPath(), TIMESTAMP.format(time) + ',' + value + '\n',
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Write {@code last.json} and {@code report.txt} for a measurement batch
+     *
+     * @param latest instant of the batch
+     * @throws IOException Input/output error
+     */
+    void writeLatest(Instant latest) throws IOException {
+        this.write("last.json", "{\"utciso\":\"" + latest + "\",\"T\":20.5,\"H\":50,\"P\":1000,\"PM10\":10,\"PM25\":5,\"S\":1}");
+        this.write("report.txt", "report " + latest);
+    }
+
+    /**
+     * Write a file of the working clone
+     *
+     * @param path    slash separated path
+     * @param content file content
+     * @throws IOException Input/output error
+     */
+    void write(String path, String content) throws IOException {
+        File f = this.file(path);
+        Files.createDirectories(f.getParentFile().toPath());
+        Files.writeString(f.toPath(), content, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get a file of the working clone
+     *
+     * @param path slash separated path
+     * @return file
+     */
+    File file(String path) {
+        return new File(this.work.getRepository().getWorkTree(), path);
+    }
+
+    /**
+     * Commit every change of the working clone and push it to the remote
+     *
+     * @param message commit message
+     * @return the commit id
+     * @throws GitAPIException Git error
+     */
+    String commit(String message) throws GitAPIException {
+        this.work.add().addFilepattern(".").call();
+        this.work.add().addFilepattern(".").setUpdate(true).call();
+        String id = this.work.commit().setMessage(message).setAuthor("fixture", "fixture@localhost")
+                .setCommitter("fixture", "fixture@localhost").call().name();
+        this.work.push().setRemote("origin").add("main").call();
+        return id;
+    }
+
+    /**
+     * Path of a day file
+     *
+     * @param day the day
+     * @param dt  data type
+     * @return slash separated path
+     */
+    static String dayPath(LocalDate day, DataType dt) {
+        return day.toString().replace('-', '/') + '/' + dt.getCsvName() + ".csv";
+    }
+
+    /**
+     * Close the working clone
+     */
+    @Override
+    public void close() {
+        this.work.close();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Byte csv decoding against the {@code java.time} and {@code Double} parsers it replaces
+ */
+class CsvRowDecoderTest {
+    private static final ZoneId ZONE = ZoneId.of("Europe/Rome");
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * Decode one row
+     */
+    private static CsvRowDecoder decode(CsvRowDecoder decoder, String row) {
+        ByteBuffer buf = ByteBuffer.wrap(row.getBytes(StandardCharsets.UTF_8));
+        assertTrue(decoder.decode(buf, 0, buf.limit()), row);
+        return decoder;
+    }
+
+    /**
+     * Parse a value with the fast parser
+     */
+    private static double decodeDouble(String s) {
+        ByteBuffer buf = ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+        return CsvRowDecoder.decodeDouble(buf, 0, buf.limit());
+    }
+
+    /**
+     * Epoch seconds of a timestamp as the text parser computes them
+     */
+    private static long expected(String timestamp) {
+        return LocalDateTime.parse(timestamp, FORMATTER).atZone(ZONE).toEpochSecond();
+    }
+
+    @Test
+    void timestampsMatchJavaTimeAcrossTransitionDays() {
+        // spring forward skips 02:00-03:00, fall back repeats it; neighbours check the cached day offsets
+        for (LocalDate day : List.of(LocalDate.of(2022, 3, 26), LocalDate.of(2022, 3, 27), LocalDate.of(2022, 3, 28),
+                LocalDate.of(2022, 10, 29), LocalDate.of(2022, 10, 30), LocalDate.of(2022, 10, 31),
+                LocalDate.of(2021, 3, 28), LocalDate.of(2021, 10, 31))) {
+            CsvRowDecoder decoder = new CsvRowDecoder();
+            for (LocalDateTime t = day.atStartOfDay(); t.isBefore(day.plusDays(1).atStartOfDay()); t = t.plusSeconds(37)) {
+                String timestamp = FORMATTER.format(t);
+                assertEquals(expected(timestamp), decode(decoder, timestamp + ",1").getEpochSecond(), timestamp);
+            }
+        }
+    }
+
+    @Test
+    void repeatedHourKeepsTheSummerOffset() {
+        CsvRowDecoder decoder = new CsvRowDecoder();
+        long first = decode(decoder, "2022-10-30 02:30:00,1").getEpochSecond();
+        long after = decode(decoder, "2022-10-30 03:00:00,1").getEpochSecond();
+        assertEquals(expected("2022-10-30 02:30:00"), first);
+        assertEquals(first + 2 * 3600 - 30 * 60, after); // 02:30 CEST, then the repeated hour, then 03:00 CET
+        assertEquals(expected("2022-03-27 02:30:00"), decode(decoder, "2022-03-27 02:30:00,1").getEpochSecond());
+    }
+
+    @Test
+    void timestampsOutsideTheFastPathUseJavaTime() {
+        CsvRowDecoder decoder = new CsvRowDecoder();
+        assertEquals(expected("2022-02-28 10:00:00"), decode(decoder, "2022-02-30 10:00:00,1").getEpochSecond());
+        assertEquals(expected("2022-04-30 23:59:59"), decode(decoder, "2022-04-31 23:59:59,1").getEpochSecond());
+        assertEquals(expected("2022-05-10 24:00:00"), decode(decoder, "2022-05-10 24:00:00,1").getEpochSecond());
+        assertThrows(DateTimeParseException.class, () -> decode(new CsvRowDecoder(), "2022-05-10 10:60:00,1"));
+        assertThrows(DateTimeParseException.class, () -> decode(new CsvRowDecoder(), "2022-5-10 10:00:00,1"));
+        assertThrows(DateTimeParseException.class, () -> decode(new CsvRowDecoder(), "2022-13-01 10:00:00,1"));
+    }
+
+    @Test
+    void rowsWithoutValueAreSkipped() {
+        CsvRowDecoder decoder = new CsvRowDecoder();
+        for (String row : List.of("", "\r", "2022-05-10 10:00:00", "2022-05-10 10:00:00,", "2022-05-10 10:00:00,,\r")) {
+            ByteBuffer buf = ByteBuffer.wrap(row.getBytes(StandardCharsets.UTF_8));
+            assertFalse(decoder.decode(buf, 0, buf.limit()), row);
+            assertFalse(CsvRowDecoder.isRow(buf, 0, buf.limit()), row);
+        }
+        assertEquals(21.5, decode(decoder, "2022-05-10 10:00:00,21.5,extra\r").getValue());
+    }
+
+    @Test
+    void valuesMatchParseDouble() {
+        for (String s : List.of("0", "-0", "-0.0", "+3", "12", "-7", "21.5", "-12.25", "0.1", "-0.001", "1013.",
+                ".5", "-.5", " 4.2 ", "123456789012345678", "1234567890.12345678", "9007199254740993",
+                "0.30000000000000004", "3.141592653589793238", "1234567890123456789012", "1e3", "-2.5E-3",
+                "1E308", "NaN", "-Infinity", "0x1p3")) {
+            assertEquals(Double.parseDouble(s), decodeDouble(s), s);
+        }
+        Random random = new Random(11);
+        for (int n = 0; n < 200_000; n++) {
+            StringBuilder s = new StringBuilder();
+            if (random.nextBoolean()) s.append('-');
+            int whole = random.nextInt(12), fraction = random.nextInt(12);
+            for (int i = 0; i < whole; i++) s.append((char) ('0' + random.nextInt(10)));
+            if (fraction > 0 || whole == 0) s.append('.');
+            for (int i = 0; i < fraction || s.charAt(s.length() - 1) == '.' && i == 0; i++) s.append((char) ('0' + random.nextInt(10)));
+            assertEquals(Double.parseDouble(s.toString()), decodeDouble(s.toString()), s.toString());
+        }
+    }
+
+    @Test
+    void malformedValuesFailLikeParseDouble() {
+        for (String s : List.of("", "-", ".", "1.2.3", "12a", "--1", "1 2")) {
+            assertThrows(NumberFormatException.class, () -> Double.parseDouble(s), s);
+            assertThrows(NumberFormatException.class, () -> decodeDouble(s), s);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Histogram bins, CDF and quantiles against bins counted by brute force in decimal arithmetic
+ */
+class HistogramTest {
+
+    /**
+     * Bins counted from the decimal values as written in the csv files, the last one also holding the range end
+     */
+    private static final class BruteForce {
+        final long[] bins;
+        long underflow;
+        long overflow;
+        final double[] sorted;
+
+        BruteForce(String[] values, BigDecimal min, BigDecimal max, BigDecimal width) {
+            int n = max.subtract(min).divide(width, 0, RoundingMode.CEILING).intValueExact();
+            this.bins = new long[n];
+            this.sorted = new double[values.length];
+            for (int i = 0; i < values.length; i++) {
+                BigDecimal v = new BigDecimal(values[i]);
+                this.sorted[i] = Double.parseDouble(values[i]);
+                if (v.compareTo(min) < 0) this.underflow++;
+                else if (v.compareTo(max) > 0) this.overflow++;
+                else this.bins[Math.min(v.subtract(min).divide(width, 0, RoundingMode.FLOOR).intValueExact(), n - 1)]++;
+            }
+            Arrays.sort(this.sorted);
+        }
+
+        long count() {
+            return this.sorted.length;
+        }
+
+        /**
+         * Values below a bin start
+         */
+        long below(int bin) {
+            long below = this.underflow;
+            for (int i = 0; i < bin; i++) below += this.bins[i];
+            return below;
+        }
+    }
+
+    private static String[] decimals(Random random, int n, int fromTenths, int toTenths) {
+        String[] values = new String[n];
+        for (int i = 0; i < n; i++) {
+            int tenths = fromTenths + random.nextInt(toTenths - fromTenths + 1);
+            values[i] = BigDecimal.valueOf(tenths, 1).toPlainString();
+        }
+        return values;
+    }
+
+    private static Histogram histogram(Histogram h, String[] values) {
+        for (String v : values) h.add(Double.parseDouble(v));
+        return h;
+    }
+
+    @Test
+    void binsMatchBruteForce() {
+        Random random = new Random(3);
+        String[] values = decimals(random, 200_000, -700, 700);
+        Histogram h = histogram(new Histogram(DataType.TEMPERATURE), values);
+        BruteForce expected = new BruteForce(values, BigDecimal.valueOf(-50), BigDecimal.valueOf(60), new BigDecimal("0.1"));
+        assertArrayEquals(expected.bins, h.getBins());
+        assertEquals(expected.underflow, h.getUnderflow());
+        assertEquals(expected.overflow, h.getOverflow());
+        assertEquals(values.length, h.getCount());
+
+        String[] narrowLast = decimals(random, 10_000, -10, 110);
+        Histogram odd = histogram(new Histogram(0, 10, 3), narrowLast);
+        BruteForce oddExpected = new BruteForce(narrowLast, BigDecimal.ZERO, BigDecimal.TEN, BigDecimal.valueOf(3));
+        assertEquals(4, odd.getBinCount());
+        assertEquals(10, odd.getBinStart(4));
+        assertArrayEquals(oddExpected.bins, odd.getBins());
+        assertEquals(oddExpected.underflow, odd.getUnderflow());
+        assertEquals(oddExpected.overflow, odd.getOverflow());
+    }
+
+    @Test
+    void cdfMatchesBruteForce() {
+        Random random = new Random(5);
+        String[] values = decimals(random, 50_000, -600, 650);
+        Histogram h = histogram(new Histogram(-50, 60, 0.5), values);
+        BruteForce expected = new BruteForce(values, BigDecimal.valueOf(-50), BigDecimal.valueOf(60), new BigDecimal("0.5"));
+        double n = expected.count();
+        assertEquals(0, h.getCdf(-50.01));
+        assertEquals((n - expected.overflow) / n, h.getCdf(60), 1e-12);
+        assertEquals((n - expected.overflow) / n, h.getCdf(1e9), 1e-12);
+        for (int bin = 0; bin < h.getBinCount(); bin++) {
+            double start = -50 + bin * 0.5;
+            // at a bin start no value of the bin is counted, a quarter of them at a quarter of the bin
+            assertEquals(expected.below(bin) / n, h.getCdf(start), 1e-12, "start of bin " + bin);
+            assertEquals((expected.below(bin) + expected.bins[bin] / 4.0) / n, h.getCdf(start + 0.125), 1e-12);
+        }
+        for (int i = 0; i < 5000; i++) {
+            double x = -60 + 130 * random.nextDouble();
+            double exact = upperBound(expected.sorted, x) / n;
+            int bin = (int) Math.floor((x + 50) / 0.5);
+            // out of range values are only counted, so their share is the error outside the range
+            double binShare = bin < 0 ? expected.underflow / n
+                    : bin < expected.bins.length ? expected.bins[bin] / n : expected.overflow / n;
+            assertTrue(Math.abs(h.getCdf(x) - exact) <= binShare + 1e-12, "cdf at " + x);
+        }
+        assertTrue(Double.isNaN(new Histogram(0, 1, 0.1).getCdf(0.5)));
+    }
+
+    @Test
+    void quantilesMatchBruteForce() {
+        Random random = new Random(9);
+        String[] values = decimals(random, 50_000, -550, 640);
+        Histogram h = histogram(new Histogram(-50, 60, 0.5), values);
+        BruteForce expected = new BruteForce(values, BigDecimal.valueOf(-50), BigDecimal.valueOf(60), new BigDecimal("0.5"));
+        double n = expected.count();
+        for (int p = 0; p <= 1000; p++) {
+            double q = p / 1000.0;
+            double target = q * n;
+            double value = h.getQuantile(q);
+            if (target <= expected.underflow) {
+                assertEquals(-50, value, "q=" + q);
+                continue;
+            }
+            if (target > n - expected.overflow) {
+                assertEquals(60, value, "q=" + q);
+                continue;
+            }
+            int bin = 0;
+            while (expected.below(bin + 1) < target) bin++;
+            double start = -50 + bin * 0.5;
+            assertEquals(start + 0.5 * (target - expected.below(bin)) / expected.bins[bin], value, 1e-9, "q=" + q);
+            // the exact quantile is in the same bin
+            double exact = expected.sorted[(int) Math.ceil(target) - 1];
+            assertTrue(exact >= start - 1e-9 && exact <= start + 0.5 + 1e-9, "q=" + q + " exact " + exact);
+            assertEquals(q, h.getCdf(value), 1e-9, "q=" + q);
+        }
+        assertEquals(h.getQuantile(0.95), h.getPercentile(95));
+        assertTrue(Double.isNaN(new Histogram(0, 1, 0.1).getQuantile(0.5)));
+        assertThrows(IllegalArgumentException.class, () -> h.getQuantile(1.5));
+    }
+
+    @Test
+    void mergedAndReadHistogramsKeepTheCounts() {
+        Random random = new Random(17);
+        String[] values = decimals(random, 20_000, -700, 700);
+        Histogram whole = histogram(new Histogram(DataType.TEMPERATURE), values);
+        Histogram merged = histogram(new Histogram(DataType.TEMPERATURE), Arrays.copyOfRange(values, 0, 7000));
+        merged.merge(histogram(new Histogram(DataType.TEMPERATURE), Arrays.copyOfRange(values, 7000, values.length)));
+        assertArrayEquals(whole.getBins(), merged.getBins());
+        assertEquals(whole.getUnderflow(), merged.getUnderflow());
+        assertEquals(whole.getOverflow(), merged.getOverflow());
+        Histogram read = Histogram.fromByteArray(whole.toByteArray());
+        assertArrayEquals(whole.getBins(), read.getBins());
+        assertEquals(whole.getModeBin(), read.getModeBin());
+        assertEquals(whole.getQuantile(0.3), read.getQuantile(0.3));
+        assertThrows(IllegalArgumentException.class, () -> whole.merge(new Histogram(DataType.HUMIDITY)));
+    }
+
+    private static int upperBound(double[] sorted, double v) {
+        int lo = 0, hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] <= v) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Page list operations against an {@code ArrayList} of the same values
+ */
+class PageTest {
+    private static final File[] FILES = {new File("a.csv"), new File("b.csv"), null};
+
+    /**
+     * Build a random value
+     */
+    private static Value value(Random random) {
+        return new Value(Instant.ofEpochSecond(random.nextInt(1_000_000)), FILES[random.nextInt(FILES.length)],
+                random.nextInt(100), random.nextInt(1000) / 10.0, DataType.values()[random.nextInt(2)]);
+    }
+
+    /**
+     * Check that a page holds the same values as a list
+     */
+    private static void assertSameValues(List<Value> expected, Page page) {
+        assertEquals(expected.size(), page.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Value e = expected.get(i), a = page.get(i);
+            assertEquals(e.getCreated(), a.getCreated());
+            assertEquals(e.getValue(), a.getValue());
+            assertEquals(e.getFileLine(), a.getFileLine());
+            assertEquals(e.getFile(), page.getFile(i));
+            assertEquals(e.getType(), page.getType(i));
+        }
+    }
+
+    @Test
+    void mutatorsMatchArrayList() {
+        Random random = new Random(42);
+        Page page = new Page();
+        ArrayList<Value> expected = new ArrayList<>();
+        for (int step = 0; step < 5000; step++) {
+            int op = random.nextInt(5);
+            if (op <= 1 || expected.isEmpty()) {
+                Value v = value(random);
+                if (op == 0) {
+                    page.add(v);
+                    expected.add(v);
+                } else {
+                    int i = random.nextInt(expected.size() + 1);
+                    page.add(i, v);
+                    expected.add(i, v);
+                }
+            } else if (op == 2) {
+                int i = random.nextInt(expected.size());
+                Value v = value(random);
+                assertEquals(expected.set(i, v).getValue(), page.set(i, v).getValue());
+            } else if (op == 3) {
+                int i = random.nextInt(expected.size());
+                assertEquals(expected.remove(i).getCreated(), page.remove(i).getCreated());
+            } else {
+                int from = random.nextInt(expected.size()), to = from + random.nextInt(expected.size() - from + 1);
+                page.subList(from, to).clear();
+                expected.subList(from, to).clear();
+            }
+            assertSameValues(expected, page);
+        }
+    }
+
+    @Test
+    void sortsAndClears() {
+        Random random = new Random(7);
+        Page page = new Page();
+        ArrayList<Value> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Value v = value(random);
+            page.add(v);
+            expected.add(v);
+        }
+        Comparator<Value> byTime = Comparator.comparing(Value::getCreated);
+        page.sort(byTime);
+        expected.sort(byTime);
+        assertSameValues(expected, page);
+        page.removeIf(v -> v.getValue() > 50);
+        expected.removeIf(v -> v.getValue() > 50);
+        assertSameValues(expected, page);
+        page.clear();
+        assertEquals(0, page.size());
+        assertThrows(IndexOutOfBoundsException.class, () -> page.set(0, expected.get(0)));
+        assertThrows(IndexOutOfBoundsException.class, () -> page.add(1, expected.get(0)));
+    }
+
+    @Test
+    void survivesSerialization() throws Exception {
+        Random random = new Random(3);
+        Page page = new Page();
+        for (int i = 0; i < 100; i++) page.add(value(random));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(page);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertSameValues(page, (Page) in.readObject());
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Sketch quantiles against the exact quantiles of the sorted values
+ */
+class QuantileSketchTest {
+    private static final int N = 100_000;
+
+    /**
+     * Build the test distributions, each with its own seed
+     */
+    private static Map<String, double[]> distributions() {
+        Map<String, double[]> result = new LinkedHashMap<>();
+        result.put("uniform", values(new Random(1)::nextDouble));
+        Random gaussian = new Random(2);
+        result.put("gaussian", values(() -> 15 + 8 * gaussian.nextGaussian()));
+        Random exponential = new Random(3);
+        result.put("exponential", values(() -> -Math.log(1 - exponential.nextDouble())));
+        Random steps = new Random(4);
+        result.put("few distinct values", values(() -> steps.nextInt(10) / 2.0));
+        double[] ascending = values(new Random(5)::nextDouble);
+        Arrays.sort(ascending);
+        result.put("ascending", ascending);
+        return result;
+    }
+
+    private static double[] values(DoubleSupplier supplier) {
+        double[] values = new double[N];
+        for (int i = 0; i < N; i++) values[i] = supplier.getAsDouble();
+        return values;
+    }
+
+    private static QuantileSketch sketch(double[] values, int from, int to) {
+        QuantileSketch sketch = new QuantileSketch();
+        for (int i = from; i < to; i++) sketch.add(values[i]);
+        return sketch;
+    }
+
+    /**
+     * Check that the rank of every percentile of the sketch is within the normalized rank error of the requested one
+     */
+    private static void assertWithinRankError(String name, double[] values, QuantileSketch sketch) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        double error = sketch.getNormalizedRankError() * sorted.length;
+        assertEquals(sorted.length, sketch.getCount(), name);
+        assertEquals(sorted[0], sketch.getMin(), name);
+        assertEquals(sorted[sorted.length - 1], sketch.getMax(), name);
+        assertEquals(sorted[0], sketch.getQuantile(0), name);
+        assertEquals(sorted[sorted.length - 1], sketch.getQuantile(1), name);
+        for (int p = 1; p < 100; p++) {
+            double q = p / 100.0;
+            double v = sketch.getQuantile(q);
+            int below = lowerBound(sorted, v);
+            int upTo = upperBound(sorted, v);
+            double target = q * sorted.length;
+            assertTrue(upTo > below, name + " q=" + q + " returned " + v + ", which was never added");
+            assertTrue(target >= below - error && target <= upTo + error,
+                    name + " q=" + q + ": rank [" + below + ", " + upTo + "] of " + v + " is too far from " + target);
+        }
+    }
+
+    private static int lowerBound(double[] sorted, double v) {
+        int lo = 0, hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < v) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static int upperBound(double[] sorted, double v) {
+        int lo = 0, hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] <= v) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    @Test
+    void quantilesAreWithinTheRankError() {
+        for (Map.Entry<String, double[]> e : distributions().entrySet()) {
+            QuantileSketch sketch = sketch(e.getValue(), 0, N);
+            assertTrue(sketch.getRetained() < 3 * sketch.getK() + 100, e.getKey() + " keeps " + sketch.getRetained());
+            assertWithinRankError(e.getKey(), e.getValue(), sketch);
+        }
+    }
+
+    @Test
+    void mergedSketchesKeepTheRankError() {
+        int[] bounds = {0, 1, 250, 3_000, 3_001, 40_000, 71_234, N};
+        for (Map.Entry<String, double[]> e : distributions().entrySet()) {
+            QuantileSketch merged = new QuantileSketch();
+            merged.merge(new QuantileSketch());
+            for (int i = 0; i + 1 < bounds.length; i++) merged.merge(sketch(e.getValue(), bounds[i], bounds[i + 1]));
+            merged.merge(new QuantileSketch());
+            assertWithinRankError(e.getKey() + " merged", e.getValue(), merged);
+
+            QuantileSketch tree = sketch(e.getValue(), 0, N / 4);
+            QuantileSketch right = sketch(e.getValue(), N / 4, N / 2);
+            right.merge(sketch(e.getValue(), N / 2, N));
+            tree.merge(right);
+            assertWithinRankError(e.getKey() + " merged as a tree", e.getValue(), tree);
+        }
+    }
+
+    @Test
+    void readSketchContinuesLikeTheWrittenOne() {
+        double[] values = distributions().get("gaussian");
+        for (int written : new int[]{0, 1, 57, 20_000}) {
+            QuantileSketch sketch = sketch(values, 0, written);
+            ByteBuffer buf = ByteBuffer.allocate(16 + QuantileSketch.maxSerializedSize(sketch.getK()));
+            sketch.write(buf, 16);
+            QuantileSketch read = QuantileSketch.read(buf, 16);
+            assertNotNull(read);
+            assertSameSketch(sketch, read);
+            for (int i = written; i < N; i++) {
+                sketch.add(values[i]);
+                read.add(values[i]);
+            }
+            assertSameSketch(sketch, read);
+        }
+        assertNull(QuantileSketch.read(ByteBuffer.allocate(64), 0));
+    }
+
+    @Test
+    void largestSketchFitsItsSerializedSize() {
+        QuantileSketch sketch = new QuantileSketch(8);
+        for (int i = 0; i < 1_000_000; i++) sketch.add(i);
+        ByteBuffer buf = ByteBuffer.allocate(QuantileSketch.maxSerializedSize(8));
+        sketch.write(buf, 0);
+        assertSameSketch(sketch, QuantileSketch.read(buf, 0));
+    }
+
+    private static void assertSameSketch(QuantileSketch expected, QuantileSketch actual) {
+        assertEquals(expected.getK(), actual.getK());
+        assertEquals(expected.getCount(), actual.getCount());
+        assertEquals(expected.getRetained(), actual.getRetained());
+        assertEquals(expected.getMin(), actual.getMin());
+        assertEquals(expected.getMax(), actual.getMax());
+        for (int p = 0; p <= 1000; p++) assertEquals(expected.getQuantile(p / 1000.0), actual.getQuantile(p / 1000.0));
+    }
+
+    @Test
+    void emptySketchHasNoQuantiles() {
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.add(Double.NaN);
+        assertEquals(0, sketch.getCount());
+        assertEquals(0, sketch.getRetained());
+        assertTrue(Double.isNaN(sketch.getMin()));
+        assertTrue(Double.isNaN(sketch.getMax()));
+        assertTrue(Double.isNaN(sketch.getMedian()));
+        assertTrue(Double.isNaN(sketch.getQuantile(0)));
+        assertTrue(Double.isNaN(sketch.getQuantile(1)));
+    }
+
+    @Test
+    void oneValueIsEveryQuantile() {
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.add(-3.5);
+        sketch.add(Double.NaN);
+        assertEquals(1, sketch.getCount());
+        for (int p = 0; p <= 100; p++) assertEquals(-3.5, sketch.getQuantile(p / 100.0));
+        QuantileSketch merged = new QuantileSketch();
+        merged.merge(sketch);
+        assertEquals(-3.5, merged.getMin());
+        assertEquals(-3.5, merged.getMedian());
+    }
+
+    @Test
+    void invalidArgumentsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new QuantileSketch(7));
+        QuantileSketch sketch = new QuantileSketch();
+        assertThrows(IllegalArgumentException.class, () -> sketch.getQuantile(-0.01));
+        assertThrows(IllegalArgumentException.class, () -> sketch.getQuantile(1.01));
+        assertThrows(IllegalArgumentException.class, () -> sketch.getQuantile(Double.NaN));
+    }
+}
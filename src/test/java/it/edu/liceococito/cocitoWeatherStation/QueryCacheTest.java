@@ -0,0 +1,155 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Query result cache across archive updates
+ */
+class QueryCacheTest {
+    private static final LocalDate DAY = LocalDate.of(2022, 6, 1);
+    private static final LocalDate NEXT = DAY.plusDays(1);
+
+    @TempDir
+    File dir;
+    private ArchiveFixture remote;
+    private File archive;
+    private Station station;
+
+    @BeforeEach
+    void buildStation() throws Exception {
+        this.remote = new ArchiveFixture(new File(this.dir, "remote"));
+        this.remote.writeDay(DAY, DataType.TEMPERATURE, 1, 2, 3);
+        this.remote.writeDay(NEXT, DataType.TEMPERATURE, 4, 5);
+        this.remote.writeDay(NEXT, DataType.HUMIDITY, 50, 51);
+        this.remote.writeLatest(Instant.parse("2022-06-02T12:00:00Z"));
+        this.remote.commit("init");
+        this.archive = new File(this.dir, "station");
+        this.station = new Station(this.archive, true, this.remote.getUri());
+    }
+
+    /**
+     * Query of one data type over whole local days
+     */
+    private static ArchiveQuery query(DataType dt, LocalDate first, LocalDate last) {
+        ArchiveQuery aq = new ArchiveQuery();
+        aq.getAllowedDataTypes().add(dt);
+        aq.getTimePeriods().add(new TimePeriod(first.atStartOfDay(Station.ARCHIVE_ZONE).toInstant(),
+                last.plusDays(1).atStartOfDay(Station.ARCHIVE_ZONE).toInstant()));
+        aq.disablePagination();
+        return aq;
+    }
+
+    /**
+     * Run a query and check whether it was served from the cache
+     */
+    private long count(ArchiveQuery aq, boolean hit) throws Exception {
+        long hits = this.station.getQueryCacheStats().getHits();
+        long count = this.station.query(aq).getValueCount();
+        assertEquals(hits + (hit ? 1 : 0), this.station.getQueryCacheStats().getHits(), hit ? "expected a hit" : "expected a miss");
+        return count;
+    }
+
+    @Test
+    void pullKeepsUnaffectedEntriesAndDropsTouchedOnes() throws Exception {
+        ArchiveQuery first = query(DataType.TEMPERATURE, DAY, DAY);
+        ArchiveQuery next = query(DataType.TEMPERATURE, NEXT, NEXT);
+        ArchiveQuery humidity = query(DataType.HUMIDITY, DAY, NEXT);
+        assertEquals(3, this.count(first, false));
+        assertEquals(2, this.count(next, false));
+        assertEquals(2, this.count(humidity, false));
+        assertEquals(3, this.count(first, true));
+
+        this.remote.appendRow(NEXT, DataType.TEMPERATURE, NEXT.atTime(23, 0), 6);
+        this.remote.commit("more");
+        assertEquals(1, this.station.pullChanges().getChanges().size());
+
+        assertEquals(1, this.station.getQueryCacheStats().getInvalidations());
+        assertEquals(3, this.count(first, true)); // other day
+        assertEquals(2, this.count(humidity, true)); // other type
+        assertEquals(3, this.count(next, false)); // recomputed at the new HEAD
+        assertEquals(3, this.count(next, true));
+    }
+
+    @Test
+    void resultsOfAnotherHeadAreNeverServed() throws Exception {
+        ArchiveQuery first = query(DataType.TEMPERATURE, DAY, DAY);
+        assertEquals(3, this.count(first, false));
+        // HEAD moves without an update going through the station
+        File csv = new File(this.archive, ArchiveFixture.dayPath(DAY, DataType.TEMPERATURE));
+        Files.writeString(csv.toPath(), "2022-06-01 23:00:00,9.0\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        try (Git git = Git.open(this.archive)) {
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("local").setAuthor("a", "a@localhost").setCommitter("a", "a@localhost").call();
+        }
+        assertEquals(4, this.count(first, false));
+        assertEquals(4, this.count(first, true));
+    }
+
+    @Test
+    void updateOnlyMovesEntriesOfThePreviousHead() {
+        ObjectId a = ObjectId.fromString("1111111111111111111111111111111111111111");
+        ObjectId b = ObjectId.fromString("2222222222222222222222222222222222222222");
+        ObjectId c = ObjectId.fromString("3333333333333333333333333333333333333333");
+        QueryCache cache = new QueryCache(100);
+        cache.put("atA", a, entry(DataType.TEMPERATURE, DAY, DAY));
+        cache.put("atA-touched", a, entry(DataType.TEMPERATURE, DAY, NEXT));
+        cache.put("atC", c, entry(DataType.HUMIDITY, DAY, DAY));
+        cache.update(a, b, List.of(new InternalFileDescriptor(new File("x.csv"), DataType.TEMPERATURE, NEXT)));
+        assertNotNull(cache.get("atA", b));
+        assertNull(cache.get("atA", a));
+        assertNull(cache.get("atA-touched", b));
+        assertNull(cache.get("atC", b));
+        assertNotNull(cache.get("atC", c));
+        assertEquals(1, cache.getStats().getInvalidations());
+        assertEquals(2, cache.getStats().getWeight());
+    }
+
+    /**
+     * Cache entry holding one value
+     */
+    private static QueryCacheEntry entry(DataType dt, LocalDate first, LocalDate last) {
+        return new QueryCacheEntry(new ArchiveQueryResult(new PageList(), Instant.EPOCH), 1, EnumSet.of(dt), first, last);
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Cancelled, interrupted and late queries stop while planning and while reading files
+ */
+class QueryCancellationTest {
+    private static final LocalDate DAY = LocalDate.of(2022, 5, 10);
+    private static final int DAYS = 5;
+
+    @TempDir
+    File dir;
+    private Station station;
+    private final AtomicInteger filesRead = new AtomicInteger();
+
+    @BeforeEach
+    void buildStation() throws Exception {
+        try (ArchiveFixture remote = new ArchiveFixture(new File(this.dir, "remote"))) {
+            for (int d = 0; d < DAYS; d++) remote.writeDay(DAY.plusDays(d), DataType.TEMPERATURE, d, d + 0.5, d + 0.75);
+            remote.writeLatest(Instant.parse("2022-05-15T12:00:00Z"));
+            remote.commit("data");
+            this.station = new Station(new File(this.dir, "station"), true, remote.getUri());
+        }
+    }
+
+    @AfterEach
+    void clearInterrupt() {
+        Thread.interrupted();
+    }
+
+    /**
+     * Query of every day file, one period per day, counting the files read
+     */
+    private ArchiveQuery query(ArrayList<TimePeriod> periods) {
+        ArchiveQuery aq = new ArchiveQuery();
+        aq.getAllowedDataTypes().add(DataType.TEMPERATURE);
+        for (int d = 0; d < DAYS; d++) {
+            periods.add(new TimePeriod(DAY.plusDays(d).atStartOfDay(Station.ARCHIVE_ZONE).toInstant(),
+                    DAY.plusDays(d + 1).atStartOfDay(Station.ARCHIVE_ZONE).toInstant()));
+        }
+        aq.setTimePeriods(periods);
+        aq.disablePagination();
+        aq.setProgressListener((read, total, values) -> this.filesRead.set(read));
+        return aq;
+    }
+
+    private ArchiveQuery query() {
+        return this.query(new ArrayList<>());
+    }
+
+    /**
+     * Period list running an action when the planner reads its second period, and recording the last period read
+     */
+    private static ArrayList<TimePeriod> periodsRunning(Runnable action, AtomicInteger planned) {
+        return new ArrayList<>() {
+            @Override
+            public TimePeriod get(int index) {
+                planned.set(index);
+                if (index == 1) action.run();
+                return super.get(index);
+            }
+        };
+    }
+
+    /**
+     * Run a query on a deferred executor, so the test holds the future before the query starts
+     */
+    private static CompletableFuture<ArchiveQueryResult> runAsync(Station station, ArchiveQuery aq,
+                                                                  AtomicReference<CompletableFuture<ArchiveQueryResult>> future) {
+        List<Runnable> tasks = new ArrayList<>();
+        future.set(station.queryAsync(aq, tasks::add));
+        assertEquals(1, tasks.size());
+        tasks.get(0).run();
+        return future.get();
+    }
+
+    @Test
+    void passedDeadlineStopsPlanning() {
+        ArchiveQuery aq = this.query();
+        aq.setDeadline(Instant.now().minusSeconds(1));
+        InterruptedIOException e = assertThrows(InterruptedIOException.class, () -> this.station.query(aq));
+        assertEquals("Query deadline exceeded", e.getMessage());
+        assertEquals(0, this.filesRead.get());
+        UncheckedIOException streamed = assertThrows(UncheckedIOException.class, () -> this.station.stream(aq).close());
+        assertInstanceOf(InterruptedIOException.class, streamed.getCause());
+        assertEquals(0, this.filesRead.get());
+    }
+
+    @Test
+    void passedDeadlineStopsReading() throws Exception {
+        ArchiveQuery aq = this.query();
+        Instant deadline = Instant.now().plusSeconds(1);
+        aq.setDeadline(deadline);
+        aq.setProgressListener((read, total, values) -> {
+            this.filesRead.set(read);
+            while (!Instant.now().isAfter(deadline.plusMillis(10))) Thread.onSpinWait();
+        });
+        InterruptedIOException e = assertThrows(InterruptedIOException.class, () -> this.station.query(aq));
+        assertEquals("Query deadline exceeded", e.getMessage());
+        assertEquals(1, this.filesRead.get());
+    }
+
+    @Test
+    void interruptedThreadStopsPlanning() {
+        AtomicInteger planned = new AtomicInteger();
+        ArchiveQuery aq = this.query(periodsRunning(() -> Thread.currentThread().interrupt(), planned));
+        InterruptedIOException e = assertThrows(InterruptedIOException.class, () -> this.station.query(aq));
+        assertEquals("Query interrupted", e.getMessage());
+        assertEquals(1, planned.get());
+        assertEquals(0, this.filesRead.get());
+    }
+
+    @Test
+    void interruptedThreadStopsReading() {
+        ArchiveQuery aq = this.query();
+        aq.setProgressListener((read, total, values) -> {
+            this.filesRead.set(read);
+            Thread.currentThread().interrupt();
+        });
+        InterruptedIOException e = assertThrows(InterruptedIOException.class, () -> this.station.query(aq));
+        assertEquals("Query interrupted", e.getMessage());
+        assertEquals(1, this.filesRead.get());
+        Thread.interrupted();
+
+        // a stream reads the rest of the open file and stops before the next one
+        try (Stream<Value> values = this.station.stream(this.query())) {
+            Iterator<Value> it = values.iterator();
+            for (int i = 0; i < 3; i++) it.next();
+            Thread.currentThread().interrupt();
+            UncheckedIOException stopped = assertThrows(UncheckedIOException.class, it::hasNext);
+            assertInstanceOf(InterruptedIOException.class, stopped.getCause());
+        }
+    }
+
+    @Test
+    void cancelledFutureStopsPlanning() {
+        AtomicReference<CompletableFuture<ArchiveQueryResult>> future = new AtomicReference<>();
+        AtomicInteger planned = new AtomicInteger();
+        ArchiveQuery aq = this.query(periodsRunning(() -> future.get().cancel(true), planned));
+        CompletableFuture<ArchiveQueryResult> f = runAsync(this.station, aq, future);
+        assertTrue(f.isCancelled());
+        assertEquals(1, planned.get());
+        assertThrows(CancellationException.class, f::join);
+        assertEquals(0, this.filesRead.get());
+    }
+
+    @Test
+    void cancelledFutureStopsReading() throws Exception {
+        AtomicReference<CompletableFuture<ArchiveQueryResult>> future = new AtomicReference<>();
+        ArchiveQuery aq = this.query();
+        aq.setProgressListener((read, total, values) -> {
+            this.filesRead.set(read);
+            future.get().cancel(true);
+        });
+        CompletableFuture<ArchiveQueryResult> f = runAsync(this.station, aq, future);
+        assertTrue(f.isCancelled());
+        assertEquals(1, this.filesRead.get());
+
+        // the same query runs to the end when it is not cancelled
+        future.set(null);
+        aq.setProgressListener((read, total, values) -> this.filesRead.set(read));
+        ArchiveQueryResult result = this.station.queryAsync(aq, Runnable::run).get();
+        assertEquals(DAYS * 3, result.getValueCount());
+        assertEquals(DAYS, this.filesRead.get());
+    }
+
+    @Test
+    void queryWithinItsDeadlineCompletes() throws Exception {
+        ArchiveQuery aq = this.query();
+        aq.setDeadline(Instant.now().plus(Duration.ofMinutes(5)));
+        assertEquals(DAYS * 3, this.station.query(aq).getValueCount());
+        assertEquals(DAYS, this.filesRead.get());
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Paging through queries with cursors against the whole query result
+ */
+class QueryCursorTest {
+    private static final LocalDate DAY = LocalDate.of(2022, 3, 25);
+    private static final List<DataType> TYPES = List.of(DataType.HUMIDITY, DataType.TEMPERATURE);
+
+    @TempDir
+    File dir;
+    private ArchiveFixture remote;
+    private Station station;
+
+    @BeforeEach
+    void buildStation() throws Exception {
+        this.remote = new ArchiveFixture(new File(this.dir, "remote"));
+        for (int d = 0; d < 5; d++) {
+            for (DataType dt : TYPES) {
+                double[] values = new double[3 + (d + dt.ordinal()) % 4];
+                for (int i = 0; i < values.length; i++) values[i] = 1000 * dt.ordinal() + 10 * d + i;
+                this.remote.writeDay(DAY.plusDays(d), dt, values);
+            }
+        }
+        this.remote.writeLatest(Instant.parse("2022-03-30T12:00:00Z"));
+        this.remote.commit("data");
+        this.station = new Station(new File(this.dir, "station"), true, this.remote.getUri());
+    }
+
+    @AfterEach
+    void closeRemote() {
+        this.remote.close();
+    }
+
+    /**
+     * Query of both data types over whole days, a partial day and an earlier period, in this order
+     */
+    private static ArchiveQuery query(int pageSize) {
+        ArchiveQuery aq = new ArchiveQuery();
+        aq.getAllowedDataTypes().addAll(TYPES);
+        aq.getTimePeriods().add(local("2022-03-27T00:00", "2022-03-29T00:10"));
+        aq.getTimePeriods().add(local("2022-03-25T00:10", "2022-03-25T00:30"));
+        aq.getTimePeriods().add(local("2022-03-26T00:00", "2022-03-27T00:00"));
+        aq.setPageSize(pageSize);
+        return aq;
+    }
+
+    private static TimePeriod local(String start, String end) {
+        return new TimePeriod(LocalDateTime.parse(start).atZone(Station.ARCHIVE_ZONE).toInstant(),
+                LocalDateTime.parse(end).atZone(Station.ARCHIVE_ZONE).toInstant());
+    }
+
+    /**
+     * Rows of a page as type, time and value
+     */
+    private static List<String> rows(Page page) {
+        List<String> rows = new ArrayList<>();
+        for (int i = 0; i < page.size(); i++) rows.add(page.getType(i) + " " + page.get(i).getCreated() + " " + page.getValue(i));
+        return rows;
+    }
+
+    /**
+     * Read every page of a query, passing the cursor through its string form
+     */
+    private List<String> pageThrough(ArchiveQuery aq) throws Exception {
+        List<String> all = new ArrayList<>();
+        QueryCursor cursor = null;
+        for (int pages = 0; pages < 1000; pages++) {
+            ArchiveQueryResult result = this.station.query(aq, cursor);
+            Page page = result.getPageList().get(0);
+            List<String> rows = rows(page);
+            all.addAll(rows);
+            cursor = result.getNextCursor();
+            if (cursor == null) return all;
+            assertEquals(aq.getPageSize(), page.size(), "only the last page may be short");
+            cursor = QueryCursor.parse(cursor.toString());
+        }
+        throw new AssertionError("Paging did not end");
+    }
+
+    @Test
+    void pagesReturnEveryRowOnceAcrossFilesAndPeriods() throws Exception {
+        ArchiveQuery whole = query(0);
+        whole.disablePagination();
+        List<String> expected = rows(this.station.query(whole).getPageList().get(0));
+        assertEquals(expected.size(), new HashSet<>(expected).size());
+        assertTrue(expected.size() > 30);
+        for (int pageSize : new int[]{1, 2, 3, 4, 7, expected.size() - 1, expected.size(), expected.size() + 1}) {
+            assertEquals(expected, this.pageThrough(query(pageSize)), "page size " + pageSize);
+        }
+
+        // rows skipped by a predicate do not shift the pages
+        ArchiveQuery filtered = query(0);
+        filtered.disablePagination();
+        filtered.setValuePredicate(DataType.TEMPERATURE, ValuePredicate.between(20, 40));
+        expected = rows(this.station.query(filtered).getPageList().get(0));
+        for (int pageSize : new int[]{1, 3, 5}) {
+            ArchiveQuery aq = query(pageSize);
+            aq.setValuePredicate(DataType.TEMPERATURE, ValuePredicate.between(20, 40));
+            assertEquals(expected, this.pageThrough(aq), "filtered, page size " + pageSize);
+        }
+    }
+
+    @Test
+    void cursorOfAnotherQueryIsRejected() throws Exception {
+        QueryCursor cursor = this.station.query(query(3), null).getNextCursor();
+        assertNotNull(cursor);
+        ArchiveQuery other = query(3);
+        other.getTimePeriods().remove(2);
+        assertThrows(IllegalArgumentException.class, () -> this.station.query(other, cursor));
+        assertThrows(IllegalArgumentException.class, () -> this.station.query(query(4), cursor));
+        assertThrows(IllegalArgumentException.class, () -> QueryCursor.parse("not a cursor"));
+        assertThrows(IllegalArgumentException.class, () -> QueryCursor.parse(cursor.toString().substring(2)));
+    }
+
+    @Test
+    void cursorIsRejectedAfterAnUpdate() throws Exception {
+        ArchiveQuery aq = query(4);
+        ArchiveQueryResult first = this.station.query(aq, null);
+        QueryCursor cursor = first.getNextCursor();
+        assertNotNull(cursor);
+        String commit = cursor.getCommit().name();
+        ArchiveQuery pinned = query(4);
+        pinned.setRevision(commit);
+        QueryCursor pinnedCursor = this.station.query(pinned, null).getNextCursor();
+        List<String> pinnedRows = this.pageThrough(pinned);
+
+        this.remote.appendRow(DAY.plusDays(2), DataType.TEMPERATURE, LocalDateTime.of(2022, 3, 27, 23, 0), 99);
+        this.remote.commit("update");
+        this.station.pullChanges();
+        assertThrows(IllegalArgumentException.class, () -> this.station.query(aq, cursor));
+
+        // a query with a revision reads the commit it pins
+        List<String> rest = new ArrayList<>(rows(this.station.query(pinned, null).getPageList().get(0)));
+        QueryCursor next = pinnedCursor;
+        while (next != null) {
+            ArchiveQueryResult result = this.station.query(pinned, next);
+            rest.addAll(rows(result.getPageList().get(0)));
+            next = result.getNextCursor();
+        }
+        assertEquals(pinnedRows, rest);
+
+        // a new first page reads the update
+        List<String> updated = this.pageThrough(query(4));
+        assertEquals(pinnedRows.size() + 1, updated.size());
+        assertNull(this.station.query(query(updated.size()), null).getNextCursor());
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Resampled queries against buckets computed by brute force from the raw values
+ */
+class ResamplerTest {
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DataType TYPE = DataType.TEMPERATURE;
+
+    @TempDir
+    File dir;
+    private Station station;
+
+    @BeforeEach
+    void buildStation() throws Exception {
+        try (ArchiveFixture remote = new ArchiveFixture(new File(this.dir, "remote"))) {
+            for (LocalDate day : List.of(LocalDate.of(2022, 3, 26), LocalDate.of(2022, 3, 27), LocalDate.of(2022, 3, 28),
+                    LocalDate.of(2022, 10, 29), LocalDate.of(2022, 10, 30), LocalDate.of(2022, 10, 31))) {
+                writeDay(remote, day);
+            }
+            remote.writeLatest(Instant.parse("2022-10-31T12:00:00Z"));
+            remote.commit("data");
+            this.station = new Station(new File(this.dir, "station"), true, remote.getUri());
+        }
+    }
+
+    /**
+     * Write a row every ten minutes of real time, as the station logs them: the 23 hour day has no 02:xx rows
+     * and the 25 hour day has them twice
+     */
+    private static void writeDay(ArchiveFixture remote, LocalDate day) throws Exception {
+        StringBuilder csv = new StringBuilder();
+        Instant end = day.plusDays(1).atStartOfDay(Station.ARCHIVE_ZONE).toInstant();
+        int i = 0;
+        for (Instant t = day.atStartOfDay(Station.ARCHIVE_ZONE).toInstant(); t.isBefore(end); t = t.plusSeconds(600), i++) {
+            double v = Math.round((15 + 8 * Math.sin(i / 9.0 + day.getDayOfMonth()) + (i * 7 % 5)) * 100) / 100.0;
+            csv.append(TIMESTAMP.format(t.atZone(Station.ARCHIVE_ZONE))).append(',').append(v).append('\n');
+        }
+        remote.write(ArchiveFixture.dayPath(day, TYPE), csv.toString());
+    }
+
+    /**
+     * Period between two local times
+     */
+    private static TimePeriod local(String start, String end) {
+        return new TimePeriod(LocalDateTime.parse(start).atZone(Station.ARCHIVE_ZONE).toInstant(),
+                LocalDateTime.parse(end).atZone(Station.ARCHIVE_ZONE).toInstant());
+    }
+
+    /**
+     * Query without pagination
+     */
+    private static ArchiveQuery query(List<TimePeriod> periods) {
+        ArchiveQuery aq = new ArchiveQuery();
+        aq.getAllowedDataTypes().add(TYPE);
+        aq.getTimePeriods().addAll(periods);
+        aq.disablePagination();
+        return aq;
+    }
+
+    /**
+     * Raw values of one period
+     */
+    private List<Value> raw(TimePeriod period) {
+        return this.station.stream(query(List.of(period))).collect(Collectors.toList());
+    }
+
+    /**
+     * Bucket start of an instant
+     */
+    private static long bucketStart(long t, long bucket) {
+        if (bucket % 86_400 != 0) return Math.floorDiv(t, bucket) * bucket;
+        long days = bucket / 86_400;
+        LocalDate date = Instant.ofEpochSecond(t).atZone(Station.ARCHIVE_ZONE).toLocalDate();
+        return LocalDate.ofEpochDay(Math.floorDiv(date.toEpochDay(), days) * days).atStartOfDay(Station.ARCHIVE_ZONE).toEpochSecond();
+    }
+
+    /**
+     * Bucket end from its start
+     */
+    private static long bucketEnd(long start, long bucket) {
+        if (bucket % 86_400 != 0) return start + bucket;
+        return Instant.ofEpochSecond(start).atZone(Station.ARCHIVE_ZONE).toLocalDate().plusDays(bucket / 86_400)
+                .atStartOfDay(Station.ARCHIVE_ZONE).toEpochSecond();
+    }
+
+    /**
+     * Reduce the raw values of each period, one series per period.
+     * A value earlier than the current bucket, from the repeated hour, stays in the current bucket
+     */
+    private List<double[]> bruteForce(List<TimePeriod> periods, long bucket, ResampleFunction function) {
+        List<double[]> points = new ArrayList<>();
+        for (TimePeriod period : periods) {
+            Map<Long, List<Value>> buckets = new LinkedHashMap<>();
+            long start = Long.MIN_VALUE, end = Long.MIN_VALUE;
+            for (Value v : this.raw(period)) {
+                long t = v.getCreated().getEpochSecond();
+                if (t >= end) {
+                    start = bucketStart(t, bucket);
+                    end = bucketEnd(start, bucket);
+                }
+                buckets.computeIfAbsent(start, k -> new ArrayList<>()).add(v);
+            }
+            for (Map.Entry<Long, List<Value>> e : buckets.entrySet()) {
+                List<Value> values = e.getValue();
+                double[] all = values.stream().mapToDouble(Value::getValue).toArray();
+                switch (function) {
+                    case MEAN:
+                        points.add(new double[]{e.getKey(), Arrays.stream(all).sum() / all.length});
+                        break;
+                    case MIN:
+                        points.add(new double[]{e.getKey(), Arrays.stream(all).min().orElseThrow()});
+                        break;
+                    case MAX:
+                        points.add(new double[]{e.getKey(), Arrays.stream(all).max().orElseThrow()});
+                        break;
+                    case LAST:
+                        Value last = values.get(values.size() - 1);
+                        points.add(new double[]{last.getCreated().getEpochSecond(), last.getValue()});
+                        break;
+                    default:
+                        points.add(new double[]{e.getKey(), all.length});
+                }
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Check a resampled query against the brute force reduction
+     */
+    private void assertResampled(List<TimePeriod> periods, long bucket, ResampleFunction function) throws Exception {
+        ArchiveQuery aq = query(periods);
+        aq.setResampling(Duration.ofSeconds(bucket), function);
+        Page page = this.station.query(aq).getPageList().get(0);
+        List<double[]> expected = this.bruteForce(periods, bucket, function);
+        String what = function + " " + bucket;
+        assertEquals(expected.size(), page.size(), what);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals((long) expected.get(i)[0], page.getEpochSecond(i), what + " time " + i);
+            assertEquals(expected.get(i)[1], page.getValue(i), 1e-9, what + " value " + i);
+        }
+    }
+
+    @Test
+    void bucketsMatchBruteForceAcrossDstDays() throws Exception {
+        List<TimePeriod> spring = List.of(local("2022-03-26T00:00", "2022-03-29T00:00"));
+        List<TimePeriod> autumn = List.of(local("2022-10-29T00:00", "2022-11-01T00:00"));
+        for (ResampleFunction function : List.of(ResampleFunction.MEAN, ResampleFunction.MIN, ResampleFunction.MAX,
+                ResampleFunction.LAST, ResampleFunction.COUNT)) {
+            for (long bucket : new long[]{600, 3600, 10_800, 86_400, 172_800}) {
+                this.assertResampled(spring, bucket, function);
+                this.assertResampled(autumn, bucket, function);
+            }
+        }
+    }
+
+    @Test
+    void dailyBucketsFollowTheLengthOfTheDay() throws Exception {
+        ArchiveQuery aq = query(List.of(local("2022-03-26T00:00", "2022-03-29T00:00"), local("2022-10-29T00:00", "2022-11-01T00:00")));
+        aq.setResampling(Duration.ofDays(1), ResampleFunction.COUNT);
+        Page page = this.station.query(aq).getPageList().get(0);
+        double[] counts = page.getValues();
+        assertEquals(6, counts.length);
+        assertEquals(144, counts[0]);
+        assertEquals(138, counts[1]); // 23 hours
+        assertEquals(144, counts[2]);
+        assertEquals(144, counts[3]);
+        assertEquals(150, counts[4]); // 25 hours
+        assertEquals(144, counts[5]);
+    }
+
+    @Test
+    void consecutivePeriodsAreSeparateSeries() throws Exception {
+        // a two day bucket would join these periods if they were one series
+        List<TimePeriod> periods = List.of(local("2022-03-27T00:00", "2022-03-28T00:00"), local("2022-03-28T00:00", "2022-03-29T00:00"));
+        assertEquals(bucketStart(periods.get(0).getStart().getEpochSecond(), 172_800),
+                bucketStart(periods.get(1).getStart().getEpochSecond(), 172_800));
+        this.assertResampled(periods, 172_800, ResampleFunction.MEAN);
+        this.assertResampled(periods, 172_800, ResampleFunction.COUNT);
+    }
+
+    @Test
+    void lttbKeepsTheFirstAndLastPointOfEverySeries() throws Exception {
+        List<TimePeriod> periods = List.of(local("2022-03-26T00:00", "2022-03-26T06:00"), local("2022-03-27T18:00", "2022-03-28T00:00"),
+                local("2022-10-30T00:00", "2022-10-31T00:00"));
+        ArchiveQuery aq = query(periods);
+        aq.setResampling(Duration.ofHours(1), ResampleFunction.LTTB);
+        Page page = this.station.query(aq).getPageList().get(0);
+        int i = 0;
+        for (TimePeriod period : periods) {
+            List<Value> raw = this.raw(period);
+            Map<String, Value> byPoint = new LinkedHashMap<>();
+            for (Value v : raw) byPoint.put(v.getCreated().getEpochSecond() + "/" + v.getValue(), v);
+            long buckets = raw.stream().map(v -> bucketStart(v.getCreated().getEpochSecond(), 3600)).distinct().count();
+            int first = i;
+            assertEquals(raw.get(0).getCreated().getEpochSecond(), page.getEpochSecond(i));
+            assertEquals(raw.get(0).getValue(), page.getValue(i));
+            while (i < page.size() && (i == first || page.getEpochSecond(i) >= page.getEpochSecond(i - 1)) && i - first < buckets + 2) {
+                assertTrue(byPoint.containsKey(page.getEpochSecond(i) + "/" + page.getValue(i)), "point " + i + " is a raw value");
+                if (page.getEpochSecond(i) == raw.get(raw.size() - 1).getCreated().getEpochSecond()
+                        && page.getValue(i) == raw.get(raw.size() - 1).getValue()) break;
+                i++;
+            }
+            assertEquals(raw.get(raw.size() - 1).getCreated().getEpochSecond(), page.getEpochSecond(i), "last point of " + period.getStart());
+            assertEquals(raw.get(raw.size() - 1).getValue(), page.getValue(i));
+            assertTrue(i - first + 1 <= buckets + 2);
+            i++;
+        }
+        assertEquals(page.size(), i);
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Rollup statistics and buckets against the raw rows they aggregate
+ */
+class RollupStoreTest {
+    private static final DataType TYPE = DataType.TEMPERATURE;
+
+    @TempDir
+    File dir;
+    private File archive;
+    private Station station;
+
+    @BeforeEach
+    void buildStation() throws Exception {
+        try (ArchiveFixture remote = new ArchiveFixture(new File(this.dir, "remote"))) {
+            writeDays(remote, LocalDate.of(2022, 2, 26), LocalDate.of(2022, 4, 3));
+            writeDays(remote, LocalDate.of(2022, 10, 28), LocalDate.of(2022, 11, 2));
+            remote.writeLatest(Instant.parse("2022-11-01T12:00:00Z"));
+            remote.commit("data");
+            this.archive = new File(this.dir, "station");
+            this.station = new Station(this.archive, true, remote.getUri());
+        }
+    }
+
+    /**
+     * Write a day file every day in {@code [from, to)}, with values varying within the hour and across days
+     */
+    private static void writeDays(ArchiveFixture remote, LocalDate from, LocalDate to) throws Exception {
+        for (LocalDate day = from; day.isBefore(to); day = day.plusDays(1)) {
+            double[] values = new double[144];
+            for (int i = 0; i < values.length; i++) values[i] = Math.round((10 * Math.sin(i / 7.0 + day.getDayOfYear()) + i % 13) * 100) / 100.0;
+            remote.writeDay(day, TYPE, values);
+        }
+    }
+
+    /**
+     * Query of one period of local times
+     */
+    private static ArchiveQuery query(Instant start, Instant end) {
+        ArchiveQuery aq = new ArchiveQuery();
+        aq.getAllowedDataTypes().add(TYPE);
+        aq.getTimePeriods().add(new TimePeriod(start, end));
+        aq.disablePagination();
+        return aq;
+    }
+
+    /**
+     * Local time of the archive zone
+     */
+    private static Instant local(String time) {
+        return LocalDateTime.parse(time).atZone(Station.ARCHIVE_ZONE).toInstant();
+    }
+
+    /**
+     * Check rollup statistics against a scan of the raw rows
+     */
+    private void assertRollupMatchesScan(Instant start, Instant end) throws Exception {
+        ArchiveQuery aq = query(start, end);
+        StatisticalReportDataPamphlet scan = this.station.queryStatistics(aq).getReportPamphletFromType(TYPE);
+        StatisticalReportDataPamphlet rollup = this.station.queryRollupStatistics(aq).getReportPamphletFromType(TYPE);
+        String period = start + " " + end;
+        assertTrue(scan.getNumberElements() > 0, period);
+        assertEquals(scan.getNumberElements(), rollup.getNumberElements(), period);
+        assertEquals(scan.getMin(), rollup.getMin(), period);
+        assertEquals(scan.getMax(), rollup.getMax(), period);
+        assertEquals(scan.getMean(), rollup.getMean(), 1e-9, period);
+        assertEquals(scan.getStdev(), rollup.getStdev(), 1e-9, period);
+        List<Double> sorted = this.station.stream(aq).map(Value::getValue).sorted().collect(Collectors.toList());
+        double median = rollup.getMedian();
+        long below = sorted.stream().filter(v -> v < median).count(), notAbove = sorted.stream().filter(v -> v <= median).count();
+        double eps = rollup.getQuantileSketch().getNormalizedRankError() * sorted.size();
+        assertTrue(below <= sorted.size() / 2.0 + eps && notAbove >= sorted.size() / 2.0 - eps, period);
+    }
+
+    @Test
+    void statisticsMatchTheRawRows() throws Exception {
+        // a whole month plus partial days and hours at both ends
+        assertRollupMatchesScan(local("2022-02-27T13:17:05"), local("2022-04-01T08:43:00"));
+        // whole days only
+        assertRollupMatchesScan(local("2022-03-02T00:00"), local("2022-03-05T00:00"));
+        // partial hours around the skipped hour of the 23 hour day
+        assertRollupMatchesScan(local("2022-03-27T01:30"), local("2022-03-27T05:15"));
+        assertRollupMatchesScan(local("2022-03-27T00:00"), local("2022-03-28T00:00"));
+        // partial hours inside the repeated hour of the 25 hour day
+        assertRollupMatchesScan(Instant.parse("2022-10-30T00:35:00Z"), Instant.parse("2022-10-30T01:35:00Z"));
+        assertRollupMatchesScan(local("2022-10-29T22:05"), local("2022-10-31T01:55"));
+        // sub-second bounds
+        assertRollupMatchesScan(local("2022-03-10T10:00").plusMillis(1), local("2022-03-10T12:00").minusMillis(1));
+    }
+
+    @Test
+    void bucketsMatchTheRawRows() throws Exception {
+        Instant start = local("2022-02-27T13:17:05"), end = local("2022-04-01T08:43:00");
+        List<Value> rows = this.station.stream(query(Instant.parse("2022-02-01T00:00:00Z"), Instant.parse("2022-05-01T00:00:00Z")))
+                .collect(Collectors.toList());
+        for (RollupResolution resolution : RollupResolution.values()) {
+            List<RollupBucket> buckets = this.station.queryBuckets(query(start, end), resolution);
+            long total = 0;
+            Instant previous = Instant.MIN;
+            for (RollupBucket b : buckets) {
+                assertFalse(b.getStart().isBefore(previous), resolution + " order");
+                assertTrue(b.getStart().isBefore(end) && b.getEnd().isAfter(start), resolution + " overlap");
+                previous = b.getEnd();
+                List<Double> inside = rows.stream().filter(v -> !v.getCreated().isBefore(b.getStart()) && v.getCreated().isBefore(b.getEnd()))
+                        .map(Value::getValue).collect(Collectors.toList());
+                String bucket = resolution + " " + b.getStart();
+                assertEquals(inside.size(), b.getCount(), bucket);
+                assertEquals(inside.stream().mapToDouble(Double::doubleValue).sum(), b.getSum(), 1e-6, bucket);
+                assertEquals(inside.stream().mapToDouble(Double::doubleValue).min().orElseThrow(), b.getMin(), bucket);
+                assertEquals(inside.stream().mapToDouble(Double::doubleValue).max().orElseThrow(), b.getMax(), bucket);
+                total += b.getCount();
+            }
+            assertTrue(total > 0, resolution.toString());
+        }
+        List<RollupBucket> shortDay = this.station.queryBuckets(query(local("2022-03-27T00:00"), local("2022-03-28T00:00")), RollupResolution.HOURLY);
+        assertEquals(23, shortDay.size());
+        List<RollupBucket> longDay = this.station.queryBuckets(query(local("2022-10-30T00:00"), local("2022-10-31T00:00")), RollupResolution.HOURLY);
+        assertEquals(24, longDay.size()); // the repeated hour has no rows, the fixture writes every local time once
+    }
+
+    @Test
+    void changedCsvRefreshesTheStoredRollup() throws Exception {
+        LocalDate day = LocalDate.of(2022, 3, 15);
+        ArchiveQuery aq = query(local("2022-03-15T00:00"), local("2022-03-16T00:00"));
+        assertEquals(144, this.station.queryRollupStatistics(aq).getReportPamphletFromType(TYPE).getNumberElements());
+        File csv = new File(this.archive, ArchiveFixture.dayPath(day, TYPE));
+
+        // same size, later modification time
+        String content = Files.readString(csv.toPath(), StandardCharsets.UTF_8);
+        int comma = content.indexOf(',');
+        int end = content.indexOf('\n', comma);
+        String value = content.substring(comma + 1, end);
+        String replaced = "9".repeat(value.length());
+        Files.writeString(csv.toPath(), content.substring(0, comma + 1) + replaced + content.substring(end), StandardCharsets.UTF_8);
+        assertEquals(content.length(), Files.size(csv.toPath()));
+        assertTrue(csv.setLastModified(csv.lastModified() + 10_000));
+        Station reopened = new Station(this.archive);
+        assertEquals(Double.parseDouble(replaced), reopened.queryRollupStatistics(aq).getReportPamphletFromType(TYPE).getMax());
+
+        // larger file
+        Files.writeString(csv.toPath(), "2022-03-15 23:59:59,-40.0\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        reopened = new Station(this.archive);
+        StatisticalReportDataPamphlet stats = reopened.queryRollupStatistics(aq).getReportPamphletFromType(TYPE);
+        assertEquals(145, stats.getNumberElements());
+        assertEquals(-40.0, stats.getMin());
+        assertEquals(145, reopened.queryBuckets(aq, RollupResolution.DAILY).get(0).getCount());
+    }
+
+    /**
+     * Values of a query with a predicate on the archive data type
+     */
+    private List<Double> matching(Instant start, Instant end, ValuePredicate predicate) throws Exception {
+        ArchiveQuery aq = query(start, end);
+        aq.setValuePredicate(TYPE, predicate);
+        return this.station.stream(aq).map(Value::getValue).collect(Collectors.toList());
+    }
+
+    @Test
+    void predicatesSkipOnlyDaysThatCannotMatch() throws Exception {
+        Instant start = local("2022-03-01T00:00"), end = local("2022-03-25T00:00");
+        // every day is aggregated and skipped
+        assertEquals(List.of(), matching(start, end, ValuePredicate.atLeast(30)));
+
+        // a day changed on disk after it was aggregated is read again
+        File csv = new File(this.archive, ArchiveFixture.dayPath(LocalDate.of(2022, 3, 15), TYPE));
+        String content = Files.readString(csv.toPath(), StandardCharsets.UTF_8);
+        int comma = content.indexOf(',');
+        int eol = content.indexOf('\n', comma);
+        String replaced = "9".repeat(eol - comma - 1);
+        Files.writeString(csv.toPath(), content.substring(0, comma + 1) + replaced + content.substring(eol), StandardCharsets.UTF_8);
+        assertTrue(csv.setLastModified(csv.lastModified() + 10_000));
+        assertEquals(List.of(Double.parseDouble(replaced)), matching(start, end, ValuePredicate.greaterThan(40)));
+
+        // NaN is never a bound, so a day starting with NaN keeps the bounds of its other values
+        csv = new File(this.archive, ArchiveFixture.dayPath(LocalDate.of(2022, 3, 20), TYPE));
+        content = Files.readString(csv.toPath(), StandardCharsets.UTF_8);
+        comma = content.indexOf(',');
+        eol = content.indexOf('\n', comma);
+        Files.writeString(csv.toPath(), content.substring(0, comma + 1) + "NaN" + content.substring(eol)
+                + "2022-03-20 23:55:00,50.0\n", StandardCharsets.UTF_8);
+        assertEquals(List.of(50.0), matching(local("2022-03-20T00:00"), local("2022-03-21T00:00"), ValuePredicate.greaterThan(40)));
+        ArchiveQuery aq = query(local("2022-03-20T00:00"), local("2022-03-21T00:00"));
+        StatisticalReportDataPamphlet scan = this.station.queryStatistics(aq).getReportPamphletFromType(TYPE);
+        StatisticalReportDataPamphlet rollup = this.station.queryRollupStatistics(aq).getReportPamphletFromType(TYPE);
+        assertEquals(50.0, rollup.getMax());
+        assertEquals(scan.getMin(), rollup.getMin());
+        assertEquals(scan.getNumberElements(), rollup.getNumberElements());
+        assertEquals(List.of(scan.getMin()), matching(aq.getTimePeriods().get(0).getStart(), aq.getTimePeriods().get(0).getEnd(),
+                ValuePredicate.atMost(scan.getMin())));
+        for (RollupBucket b : this.station.queryBuckets(aq, RollupResolution.HOURLY)) {
+            assertFalse(Double.isNaN(b.getMin()) || Double.isNaN(b.getMax()), b.getStart().toString());
+        }
+    }
+}
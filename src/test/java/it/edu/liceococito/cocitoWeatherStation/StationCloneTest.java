@@ -0,0 +1,177 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Shallow and sparse clones of a local bare repository
+ */
+class StationCloneTest {
+    private static final LocalDate OLD_DAY = LocalDate.of(2021, 6, 1);
+    private static final LocalDate DAY = LocalDate.of(2022, 6, 1);
+
+    @TempDir
+    File dir;
+    private ArchiveFixture remote;
+
+    @BeforeEach
+    void buildRemote() throws Exception {
+        this.remote = new ArchiveFixture(new File(this.dir, "remote"));
+        for (LocalDate day : List.of(OLD_DAY, DAY)) {
+            this.remote.writeDay(day, DataType.TEMPERATURE, 20, 21, 22);
+            this.remote.writeDay(day, DataType.HUMIDITY, 50, 51, 52);
+            this.remote.writeLatest(day.atStartOfDay(Station.ARCHIVE_ZONE).toInstant());
+            this.remote.commit("day " + day);
+        }
+        this.remote.write("bin/update.sh", "#!/bin/sh\n");
+        assertTrue(this.remote.file("bin/update.sh").setExecutable(true));
+        Files.createSymbolicLink(this.remote.file("latest.json").toPath(), Path.of("last.json"));
+        this.remote.commit("tools");
+    }
+
+    /**
+     * Sparse options keeping the temperature files of the last year
+     */
+    private static CloneOptions sparseOptions() {
+        CloneOptions options = new CloneOptions();
+        options.setSparseYears(new ArrayList<>(List.of(DAY.getYear())));
+        options.setSparseDataTypes(new ArrayList<>(List.of(DataType.TEMPERATURE)));
+        return options;
+    }
+
+    /**
+     * Count the commits reachable from HEAD
+     */
+    private static int history(File archive) throws Exception {
+        int n = 0;
+        try (Git git = Git.open(archive)) {
+            for (RevCommit ignored : git.log().call()) n++;
+        }
+        return n;
+    }
+
+    @Test
+    void shallowCloneKeepsOnlyTheLatestCommits() throws Exception {
+        CloneOptions options = new CloneOptions();
+        options.setDepth(1);
+        File archive = new File(this.dir, "shallow");
+        Station station = new Station(archive, true, this.remote.getUri(), options);
+        assertEquals(1, history(archive));
+        assertTrue(new File(archive, ArchiveFixture.dayPath(OLD_DAY, DataType.HUMIDITY)).isFile());
+        assertEquals(20.5, station.getLastMeasurements().getTemperature().getValue());
+
+        this.remote.appendRow(DAY, DataType.TEMPERATURE, DAY.atTime(23, 50), 30);
+        this.remote.commit("more");
+        ArchiveChangeSet changes = station.pullChanges();
+        assertTrue(changes.isSuccessful());
+        assertEquals(1, changes.getChanges().size());
+    }
+
+    @Test
+    void sparseCloneChecksOutTheSelectedFilesWithTheirModes() throws Exception {
+        File archive = new File(this.dir, "sparse");
+        new Station(archive, true, this.remote.getUri(), sparseOptions());
+        assertTrue(new File(archive, ArchiveFixture.dayPath(DAY, DataType.TEMPERATURE)).isFile());
+        assertFalse(new File(archive, ArchiveFixture.dayPath(DAY, DataType.HUMIDITY)).exists());
+        assertFalse(new File(archive, ArchiveFixture.dayPath(OLD_DAY, DataType.TEMPERATURE)).exists());
+        assertTrue(new File(archive, "last.json").isFile());
+        assertTrue(Files.isExecutable(new File(archive, "bin/update.sh").toPath()));
+        Path link = new File(archive, "latest.json").toPath();
+        assertTrue(Files.isSymbolicLink(link));
+        assertEquals(Path.of("last.json"), Files.readSymbolicLink(link));
+        try (Git git = Git.open(archive)) {
+            Status status = git.status().call();
+            assertTrue(status.getModified().isEmpty(), "modified " + status.getModified());
+            assertTrue(status.getUntracked().isEmpty(), "untracked " + status.getUntracked());
+        }
+    }
+
+    @Test
+    void sparsePullMovesHeadAndUpdatesOnlyTheSelectedFiles() throws Exception {
+        File archive = new File(this.dir, "sparse");
+        Station station = new Station(archive, true, this.remote.getUri(), sparseOptions());
+        this.remote.appendRow(DAY, DataType.TEMPERATURE, DAY.atTime(23, 50), 30);
+        this.remote.appendRow(DAY, DataType.HUMIDITY, DAY.atTime(23, 50), 60);
+        String commit = this.remote.commit("more");
+
+        ArchiveChangeSet changes = station.pullChanges();
+        assertTrue(changes.isSuccessful());
+        assertEquals(commit, changes.getCommit());
+        assertEquals(1, changes.getChanges().size());
+        assertEquals(DataType.TEMPERATURE, changes.getChanges().get(0).getDataType());
+        try (Git git = Git.open(archive)) {
+            assertEquals(commit, git.getRepository().resolve(Constants.HEAD).name());
+            Status status = git.status().call();
+            assertTrue(status.getModified().isEmpty(), "modified " + status.getModified());
+            assertTrue(status.getUntracked().isEmpty(), "untracked " + status.getUntracked());
+        }
+        assertTrue(Files.readString(new File(archive, ArchiveFixture.dayPath(DAY, DataType.TEMPERATURE)).toPath(),
+                StandardCharsets.UTF_8).endsWith(",30.0\n"));
+        assertFalse(new File(archive, ArchiveFixture.dayPath(DAY, DataType.HUMIDITY)).exists());
+    }
+
+    @Test
+    void sparsePullFailsWhenHeadCannotMove() throws Exception {
+        File archive = new File(this.dir, "sparse");
+        Station station = new Station(archive, true, this.remote.getUri(), sparseOptions());
+        File day = new File(archive, ArchiveFixture.dayPath(DAY, DataType.TEMPERATURE));
+        String before = Files.readString(day.toPath(), StandardCharsets.UTF_8);
+        this.remote.appendRow(DAY, DataType.TEMPERATURE, DAY.atTime(23, 50), 30);
+        this.remote.commit("more");
+
+        File lock = new File(archive, ".git/refs/heads/main.lock");
+        assertTrue(lock.createNewFile());
+        ArchiveChangeSet failed = station.pullChanges();
+        assertFalse(failed.isSuccessful());
+        assertFalse(failed.isHeadMoved());
+        assertEquals(before, Files.readString(day.toPath(), StandardCharsets.UTF_8));
+
+        assertTrue(lock.delete());
+        ArchiveChangeSet changes = station.pullChanges();
+        assertTrue(changes.isSuccessful());
+        assertEquals(1, changes.getChanges().size());
+    }
+}
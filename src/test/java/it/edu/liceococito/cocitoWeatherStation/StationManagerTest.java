@@ -0,0 +1,157 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Station manager against local bare repositories
+ */
+class StationManagerTest {
+    private static final LocalDate DAY = LocalDate.of(2022, 3, 10);
+
+    @TempDir
+    File dir;
+
+    /**
+     * Build a remote archive with one temperature day of {@code rows} rows
+     */
+    private ArchiveFixture remote(String name, int rows) throws Exception {
+        ArchiveFixture fixture = new ArchiveFixture(new File(this.dir, name));
+        double[] values = new double[rows];
+        for (int i = 0; i < rows; i++) values[i] = i;
+        fixture.writeDay(DAY, DataType.TEMPERATURE, values);
+        fixture.writeLatest(Instant.parse("2022-03-10T12:00:00Z"));
+        fixture.commit("init");
+        return fixture;
+    }
+
+    /**
+     * Temperature query over the fixture day
+     */
+    private static ArchiveQuery dayQuery() {
+        ArchiveQuery aq = new ArchiveQuery();
+        aq.getAllowedDataTypes().add(DataType.TEMPERATURE);
+        aq.getTimePeriods().add(new TimePeriod(Instant.parse("2022-03-09T00:00:00Z"), Instant.parse("2022-03-12T00:00:00Z")));
+        aq.disablePagination();
+        return aq;
+    }
+
+    @Test
+    void clonesAndQueriesEveryStation() throws Exception {
+        try (ArchiveFixture a = this.remote("a", 10); ArchiveFixture b = this.remote("b", 20);
+             StationManager manager = new StationManager(1, null)) {
+            manager.addStation("a", new File(this.dir, "station-a"), a.getUri());
+            manager.addStation("b", new File(this.dir, "station-b"), b.getUri());
+            Map<String, ArchiveQueryResult> results = manager.query(dayQuery());
+            assertEquals(List.of("a", "b"), new ArrayList<>(results.keySet()));
+            assertEquals(10, results.get("a").getValueCount());
+            assertEquals(20, results.get("b").getValueCount());
+            Map<String, StatisticalReporter> stats = manager.queryRollupStatistics(dayQuery());
+            assertEquals(19, stats.get("b").getReportPamphletFromType(DataType.TEMPERATURE).getMax());
+            assertThrows(IllegalArgumentException.class, () -> manager.addStation("a", new File(this.dir, "station-c"), b.getUri()));
+        }
+    }
+
+    @Test
+    void scheduledUpdatesReachEveryStationWithOneFetchPermit() throws Exception {
+        int n = 4;
+        List<ArchiveFixture> remotes = new ArrayList<>();
+        Set<String> updated = ConcurrentHashMap.newKeySet();
+        CountDownLatch done = new CountDownLatch(n);
+        try (StationManager manager = new StationManager(1, null)) {
+            for (int i = 0; i < n; i++) {
+                ArchiveFixture remote = this.remote("r" + i, 6);
+                remotes.add(remote);
+                manager.addStation("s" + i, new File(this.dir, "s" + i), remote.getUri());
+            }
+            manager.setUpdateListener((name, changes) -> {
+                if (!changes.getChanges().isEmpty() && updated.add(name)) done.countDown();
+            });
+            for (ArchiveFixture remote : remotes) {
+                remote.appendRow(DAY, DataType.TEMPERATURE, DAY.atTime(23, 50), 99);
+                remote.commit("more");
+            }
+            manager.startUpdating(Duration.ofMillis(200));
+            assertTrue(done.await(30, TimeUnit.SECONDS), "updated " + updated);
+            manager.stopUpdating();
+            for (Station station : manager.getStations().values()) {
+                assertEquals(7, station.query(dayQuery()).getValueCount());
+            }
+        } finally {
+            for (ArchiveFixture remote : remotes) remote.close();
+        }
+    }
+
+    @Test
+    void updatesWaitingForAFetchPermitDoNotHoldTheScheduler() throws Exception {
+        Semaphore held = new Semaphore(0);
+        CountDownLatch ticked = new CountDownLatch(1);
+        try (ArchiveFixture remote = this.remote("r", 6); StationManager manager = new StationManager(1, null)) {
+            File archive = new File(this.dir, "station");
+            Station station = new Station(archive, true, remote.getUri());
+            try (Git git = Git.open(archive)) {
+                StoredConfig config = git.getRepository().getConfig();
+                // no background gc left running when the test ends: JGit locks gc.log before checking gc.auto
+                config.setInt("gc", null, "auto", 0);
+                config.setBoolean("gc", null, "autoDetach", false);
+                config.save();
+            }
+            int names = Math.max(2, Runtime.getRuntime().availableProcessors()) + 1;
+            for (int i = 0; i < names; i++) manager.addStation("s" + i, station);
+            station.setFetchPermits(held);
+            Semaphore finished = new Semaphore(0);
+            manager.setUpdateListener((name, changes) -> finished.release());
+            manager.startUpdating(Duration.ofMillis(50));
+            Thread.sleep(500);
+            WatcherScheduler.get().schedule(ticked::countDown, 0, TimeUnit.MILLISECONDS);
+            assertTrue(ticked.await(10, TimeUnit.SECONDS));
+            manager.stopUpdating();
+            held.release(names);
+            assertTrue(finished.tryAcquire(names, 30, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Station updates from a local bare repository
+ */
+class StationPullTest {
+    private static final LocalDate DAY = LocalDate.of(2022, 6, 1);
+    private static final LocalDate NEXT = DAY.plusDays(1);
+
+    @TempDir
+    File dir;
+    private ArchiveFixture remote;
+    private File archive;
+    private Station station;
+
+    @BeforeEach
+    void buildStation() throws Exception {
+        this.remote = new ArchiveFixture(new File(this.dir, "remote"));
+        this.remote.writeDay(DAY, DataType.TEMPERATURE, 1, 2, 3);
+        this.remote.writeDay(NEXT, DataType.TEMPERATURE, 4, 5);
+        this.remote.writeLatest(Instant.parse("2022-06-02T12:00:00Z"));
+        this.remote.commit("init");
+        this.archive = new File(this.dir, "station");
+        this.station = new Station(this.archive, true, this.remote.getUri());
+    }
+
+    /**
+     * Query of one data type over one whole local day
+     */
+    private static ArchiveQuery dayQuery(DataType dt, LocalDate day) {
+        ArchiveQuery aq = new ArchiveQuery();
+        aq.getAllowedDataTypes().add(dt);
+        aq.getTimePeriods().add(new TimePeriod(day.atStartOfDay(Station.ARCHIVE_ZONE).toInstant(),
+                day.plusDays(1).atStartOfDay(Station.ARCHIVE_ZONE).toInstant()));
+        aq.disablePagination();
+        return aq;
+    }
+
+    @Test
+    void failedUpdateInvalidatesIndexRollupsAndCache() throws Exception {
+        ArchiveQuery next = dayQuery(DataType.TEMPERATURE, NEXT);
+        assertEquals(2, this.station.query(next).getValueCount());
+        assertEquals(2, this.station.queryRollupStatistics(next).getReportPamphletFromType(DataType.TEMPERATURE).getNumberElements());
+
+        // the appended row of the first file in path order does not decode, so the diff fails before the others
+        this.remote.write(ArchiveFixture.dayPath(DAY, DataType.TEMPERATURE),
+                "2022-06-01 00:00:00,1.0\n2022-06-01 00:10:00,2.0\n2022-06-01 00:20:00,3.0\n2022-06-01 00:30:00,x\n");
+        this.remote.appendRow(NEXT, DataType.TEMPERATURE, NEXT.atTime(12, 0), 60);
+        this.remote.writeDay(NEXT, DataType.HUMIDITY, 70, 71, 72);
+        String commit = this.remote.commit("broken");
+        assertThrows(NumberFormatException.class, () -> this.station.pullChanges());
+        try (Git git = Git.open(this.archive)) {
+            assertEquals(commit, git.getRepository().resolve(Constants.HEAD).name());
+        }
+
+        assertEquals(3, this.station.query(next).getValueCount());
+        StatisticalReportDataPamphlet stats = this.station.queryRollupStatistics(next).getReportPamphletFromType(DataType.TEMPERATURE);
+        assertEquals(3, stats.getNumberElements());
+        assertEquals(60, stats.getMax());
+        assertEquals(3, this.station.query(dayQuery(DataType.HUMIDITY, NEXT)).getValueCount());
+    }
+
+    @Test
+    void concurrentPullsApplyEachChangeOnce() throws Exception {
+        ArchiveQuery next = dayQuery(DataType.TEMPERATURE, NEXT);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < 8; round++) {
+                assertEquals(2 + round, this.station.query(next).getValueCount());
+                this.remote.appendRow(NEXT, DataType.TEMPERATURE, NEXT.atTime(12, round), 100 + round);
+                this.remote.commit("round " + round);
+                CyclicBarrier start = new CyclicBarrier(2);
+                Callable<ArchiveChangeSet> pull = () -> {
+                    start.await();
+                    return this.station.pullChanges();
+                };
+                Future<ArchiveChangeSet> a = executor.submit(pull), b = executor.submit(pull);
+                ArchiveChangeSet first = a.get(30, TimeUnit.SECONDS), second = b.get(30, TimeUnit.SECONDS);
+                assertEquals(1, first.getChanges().size() + second.getChanges().size(), "round " + round);
+                assertTrue(first.isSuccessful() && second.isSuccessful());
+                StatisticalReportDataPamphlet stats = this.station.queryRollupStatistics(next).getReportPamphletFromType(DataType.TEMPERATURE);
+                assertEquals(3 + round, stats.getNumberElements());
+                assertEquals(100 + round, stats.getMax());
+            }
+            assertEquals(10, this.station.query(next).getValueCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Queries of a station cloned from a local bare repository
+ */
+class StationQueryTest {
+    private static final LocalDate DAY = LocalDate.of(2022, 5, 10);
+
+    @TempDir
+    File dir;
+    private ArchiveFixture remote;
+
+    @BeforeEach
+    void buildRemote() throws Exception {
+        this.remote = new ArchiveFixture(new File(this.dir, "remote"));
+        this.remote.writeLatest(Instant.parse("2022-05-10T12:00:00Z"));
+    }
+
+    /**
+     * Commit the fixture and clone it
+     */
+    private Station station() throws Exception {
+        this.remote.commit("data");
+        return new Station(new File(this.dir, "station"), true, this.remote.getUri());
+    }
+
+    /**
+     * Query without pagination
+     */
+    private static ArchiveQuery query(List<DataType> types, TimePeriod... periods) {
+        ArchiveQuery aq = new ArchiveQuery();
+        aq.getAllowedDataTypes().addAll(types);
+        aq.getTimePeriods().addAll(List.of(periods));
+        aq.disablePagination();
+        return aq;
+    }
+
+    /**
+     * Period between two local times of the archive zone
+     */
+    private static TimePeriod local(String start, String end) {
+        return new TimePeriod(LocalDateTime.parse(start).atZone(Station.ARCHIVE_ZONE).toInstant(),
+                LocalDateTime.parse(end).atZone(Station.ARCHIVE_ZONE).toInstant());
+    }
+
+    @Test
+    void fileLineIsTheDataRowIndexWithSkippedLinesNotCounted() throws Exception {
+        this.remote.write(ArchiveFixture.dayPath(DAY, DataType.TEMPERATURE),
+                "2022-05-10 00:00:00,1.0\n\n2022-05-10 00:10:00,2.0\n2022-05-10 00:20:00,\n2022-05-10 00:30:00,3.0\n");
+        Station station = this.station();
+        Page page = station.query(query(List.of(DataType.TEMPERATURE), local("2022-05-10T00:00", "2022-05-11T00:00")))
+                .getPageList().get(0);
+        assertEquals(3, page.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i + 1.0, page.get(i).getValue());
+            assertEquals(i, page.get(i).getFileLine());
+            assertEquals(i, page.getFileLine(i));
+        }
+    }
+
+    @Test
+    void plannerReadsEveryTypeOfEveryPeriod() throws Exception {
+        List<DataType> types = List.of(DataType.HUMIDITY, DataType.TEMPERATURE, DataType.PRESSURE);
+        for (int d = 0; d < 4; d++) {
+            LocalDate day = DAY.plusDays(d);
+            for (int t = 0; t < types.size(); t++) this.remote.writeDay(day, types.get(t), 100 * t + 10 * d, 100 * t + 10 * d + 1);
+        }
+        this.remote.writeDay(LocalDate.of(2022, 3, 27), DataType.TEMPERATURE, 1, 2, 3); // 23 hour day
+        Station station = this.station();
+        Page page = station.query(query(types, local("2022-05-12T00:00", "2022-05-14T00:00"),
+                local("2022-05-10T00:05", "2022-05-11T00:00"), local("2022-03-27T00:00", "2022-03-28T00:00"))).getPageList().get(0);
+        List<Double> expected = List.of(
+                20.0, 21.0, 30.0, 31.0, 120.0, 121.0, 130.0, 131.0, 220.0, 221.0, 230.0, 231.0,
+                1.0, 101.0, 201.0,
+                1.0, 2.0, 3.0);
+        assertEquals(expected.size(), page.size());
+        for (int i = 0; i < expected.size(); i++) assertEquals(expected.get(i), page.getValue(i), "value " + i);
+        assertEquals(DataType.PRESSURE, page.getType(14));
+    }
+
+    /**
+     * Join a query into rows of time and temperature and humidity values
+     */
+    private static List<String> joined(Station station, ArchiveQuery aq, Duration tolerance) {
+        try (Stream<WideRow> rows = station.streamJoined(aq, tolerance)) {
+            return rows.map(r -> {
+                assertFalse(r.hasValue(DataType.PRESSURE));
+                return LocalDateTime.ofInstant(r.getCreated(), Station.ARCHIVE_ZONE).toLocalTime() + " "
+                        + r.getValue(DataType.TEMPERATURE) + " " + r.getValue(DataType.HUMIDITY);
+            }).collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void joinTakesValuesWithinTheToleranceAndLeavesTheOthersMissing() throws Exception {
+        this.remote.write(ArchiveFixture.dayPath(DAY, DataType.TEMPERATURE),
+                "2022-05-10 00:00:00,1.0\n2022-05-10 00:10:00,2.0\n2022-05-10 00:20:00,3.0\n2022-05-10 00:40:00,5.0\n");
+        this.remote.write(ArchiveFixture.dayPath(DAY, DataType.HUMIDITY),
+                "2022-05-10 00:00:30,10.0\n2022-05-10 00:10:00,20.0\n2022-05-10 00:30:00,40.0\n2022-05-10 00:41:00,50.0\n");
+        // no humidity file the next day
+        this.remote.writeDay(DAY.plusDays(1), DataType.TEMPERATURE, 6, 7);
+        Station station = this.station();
+        ArchiveQuery aq = query(List.of(DataType.TEMPERATURE, DataType.HUMIDITY), local("2022-05-10T00:00", "2022-05-12T00:00"));
+        assertEquals(List.of("00:00 1.0 10.0", "00:10 2.0 20.0", "00:20 3.0 NaN", "00:30 NaN 40.0", "00:40 5.0 50.0",
+                "00:00 6.0 NaN", "00:10 7.0 NaN"), joined(station, aq, Duration.ofSeconds(60)));
+        assertEquals(List.of("00:00 1.0 NaN", "00:00:30 NaN 10.0", "00:10 2.0 20.0", "00:20 3.0 NaN", "00:30 NaN 40.0",
+                "00:40 5.0 NaN", "00:41 NaN 50.0", "00:00 6.0 NaN", "00:10 7.0 NaN"), joined(station, aq, Duration.ZERO));
+        assertEquals(List.of("00:00 1.0 10.0", "00:10 2.0 20.0", "00:20 3.0 NaN", "00:30 NaN 40.0", "00:40 5.0 NaN",
+                "00:41 NaN 50.0", "00:00 6.0 NaN", "00:10 7.0 NaN"), joined(station, aq, Duration.ofSeconds(30)));
+    }
+
+    @Test
+    void joinFollowsThePeriodsInTheirOrder() throws Exception {
+        for (int d = 0; d < 3; d++) {
+            this.remote.writeDay(DAY.plusDays(d), DataType.TEMPERATURE, 10 * d, 10 * d + 1, 10 * d + 2);
+            this.remote.writeDay(DAY.plusDays(d), DataType.HUMIDITY, 100 + 10 * d, 100 + 10 * d + 1);
+        }
+        Station station = this.station();
+        ArchiveQuery aq = query(List.of(DataType.TEMPERATURE, DataType.HUMIDITY), local("2022-05-12T00:00", "2022-05-13T00:00"),
+                local("2022-05-10T00:00", "2022-05-11T00:00"), local("2022-05-11T00:05", "2022-05-11T00:15"));
+        assertEquals(List.of("00:00 20.0 120.0", "00:10 21.0 121.0", "00:20 22.0 NaN",
+                "00:00 0.0 100.0", "00:10 1.0 101.0", "00:20 2.0 NaN",
+                "00:10 11.0 111.0"), joined(station, aq, Duration.ZERO));
+    }
+
+    @Test
+    void joinReadsNothingBeforeTheFirstRow() throws Exception {
+        this.remote.writeDay(DAY, DataType.TEMPERATURE, 1, 2);
+        this.remote.writeDay(DAY, DataType.HUMIDITY, 3, 4);
+        Station station = this.station();
+        ArchiveQuery aq = query(List.of(DataType.TEMPERATURE, DataType.HUMIDITY), local("2022-05-10T00:00", "2022-05-11T00:00"));
+        try (Stream<WideRow> rows = station.streamJoined(aq, Duration.ZERO)) {
+            assertTrue(new File(new File(this.dir, "station"), ArchiveFixture.dayPath(DAY, DataType.HUMIDITY)).delete());
+            assertThrows(UncheckedIOException.class, () -> rows.iterator().hasNext());
+        }
+    }
+}
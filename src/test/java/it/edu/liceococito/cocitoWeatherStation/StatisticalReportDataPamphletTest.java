@@ -0,0 +1,161 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Integer mode of the pamphlet against the map counting it replaced
+ */
+class StatisticalReportDataPamphletTest {
+
+    /**
+     * Integer mode as it was computed with a map of every integer part, the first maximum in map order
+     */
+    private static int hashMapMode(List<Double> values) {
+        HashMap<Integer, Integer> integerModeOccurrence = new HashMap<>();
+        for (double val : values) integerModeOccurrence.merge((int) val, 1, Integer::sum);
+        int biggestValue = 0, biggestKey = 0, i = 0;
+        Iterator<Map.Entry<Integer, Integer>> it = integerModeOccurrence.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Integer> pair = it.next();
+            if (i == 0 || biggestValue < pair.getValue()) {
+                biggestValue = pair.getValue();
+                biggestKey = pair.getKey();
+            }
+            i++;
+        }
+        return biggestKey;
+    }
+
+    /**
+     * Integer mode with a map of every integer part, the smallest on ties
+     */
+    private static int smallestMode(List<Double> values) {
+        HashMap<Integer, Integer> counts = new HashMap<>();
+        for (double val : values) counts.merge((int) val, 1, Integer::sum);
+        int mode = 0, best = 0;
+        for (Map.Entry<Integer, Integer> e : counts.entrySet()) {
+            if (e.getValue() > best || (e.getValue() == best && e.getKey() < mode)) {
+                best = e.getValue();
+                mode = e.getKey();
+            }
+        }
+        return mode;
+    }
+
+    private static StatisticalReportDataPamphlet pamphlet(DataType dt, List<Double> values) {
+        StatisticalReportDataPamphlet pamphlet = new StatisticalReportDataPamphlet(dt);
+        for (double v : values) pamphlet.accept(v);
+        pamphlet.compute();
+        return pamphlet;
+    }
+
+    private static List<Double> list(double... values) {
+        List<Double> list = new ArrayList<>();
+        for (double v : values) list.add(v);
+        return list;
+    }
+
+    @Test
+    void modeMatchesTheMapWhenItIsUnique() {
+        Random random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            List<Double> values = new ArrayList<>();
+            int n = 1 + random.nextInt(2000);
+            for (int i = 0; i < n; i++) {
+                double v = 15 + 9 * random.nextGaussian();
+                if (random.nextInt(20) == 0) v = -120 + random.nextInt(400) + random.nextInt(10) / 10.0;
+                values.add(Math.round(v * 10) / 10.0);
+            }
+            int mode = smallestMode(values);
+            long count = values.stream().filter(v -> (int) (double) v == mode).count();
+            long ties = values.stream().mapToInt(v -> (int) (double) v).distinct()
+                    .filter(k -> values.stream().filter(v -> (int) (double) v == k).count() == count).count();
+            int actual = pamphlet(DataType.TEMPERATURE, values).getMode();
+            assertEquals(mode, actual, values.toString());
+            if (ties == 1) assertEquals(hashMapMode(values), actual, values.toString());
+        }
+    }
+
+    @Test
+    void tiesGoToTheSmallestIntegerInsideOrOutsideTheRange() {
+        // temperature integer parts are counted in an array from -50 to 60, and in a map outside
+        assertEquals(-60, pamphlet(DataType.TEMPERATURE, list(10, 10.5, -60, -60.9)).getMode());
+        assertEquals(10, pamphlet(DataType.TEMPERATURE, list(70, 10.5, 70.2, 10)).getMode());
+        assertEquals(-70, pamphlet(DataType.TEMPERATURE, list(-60, -70.5, -60, -70, 80, 80)).getMode());
+        assertEquals(-50, pamphlet(DataType.TEMPERATURE, list(60, 60.9, -50, -50.9)).getMode());
+        assertEquals(-3, pamphlet(DataType.TEMPERATURE, list(4, -3, 61, -51, -3.3, 4.4, 61, -51, -3.9)).getMode());
+        assertEquals(0, pamphlet(DataType.TEMPERATURE, list(-0.5, 0.5, 1, 1)).getMode());
+        assertEquals(950, pamphlet(DataType.PRESSURE, list(1200, 900, 950.4, 950.6, 1200)).getMode());
+        assertEquals(0, pamphlet(DataType.TEMPERATURE, list()).getMode());
+        assertEquals(-200, pamphlet(DataType.TEMPERATURE, list(-200)).getMode());
+
+        Random random = new Random(11);
+        int[] keys = {-75, -51, -50, -1, 0, 3, 60, 61, 90};
+        for (int round = 0; round < 2000; round++) {
+            List<Double> values = new ArrayList<>();
+            int n = 1 + random.nextInt(12);
+            for (int i = 0; i < n; i++) {
+                int key = keys[random.nextInt(keys.length)];
+                values.add(key + (key < 0 ? -0.25 : 0.25) * random.nextInt(4));
+            }
+            assertEquals(smallestMode(values), pamphlet(DataType.TEMPERATURE, values).getMode(), values.toString());
+        }
+    }
+
+    @Test
+    void mergedPamphletsKeepTheMode() {
+        Random random = new Random(13);
+        int[] keys = {-75, -51, -50, 0, 60, 61, 90};
+        for (int round = 0; round < 500; round++) {
+            List<Double> values = new ArrayList<>();
+            StatisticalReportDataPamphlet merged = new StatisticalReportDataPamphlet(DataType.TEMPERATURE);
+            for (int part = 0; part < 3; part++) {
+                List<Double> partValues = new ArrayList<>();
+                int n = random.nextInt(6);
+                for (int i = 0; i < n; i++) partValues.add((double) keys[random.nextInt(keys.length)]);
+                values.addAll(partValues);
+                StatisticalReportDataPamphlet p = new StatisticalReportDataPamphlet(DataType.TEMPERATURE);
+                if (part == 1) p.values.addAll(partValues);
+                else partValues.forEach(p::accept);
+                merged.merge(p);
+            }
+            merged.compute();
+            assertEquals(smallestMode(values), merged.getMode(), values.toString());
+            assertEquals(values.size(), merged.getNumberElements());
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Stazione Meteo del Liceo Cocito
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package it.edu.liceococito.cocitoWeatherStation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Rankings against sorting all the values
+ */
+class ValueRankingTest {
+    private static final File[] FILES = {new File("a.csv"), new File("b.csv")};
+
+    @TempDir
+    File dir;
+
+    /**
+     * Build random values with many equal values and equal times
+     */
+    private static List<Value> values(Random random, int n) {
+        List<Value> values = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            values.add(new Value(Instant.ofEpochSecond(random.nextInt(50)), FILES[random.nextInt(2)], i,
+                    random.nextInt(20) / 2.0, DataType.values()[random.nextInt(3)]));
+        }
+        return values;
+    }
+
+    /**
+     * The first values by sorting: best value first, then earliest
+     */
+    private static List<String> sorted(List<Value> values, int n, boolean highest) {
+        Comparator<Value> byValue = Comparator.comparingDouble(Value::getValue);
+        return values.stream().filter(v -> !Double.isNaN(v.getValue()))
+                .sorted((highest ? byValue.reversed() : byValue).thenComparing(Value::getCreated))
+                .limit(n).map(ValueRankingTest::key).collect(Collectors.toList());
+    }
+
+    private static String key(Value v) {
+        return v.getValue() + "@" + v.getCreated().getEpochSecond();
+    }
+
+    private static List<String> ranked(ValueRanking ranking) {
+        return ranking.getValues().stream().map(ValueRankingTest::key).collect(Collectors.toList());
+    }
+
+    @Test
+    void rankingKeepsTheHighestAndLowestValues() {
+        Random random = new Random(5);
+        for (int round = 0; round < 300; round++) {
+            List<Value> values = values(random, random.nextInt(200));
+            int n = random.nextInt(30);
+            for (boolean highest : new boolean[]{true, false}) {
+                ValueRanking ranking = new ValueRanking(n, highest);
+                values.forEach(ranking::offer);
+                assertEquals(Math.min(n, values.size()), ranking.size());
+                assertEquals(sorted(values, n, highest), ranked(ranking), "n=" + n + " highest=" + highest);
+            }
+        }
+    }
+
+    @Test
+    void tiesRankByTimeAndKeepTheirSource() {
+        ValueRanking ranking = new ValueRanking(3, true);
+        ranking.offer(30, 5, DataType.HUMIDITY, FILES[1], 7);
+        ranking.offer(10, 5, DataType.TEMPERATURE, FILES[0], 2);
+        ranking.offer(40, 4, DataType.PRESSURE, null, 1);
+        ranking.offer(20, 5, DataType.PRESSURE, FILES[1], 3);
+        ranking.offer(5, Double.NaN, DataType.PRESSURE, FILES[1], 4);
+        List<Value> values = ranking.getValues();
+        assertEquals(List.of(10L, 20L, 30L), values.stream().map(v -> v.getCreated().getEpochSecond()).collect(Collectors.toList()));
+        assertEquals(DataType.TEMPERATURE, values.get(0).getType());
+        assertEquals(FILES[0], values.get(0).getFile());
+        assertEquals(2, values.get(0).getFileLine());
+        assertEquals(DataType.HUMIDITY, values.get(2).getType());
+        assertEquals(7, values.get(2).getFileLine());
+    }
+
+    @Test
+    void mergedPartialRankingsMatchOneRanking() {
+        Random random = new Random(8);
+        for (int round = 0; round < 200; round++) {
+            List<Value> values = values(random, random.nextInt(300));
+            int n = 1 + random.nextInt(25);
+            int parts = 1 + random.nextInt(6);
+            for (boolean highest : new boolean[]{true, false}) {
+                ValueRanking merged = new ValueRanking(n, highest);
+                for (int p = 0; p < parts; p++) {
+                    ValueRanking partial = new ValueRanking(n, highest);
+                    values.subList(values.size() * p / parts, values.size() * (p + 1) / parts).forEach(partial::offer);
+                    merged.merge(partial);
+                }
+                assertEquals(sorted(values, n, highest), ranked(merged));
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> new ValueRanking(3, true).merge(new ValueRanking(3, false)));
+    }
+
+    @Test
+    void limitAboveTheValueCountKeepsEveryValue() {
+        List<Value> values = values(new Random(2), 12);
+        ValueRanking ranking = new ValueRanking(100, false);
+        values.forEach(ranking::offer);
+        assertEquals(12, ranking.size());
+        assertEquals(sorted(values, 100, false), ranked(ranking));
+        ValueRanking none = new ValueRanking(0, true);
+        values.forEach(none::offer);
+        assertEquals(List.of(), none.getValues());
+        assertThrows(IllegalArgumentException.class, () -> new ValueRanking(-1, true));
+    }
+
+    /**
+     * Station with one temperature file per day
+     */
+    private Station station(LocalDate first, int days) throws Exception {
+        try (ArchiveFixture remote = new ArchiveFixture(new File(this.dir, "remote"))) {
+            for (int d = 0; d < days; d++) remote.writeDay(first.plusDays(d), DataType.TEMPERATURE, d % 7, 10 - d % 5, d % 3 * 2.5);
+            remote.writeLatest(first.plusDays(days).atStartOfDay(Station.ARCHIVE_ZONE).toInstant());
+            remote.commit("data");
+            return new Station(new File(this.dir, "station"), true, remote.getUri());
+        }
+    }
+
+    private static ArchiveQuery query(LocalDate first, int days) {
+        ArchiveQuery aq = new ArchiveQuery();
+        aq.getAllowedDataTypes().add(DataType.TEMPERATURE);
+        aq.getTimePeriods().add(new TimePeriod(first.atStartOfDay(Station.ARCHIVE_ZONE).toInstant(),
+                first.plusDays(days).atStartOfDay(Station.ARCHIVE_ZONE).toInstant()));
+        aq.disablePagination();
+        return aq;
+    }
+
+    @Test
+    void stationRankingMatchesTheScan() throws Exception {
+        LocalDate first = LocalDate.of(2022, 1, 10);
+        Station station = this.station(first, 12);
+        List<Value> all = station.stream(query(first, 12)).collect(Collectors.toList());
+        for (int parallelism : new int[]{1, 3, 20}) {
+            ArchiveQuery aq = query(first, 12);
+            aq.setParallelism(parallelism);
+            for (boolean highest : new boolean[]{true, false}) {
+                for (int n : new int[]{1, 10, 1000}) {
+                    assertEquals(sorted(all, n, highest), ranked(station.queryRanking(aq, n, highest)),
+                            "parallelism " + parallelism + " n " + n);
+                }
+            }
+        }
+    }
+
+    @Test
+    void failedPartialScanStopsTheOthers() throws Exception {
+        LocalDate first = LocalDate.of(2022, 1, 10);
+        int days = 40;
+        Station station = this.station(first, days);
+        // the first file of the first partial scan can no longer be read
+        assertTrue(new File(new File(this.dir, "station"), ArchiveFixture.dayPath(first, DataType.TEMPERATURE)).delete());
+        AtomicInteger filesRead = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        // the first scan only starts once the second one is running
+        CountDownLatch secondStarted = new CountDownLatch(1);
+        AtomicInteger submitted = new AtomicInteger();
+        try {
+            ArchiveQuery aq = query(first, days);
+            aq.setParallelism(2);
+            aq.setExecutor(task -> {
+                boolean firstScan = submitted.getAndIncrement() == 0;
+                executor.execute(() -> {
+                    try {
+                        if (firstScan) secondStarted.await();
+                        else secondStarted.countDown();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    task.run();
+                });
+            });
+            aq.setProgressListener((read, total, values) -> {
+                filesRead.incrementAndGet();
+                try {
+                    Thread.sleep(25);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            assertThrows(IOException.class, () -> station.queryRanking(aq, 5, true));
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+        // the second scan alone would read 20 files
+        assertTrue(filesRead.get() < days / 4, filesRead.get() + " files read");
+    }
+}